@@ -0,0 +1,10 @@
+import { ITrip } from "./trip";
+
+export interface ITripDelta {
+    version: string;
+    full: boolean;
+    trips: ITrip[];
+    removed: number[];
+    // ids of all trips nearest first, only sent if the order changed
+    order?: number[] | null;
+}
@@ -1,8 +1,9 @@
 import { Injectable } from "@angular/core";
 import { LocationService } from "../core/location.service";
-import { Observable, switchMap } from "rxjs";
-import { HttpClient, HttpParams } from "@angular/common/http";
+import { catchError, map, Observable, of, switchMap, throwError } from "rxjs";
+import { HttpClient, HttpErrorResponse, HttpParams } from "@angular/common/http";
 import { ITrip } from "./model/trip";
+import { ITripDelta } from "./model/trip-delta";
 import { environment } from "../../environments/environment";
 
 @Injectable({
@@ -12,6 +13,10 @@ export class TripService {
 
     private readonly API: string = environment.apiBaseUrl + "/api/v1/trips";
 
+    // last known nearby trips and their version, used to only request changes
+    private version: string = '';
+    private trips: ITrip[] = [];
+
     constructor(
         private locationService: LocationService,
         private httpClient: HttpClient
@@ -23,11 +28,37 @@ export class TripService {
             switchMap(location => {
                 const params = new HttpParams()
                     .set('latitude', location.latitude.toString())
-                    .set('longitude', location.longitude.toString());
+                    .set('longitude', location.longitude.toString())
+                    .set('since', this.version);
 
-                return this.httpClient.get<ITrip[]>(this.API + '/nearby', { params });
+                return this.httpClient.get<ITripDelta>(this.API + '/nearby', { params }).pipe(
+                    map(delta => this.applyDelta(delta)),
+                    catchError((error: HttpErrorResponse) => {
+                        // 304: nothing changed since the last version
+                        if (error.status === 304) {
+                            return of(this.trips);
+                        }
+                        return throwError(() => error);
+                    })
+                );
             })
         );
     }
 
-}
\ No newline at end of file
+    private applyDelta(delta: ITripDelta): ITrip[] {
+        if (delta.full) {
+            this.trips = delta.trips;
+        }
+        else {
+            const trips = new Map(this.trips.map(trip => [trip.id, trip]));
+            delta.trips.forEach(trip => trips.set(trip.id, trip));
+            // the order (nearest first) is only sent if trips were added, removed or reordered,
+            // otherwise the changed trips keep their position
+            this.trips = (delta.order ?? this.trips.map(trip => trip.id))
+                .map(id => trips.get(id)!);
+        }
+        this.version = delta.version;
+        return this.trips;
+    }
+
+}
@@ -2,18 +2,72 @@ package de.thb.ea.public_transport_tracker.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 
+import de.thb.ea.public_transport_tracker.config.property.UpstreamClientProperties;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.replay.TrafficReplayFilter;
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
 @Configuration
 public class WebClientConfig {
+
+    /**
+     * Connection pool for upstream requests. If metrics are enabled the pool exports the
+     * <code>reactor.netty.connection.provider.*</code> metrics (active, idle and pending
+     * connections and the time spent acquiring a connection).
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider upstreamConnectionProvider(UpstreamClientProperties properties) {
+        return ConnectionProvider.builder("upstream")
+            .maxConnections(properties.getMaxConnections())
+            .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+            .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+            .maxIdleTime(properties.getMaxIdleTime())
+            .maxLifeTime(properties.getMaxLifeTime())
+            .evictInBackground(properties.getEvictionInterval())
+            .metrics(properties.isMetrics())
+            .build();
+    }
     
+    /**
+     * Client for upstream requests. Requests to the VBB API pass the
+     * {@link TrafficReplayFilter}, which records or replays them if enabled.
+     */
     @Bean
-    public WebClient webClient() {
+    public WebClient webClient(
+        ConnectionProvider upstreamConnectionProvider, UpstreamClientProperties properties,
+        TrafficReplayFilter trafficReplayFilter
+    ) {
+        HttpProtocol[] protocols = properties.isHttp2()
+            ? new HttpProtocol[] { HttpProtocol.H2, HttpProtocol.HTTP11 }
+            : new HttpProtocol[] { HttpProtocol.HTTP11 };
+
+        HttpClient httpClient = HttpClient.create(upstreamConnectionProvider)
+            .protocol(protocols)
+            .compress(properties.isCompress())
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .option(
+                ChannelOption.CONNECT_TIMEOUT_MILLIS,
+                (int) properties.getConnectTimeout().toMillis()
+            )
+            .responseTimeout(properties.getResponseTimeout())
+            // tag by path only to keep the metric cardinality low
+            .metrics(properties.isMetrics(), uri -> uri.split("\\?", 2)[0]);
+
         return WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(
+                (int) properties.getMaxInMemorySize().toBytes()
+            ))
+            .filter(trafficReplayFilter)
             .build();
     }
 
@@ -0,0 +1,23 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb.circuit-breaker")
+@Getter
+@Setter
+public class CircuitBreakerProperties {
+
+    boolean enabled = true;
+    int failureThreshold = 5;
+    Duration slowCallThreshold = Duration.ofSeconds(2);
+    Duration openDuration = Duration.ofSeconds(30);
+    int halfOpenCalls = 1;
+
+}
@@ -0,0 +1,29 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.history")
+@Getter
+@Setter
+public class HistoryProperties {
+
+    boolean enabled = false;
+    String directory = "data/history";
+    // observations are partitioned into one segment file per time span
+    Duration segmentDuration = Duration.ofHours(1);
+    // segments that ended longer ago are dropped
+    Duration retention = Duration.ofDays(7);
+    // buffered observations are flushed as one block once this many are buffered
+    int maxBuffered = 50000;
+    // maximum number of observations per block of a compacted segment
+    int compactedBlockSize = 20000;
+    Duration maxQueryRange = Duration.ofDays(1);
+
+}
@@ -0,0 +1,24 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb.cache")
+@Getter
+@Setter
+public class RadarCacheProperties {
+
+    boolean enabled = true;
+    double tileSize = 0.01;
+    Duration ttl = Duration.ofSeconds(15);
+    Duration staleTtl = Duration.ofMinutes(2);
+    int maxTiles = 1024;
+    int tileResults = 256;
+
+}
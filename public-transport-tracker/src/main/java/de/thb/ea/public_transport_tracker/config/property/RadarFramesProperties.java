@@ -0,0 +1,24 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb.frames")
+@Getter
+@Setter
+public class RadarFramesProperties {
+
+    boolean enabled = false;
+    // time window the upstream predicts the movements for
+    Duration duration = Duration.ofSeconds(30);
+    int frames = 6;
+    // speed in m/s of a vehicle that doesn't reach its next stop within the frames
+    double assumedSpeed = 8.;
+
+}
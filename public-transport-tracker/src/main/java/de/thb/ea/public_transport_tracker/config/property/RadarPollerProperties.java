@@ -0,0 +1,43 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.util.spatial.SpatialIndexType;
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb.poller")
+@Getter
+@Setter
+public class RadarPollerProperties {
+
+    boolean enabled = false;
+    boolean serveNearby = false;
+    // delay between two sweeps, one sweep requests rows * columns boxes
+    Duration interval = Duration.ofSeconds(60);
+    // nearby movements of older snapshots (i.e. restored ones) are served as stale
+    Duration ttl = Duration.ofSeconds(90);
+
+    // VBB coverage area
+    double north = 53.56;
+    double west = 11.27;
+    double south = 51.36;
+    double east = 14.77;
+
+    int rows = 8;
+    int columns = 8;
+    int results = 512;
+    // boxes that returned the maximum number of results are split into quarters up to this depth
+    int maxSplits = 2;
+    int concurrency = 8;
+
+    SpatialIndexType index = SpatialIndexType.GRID;
+    // store snapshots in columns instead of objects (the index type is not used then)
+    boolean columnar = false;
+    boolean offHeap = false;
+
+}
@@ -0,0 +1,22 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb.rate-limit")
+@Getter
+@Setter
+public class RateLimiterProperties {
+
+    boolean enabled = true;
+    int permitsPerMinute = 100;
+    int burst = 200;
+    Duration maxWait = Duration.ofSeconds(2);
+
+}
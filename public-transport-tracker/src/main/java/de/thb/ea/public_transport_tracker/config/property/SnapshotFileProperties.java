@@ -0,0 +1,22 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.snapshot")
+@Getter
+@Setter
+public class SnapshotFileProperties {
+
+    boolean enabled = false;
+    String path = "data/vehicles.snapshot";
+    // snapshots older than this are not restored on startup
+    Duration maxAge = Duration.ofMinutes(10);
+
+}
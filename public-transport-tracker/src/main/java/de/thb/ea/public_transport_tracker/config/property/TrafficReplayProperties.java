@@ -0,0 +1,23 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.replay.TrafficMode;
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb.traffic")
+@Getter
+@Setter
+public class TrafficReplayProperties {
+
+    TrafficMode mode = TrafficMode.OFF;
+    String path = "data/radar-traffic.log";
+    // replay speed, 2.0 replays twice as fast as recorded
+    double speed = 1.0;
+    // start over at the beginning of the log once the replay reached its end
+    boolean loop = true;
+
+}
@@ -0,0 +1,30 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.sources")
+@Getter
+@Setter
+public class TransitSourceProperties {
+
+    Duration defaultDeadline = Duration.ofSeconds(3);
+    Map<String, Duration> deadlines = new HashMap<>();
+
+    /**
+     * @param origin remote origin of the source
+     * @return the deadline of the source or the default deadline if none is configured
+     */
+    public Duration getDeadline(String origin) {
+        return deadlines.getOrDefault(origin, defaultDeadline);
+    }
+
+}
@@ -0,0 +1,22 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.trips.cache")
+@Getter
+@Setter
+public class TripCacheProperties {
+
+    boolean enabled = true;
+    int maxSize = 100000;
+    // zero keeps trips until they are evicted
+    Duration ttl = Duration.ZERO;
+
+}
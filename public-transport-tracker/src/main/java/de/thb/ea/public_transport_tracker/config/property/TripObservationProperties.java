@@ -0,0 +1,26 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.trips.observations")
+@Getter
+@Setter
+public class TripObservationProperties {
+
+    boolean enabled = false;
+    // observations that don't fit into the buffer are dropped
+    int capacity = 100000;
+    // daily partitions older than this are dropped, trips without observations are pruned
+    Duration retention = Duration.ofDays(7);
+    // number of daily partitions created in advance
+    int partitionsAhead = 2;
+    int pruneBatchSize = 1000;
+
+}
@@ -0,0 +1,21 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.trips.write-behind")
+@Getter
+@Setter
+public class TripWriteBehindProperties {
+
+    boolean enabled = false;
+    // trips that don't fit into the queue are inserted synchronously
+    int capacity = 10000;
+    // a flush is started as soon as this many trips are queued
+    int batchSize = 500;
+
+}
@@ -0,0 +1,40 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.util.unit.DataSize;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.upstream.http")
+@Getter
+@Setter
+public class UpstreamClientProperties {
+
+    // connection pool
+    int maxConnections = 64;
+    int pendingAcquireMaxCount = 256;
+    Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+    Duration maxIdleTime = Duration.ofSeconds(30);
+    Duration maxLifeTime = Duration.ofMinutes(5);
+    Duration evictionInterval = Duration.ofSeconds(30);
+
+    // protocol
+    boolean compress = true;
+    boolean http2 = true;
+
+    // timeouts
+    Duration connectTimeout = Duration.ofSeconds(2);
+    Duration responseTimeout = Duration.ofSeconds(5);
+
+    // largest response body that is buffered
+    DataSize maxInMemorySize = DataSize.ofKilobytes(256);
+
+    boolean metrics = true;
+
+}
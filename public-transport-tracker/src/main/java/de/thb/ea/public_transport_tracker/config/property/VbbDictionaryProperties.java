@@ -0,0 +1,20 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb.dictionary")
+@Getter
+@Setter
+public class VbbDictionaryProperties {
+
+    boolean enabled = true;
+    int maxStrings = 65536;
+    int maxLines = 8192;
+    int maxOperators = 1024;
+
+}
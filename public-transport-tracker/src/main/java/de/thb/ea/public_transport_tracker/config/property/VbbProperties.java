@@ -0,0 +1,19 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb")
+@Getter
+@Setter
+public class VbbProperties {
+
+    String baseUrl = "https://v6.vbb.transport.rest";
+    // speed in m/s no vehicle exceeds, bounds how far a vehicle moves within its frames
+    double maxVehicleSpeed = 45.;
+
+}
@@ -0,0 +1,32 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vbb.stub")
+@Getter
+@Setter
+public class VbbStubProperties {
+
+    // simulated network
+    int vehicles = 20000;
+    int lines = 400;
+    long seed = 42;
+    double north = 53.56;
+    double west = 11.27;
+    double south = 51.36;
+    double east = 14.77;
+
+    // simulated upstream behaviour
+    Duration latency = Duration.ofMillis(80);
+    Duration latencyJitter = Duration.ofMillis(40);
+    double errorRate = 0.;
+    int stopovers = 3;
+
+}
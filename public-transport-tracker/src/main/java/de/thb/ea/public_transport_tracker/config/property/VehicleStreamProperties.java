@@ -0,0 +1,20 @@
+package de.thb.ea.public_transport_tracker.config.property;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Component
+@ConfigurationProperties(prefix = "application.vehicles.stream")
+@Getter
+@Setter
+public class VehicleStreamProperties {
+
+    Duration heartbeat = Duration.ofSeconds(15);
+    int maxSubscribers = 1000;
+
+}
@@ -43,6 +43,9 @@ public class SecurityConfig {
                 // public endpoints
                 .requestMatchers("/auth/**").permitAll()
                 .requestMatchers("/api/v1/trips/nearby").permitAll()
+                .requestMatchers("/api/v1/vehicles/stream").permitAll()
+                // only mapped with the vbb-stub profile
+                .requestMatchers("/stub/vbb/**").permitAll()
 
                 // all other requests require authentication
                 .anyRequest().authenticated()
@@ -69,6 +72,7 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList("*"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
         configuration.setAllowedMethods(Arrays.asList("*"));
+        configuration.setExposedHeaders(Arrays.asList("ETag", "X-Data-Stale"));
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
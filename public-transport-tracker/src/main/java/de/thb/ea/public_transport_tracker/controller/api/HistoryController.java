@@ -0,0 +1,66 @@
+package de.thb.ea.public_transport_tracker.controller.api;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import de.thb.ea.public_transport_tracker.config.property.HistoryProperties;
+import de.thb.ea.public_transport_tracker.controller.api.model.VehicleObservationDTO;
+import de.thb.ea.public_transport_tracker.service.VehicleHistoryService;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.Location;
+import lombok.AllArgsConstructor;
+import reactor.core.publisher.Flux;
+
+
+@RequestMapping("/api/v1/")
+@RestController
+@AllArgsConstructor
+public class HistoryController {
+
+    private final VehicleHistoryService vehicleHistoryService;
+    private final HistoryProperties properties;
+
+    /**
+     * Replay the recorded vehicle positions of a time range as newline delimited JSON. The
+     * bounding box is optional, but must be complete if given.
+     */
+    @GetMapping(value = "history", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<VehicleObservationDTO> getHistory(
+        @RequestParam Instant from, @RequestParam Instant to,
+        @RequestParam(required = false) Double north, @RequestParam(required = false) Double west,
+        @RequestParam(required = false) Double south, @RequestParam(required = false) Double east,
+        @RequestParam(required = false) String line
+    ) {
+        if (!properties.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        if (to.isBefore(from)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "time range is empty");
+        }
+        if (Duration.between(from, to).compareTo(properties.getMaxQueryRange()) > 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "time range is too long");
+        }
+
+        BoundingBox bbox = null;
+        if (north != null || west != null || south != null || east != null) {
+            if (north == null || west == null || south == null || east == null
+                || north < south || east < west
+            ) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bounding box is empty");
+            }
+            bbox = new BoundingBox(new Location(north, west), new Location(south, east));
+        }
+
+        return vehicleHistoryService.query(from, to, bbox, line)
+            .map(VehicleObservationDTO::map);
+    }
+
+}
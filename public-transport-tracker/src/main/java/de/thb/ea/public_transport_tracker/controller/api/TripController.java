@@ -3,16 +3,21 @@ package de.thb.ea.public_transport_tracker.controller.api;
 import org.springframework.web.bind.annotation.RestController;
 
 import de.thb.ea.public_transport_tracker.controller.api.model.TripDTO;
-import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.controller.api.model.TripDeltaDTO;
+import de.thb.ea.public_transport_tracker.service.TripDeltaService;
 import de.thb.ea.public_transport_tracker.service.TripService;
+import de.thb.ea.public_transport_tracker.service.model.TripDelta;
 import lombok.AllArgsConstructor;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
@@ -22,25 +27,81 @@ import org.springframework.web.bind.annotation.RequestParam;
 @AllArgsConstructor
 public class TripController {
 
+    /**
+     * Set on responses that were (partially) served from stale data.
+     */
+    public static final String STALE_HEADER = "X-Data-Stale";
+
     private final TripService tripService;
+    private final TripDeltaService tripDeltaService;
     
+    /**
+     * Get all nearby trips. The version of the list is sent as ETag; if it matches the
+     * If-None-Match header the response is <code>304 NOT MODIFIED</code>. If no transit data
+     * source is available the response is <code>503 SERVICE UNAVAILABLE</code>.
+     */
     @GetMapping("trips/nearby")
-    public ResponseEntity<List<TripDTO>> getMethodName(
-        @RequestParam Double latitude, @RequestParam Double longitude
+    public Mono<ResponseEntity<List<TripDTO>>> getMethodName(
+        @RequestParam Double latitude, @RequestParam Double longitude,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) {
         if (latitude == null || longitude == null) {
-            return ResponseEntity.badRequest().build();
+            return Mono.just(ResponseEntity.badRequest().build());
         }
 
-        List<Trip> trips = tripService.getNearbyTrips(latitude, longitude, 500, 64);
+        return tripService.getNearbyTripsAsync(latitude, longitude, 500, 64)
+            .map(result -> {
+                String etag = "\"" + tripDeltaService.register(result.getValue()) + "\"";
+                if (etag.equals(ifNoneMatch)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag)
+                        .<List<TripDTO>>build();
+                }
+
+                return ok(etag, result.isStale()).body(
+                    result.getValue().stream().map(e -> TripDTO.map(e)).collect(Collectors.toList())
+                );
+            })
+            .defaultIfEmpty(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+    }
 
-        if (trips == null) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    /**
+     * Get the changes of the nearby trips since the version the client already has. If nothing
+     * changed the response is <code>304 NOT MODIFIED</code>, if the version is unknown (or
+     * empty) all trips are sent. If no transit data source is available the response is
+     * <code>503 SERVICE UNAVAILABLE</code>.
+     */
+    @GetMapping(value = "trips/nearby", params = "since")
+    public Mono<ResponseEntity<TripDeltaDTO>> getNearbyTripsSince(
+        @RequestParam Double latitude, @RequestParam Double longitude,
+        @RequestParam String since
+    ) {
+        if (latitude == null || longitude == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
         }
 
-        return ResponseEntity.ok().body(
-            trips.stream().map(e -> TripDTO.map(e)).collect(Collectors.toList())
-        );
+        return tripService.getNearbyTripsAsync(latitude, longitude, 500, 64)
+            .map(result -> {
+                TripDelta delta = tripDeltaService.diff(
+                    since.isEmpty() ? null : since, result.getValue()
+                );
+                String etag = "\"" + delta.getVersion() + "\"";
+                if (delta.isEmpty()) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag)
+                        .<TripDeltaDTO>build();
+                }
+
+                return ok(etag, result.isStale()).body(TripDeltaDTO.map(delta));
+            })
+            .defaultIfEmpty(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+    }
+
+
+    private static ResponseEntity.BodyBuilder ok(String etag, boolean stale) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag);
+        if (stale) {
+            response.header(STALE_HEADER, "true");
+        }
+        return response;
     }
 
 }
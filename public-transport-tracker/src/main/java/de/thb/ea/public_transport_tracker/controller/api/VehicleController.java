@@ -0,0 +1,68 @@
+package de.thb.ea.public_transport_tracker.controller.api;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import de.thb.ea.public_transport_tracker.config.property.VehicleStreamProperties;
+import de.thb.ea.public_transport_tracker.controller.api.model.VehicleUpdateDTO;
+import de.thb.ea.public_transport_tracker.service.VehicleStreamService;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.Location;
+import lombok.AllArgsConstructor;
+import reactor.core.publisher.Flux;
+
+
+@RequestMapping("/api/v1/")
+@RestController
+@AllArgsConstructor
+public class VehicleController {
+
+    private final VehicleStreamService vehicleStreamService;
+    private final VehicleStreamProperties properties;
+
+    /**
+     * Stream the vehicles inside a bounding box as server-sent events. The first event contains
+     * all vehicles of the area, the following events only the changes. Comments are sent as
+     * heartbeat so idle connections aren't closed by proxies. If the radar poller is disabled or
+     * the maximum number of subscribers is reached the response is
+     * <code>503 SERVICE UNAVAILABLE</code>.
+     */
+    @GetMapping(value = "vehicles/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<VehicleUpdateDTO>> streamVehicles(
+        @RequestParam double north, @RequestParam double west,
+        @RequestParam double south, @RequestParam double east
+    ) {
+        if (north < south || east < west) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bounding box is empty");
+        }
+        if (!vehicleStreamService.isAvailable()) {
+            throw new ResponseStatusException(
+                HttpStatus.SERVICE_UNAVAILABLE, "the vehicle stream needs the radar poller"
+            );
+        }
+        if (vehicleStreamService.getSubscriberCount() >= properties.getMaxSubscribers()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        BoundingBox bbox = new BoundingBox(new Location(north, west), new Location(south, east));
+
+        Flux<ServerSentEvent<VehicleUpdateDTO>> updates = vehicleStreamService.subscribe(bbox)
+            .map(update -> ServerSentEvent.<VehicleUpdateDTO>builder()
+                .event("vehicles")
+                .data(VehicleUpdateDTO.map(update))
+                .build()
+            );
+        Flux<ServerSentEvent<VehicleUpdateDTO>> heartbeat = Flux
+            .interval(properties.getHeartbeat())
+            .map(i -> ServerSentEvent.<VehicleUpdateDTO>builder().comment("heartbeat").build());
+
+        // prefetch of one, so that updates are conflated in the service instead of queued here
+        return Flux.merge(1, updates, heartbeat);
+    }
+
+}
@@ -0,0 +1,35 @@
+package de.thb.ea.public_transport_tracker.controller.api.model;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import de.thb.ea.public_transport_tracker.service.model.TripDelta;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TripDeltaDTO {
+
+    private String version;
+    private boolean full;
+    private List<TripDTO> trips;
+    private List<Long> removed;
+    private List<Long> order;
+
+
+    public static TripDeltaDTO map(TripDelta delta) {
+        return TripDeltaDTO.builder()
+            .version(delta.getVersion())
+            .full(delta.isFull())
+            .trips(delta.getUpserted().stream().map(TripDTO::map).collect(Collectors.toList()))
+            .removed(delta.getRemoved())
+            .order(delta.getOrder())
+            .build();
+    }
+
+}
@@ -0,0 +1,34 @@
+package de.thb.ea.public_transport_tracker.controller.api.model;
+
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VehicleDTO {
+
+    private String tripId;
+    private String direction;
+    private String lineName;
+    private String type;
+    private double latitude;
+    private double longitude;
+
+
+    public static VehicleDTO map(TransitMovement movement) {
+        return VehicleDTO.builder()
+            .tripId(movement.getTripId())
+            .direction(movement.getDirection())
+            .lineName(movement.getLineName())
+            .type(movement.getProduct())
+            .latitude(movement.getLatitude())
+            .longitude(movement.getLongitude())
+            .build();
+    }
+
+}
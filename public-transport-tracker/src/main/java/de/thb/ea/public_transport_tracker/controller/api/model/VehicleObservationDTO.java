@@ -0,0 +1,34 @@
+package de.thb.ea.public_transport_tracker.controller.api.model;
+
+import java.time.Instant;
+
+import de.thb.ea.public_transport_tracker.repository.history.model.VehicleObservation;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VehicleObservationDTO {
+
+    private Instant time;
+    private String tripId;
+    private String lineName;
+    private double latitude;
+    private double longitude;
+
+
+    public static VehicleObservationDTO map(VehicleObservation observation) {
+        return VehicleObservationDTO.builder()
+            .time(observation.getTime())
+            .tripId(observation.getTripId())
+            .lineName(observation.getLineName())
+            .latitude(observation.getLatitude())
+            .longitude(observation.getLongitude())
+            .build();
+    }
+
+}
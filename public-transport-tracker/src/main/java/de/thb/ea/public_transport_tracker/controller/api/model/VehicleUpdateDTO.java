@@ -0,0 +1,34 @@
+package de.thb.ea.public_transport_tracker.controller.api.model;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import de.thb.ea.public_transport_tracker.service.model.VehicleUpdate;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VehicleUpdateDTO {
+
+    private Instant snapshotAt;
+    private List<VehicleDTO> vehicles;
+    private List<String> removed;
+
+
+    public static VehicleUpdateDTO map(VehicleUpdate update) {
+        return VehicleUpdateDTO.builder()
+            .snapshotAt(update.getSnapshotAt())
+            .vehicles(
+                update.getChanged().stream().map(VehicleDTO::map).collect(Collectors.toList())
+            )
+            .removed(update.getRemoved())
+            .build();
+    }
+
+}
@@ -0,0 +1,240 @@
+package de.thb.ea.public_transport_tracker.controller.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.thb.ea.public_transport_tracker.config.property.VbbStubProperties;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.Location;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stand-in for the radar endpoint of the VBB API so the application can be load tested without
+ * sending requests to the real API. Point <code>application.vbb.base-url</code> to
+ * <code>http://localhost:&lt;port&gt;/stub/vbb</code> to use it.
+ * 
+ * The stub simulates a fixed, seeded fleet of vehicles that move around their start position,
+ * so repeated requests return the same trips at slightly different locations. Every vehicle
+ * circles through its own stops, which are evenly spaced on its track; the frames name the stops
+ * the vehicle travels between, like the real endpoint. Latency, error rate and payload size
+ * (number of stopovers per movement) are configurable.
+ */
+@Profile("vbb-stub")
+@RequestMapping("/stub/vbb")
+@RestController
+public class VbbStubController {
+
+    private static final String[] PRODUCTS = {
+        "bus", "bus", "bus", "tram", "subway", "suburban", "regional", "ferry"
+    };
+    private static final String[] STOPS = {
+        "S+U Alexanderplatz", "S+U Hauptbahnhof", "S Ostkreuz", "U Hermannplatz",
+        "S+U Zoologischer Garten", "Potsdam Hauptbahnhof", "S Südkreuz", "U Rathaus Spandau",
+        "S+U Gesundbrunnen", "Flughafen BER", "S Wannsee", "Frankfurt (Oder) Bahnhof",
+        "Cottbus Hauptbahnhof", "Brandenburg Hauptbahnhof", "S+U Pankow", "U Rudow"
+    };
+    // amplitude of the simulated movement in degrees
+    private static final double AMPLITUDE = 0.005;
+    // stops on the track of a vehicle, a vehicle passes a stop every 15 s
+    private static final int STOPS_PER_LAP = 4;
+
+    private final VbbStubProperties properties;
+    private final JsonFactory jsonFactory;
+
+    // simulated fleet
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] phases;
+    private final int[] lines;
+    private final int[] directions;
+
+
+    public VbbStubController(VbbStubProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.jsonFactory = objectMapper.getFactory();
+
+        Random random = new Random(properties.getSeed());
+        int n = properties.getVehicles();
+        latitudes = new double[n];
+        longitudes = new double[n];
+        phases = new double[n];
+        lines = new int[n];
+        directions = new int[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = properties.getSouth()
+                + random.nextDouble() * (properties.getNorth() - properties.getSouth());
+            longitudes[i] = properties.getWest()
+                + random.nextDouble() * (properties.getEast() - properties.getWest());
+            phases[i] = random.nextDouble() * 2. * Math.PI;
+            lines[i] = random.nextInt(Math.max(1, properties.getLines()));
+            directions[i] = random.nextInt(STOPS.length);
+        }
+    }
+
+    @GetMapping(value = "radar", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<byte[]>> radar(
+        @RequestParam double north, @RequestParam double west,
+        @RequestParam double south, @RequestParam double east,
+        @RequestParam(defaultValue = "256") int results,
+        @RequestParam(defaultValue = "30") int duration,
+        @RequestParam(defaultValue = "3") int frames
+    ) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = properties.getLatency().toMillis();
+        long jitter = properties.getLatencyJitter().toMillis();
+        if (jitter > 0) {
+            delay += random.nextLong(jitter + 1);
+        }
+        boolean fail = random.nextDouble() < properties.getErrorRate();
+
+        BoundingBox bbox = new BoundingBox(new Location(north, west), new Location(south, east));
+        return Mono.delay(Duration.ofMillis(delay))
+            .map(i -> fail
+                ? ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).<byte[]>build()
+                : ResponseEntity.ok(render(bbox, results, duration, frames))
+            );
+    }
+
+
+    private byte[] render(BoundingBox bbox, int results, int duration, int frames) {
+        // position of the vehicles on their circular track
+        double t = System.currentTimeMillis() / 60_000. * 2. * Math.PI;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("movements");
+            int count = 0;
+            for (int i = 0; i < latitudes.length && count < results; i++) {
+                double latitude = latitudes[i] + AMPLITUDE * Math.sin(t + phases[i]);
+                double longitude = longitudes[i] + AMPLITUDE * Math.cos(t + phases[i]);
+                if (bbox.contains(latitude, longitude)) {
+                    writeMovement(json, i, latitude, longitude, t, duration, frames);
+                    count++;
+                }
+            }
+            json.writeEndArray();
+            json.writeNumberField("realtimeDataUpdatedAt", Instant.now().getEpochSecond());
+            json.writeEndObject();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private void writeMovement(
+        JsonGenerator json, int i, double latitude, double longitude,
+        double t, int duration, int frames
+    ) throws IOException {
+        int line = lines[i];
+        String product = PRODUCTS[line % PRODUCTS.length];
+
+        json.writeStartObject();
+        json.writeStringField("direction", STOPS[directions[i]]);
+        json.writeStringField("tripId", String.format("1|%d|0|86|1012026", i));
+
+        json.writeObjectFieldStart("line");
+        json.writeStringField("type", "line");
+        json.writeStringField("id", "stub-" + line);
+        json.writeStringField("fahrtNr", Integer.toString(i));
+        json.writeStringField("name", product.substring(0, 1).toUpperCase() + line);
+        json.writeBooleanField("public", true);
+        json.writeStringField("productName", product);
+        json.writeStringField("mode", "bus".equals(product) ? "bus" : "train");
+        json.writeStringField("product", product);
+        json.writeObjectFieldStart("operator");
+        json.writeStringField("type", "operator");
+        json.writeStringField("id", "stub-operator-" + line % 8);
+        json.writeStringField("name", "Stub Operator " + line % 8);
+        json.writeEndObject();
+        json.writeEndObject();
+
+        json.writeObjectFieldStart("location");
+        json.writeStringField("type", "location");
+        json.writeNumberField("latitude", latitude);
+        json.writeNumberField("longitude", longitude);
+        json.writeEndObject();
+
+        // stopovers are skipped by the decoder but make up most of a real payload
+        int origin = stopIndex(t + phases[i]);
+        json.writeArrayFieldStart("nextStopovers");
+        for (int s = 0; s < properties.getStopovers(); s++) {
+            json.writeStartObject();
+            writeStop(json, "stop", i, origin + s + 1);
+            json.writeStringField("arrival", Instant.now().plusSeconds(120L * s).toString());
+            json.writeNumberField("arrivalDelay", 60);
+            json.writeStringField("departure", Instant.now().plusSeconds(120L * s).toString());
+            json.writeNumberField("departureDelay", 60);
+            json.writeStringField("departurePlatform", Integer.toString(s + 1));
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+
+        // the stops the vehicle travels between at the time of each frame
+        json.writeArrayFieldStart("frames");
+        for (int f = 0; f < frames; f++) {
+            long offset = 1000L * duration * f / frames;
+            int stop = stopIndex(t + phases[i] + offset / 60_000. * 2. * Math.PI);
+            json.writeStartObject();
+            writeStop(json, "origin", i, stop);
+            writeStop(json, "destination", i, stop + 1);
+            json.writeNumberField("t", offset);
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeNullField("polyline");
+        json.writeEndObject();
+    }
+
+    /**
+     * @return index of the last stop passed at an angle of the track
+     */
+    private static int stopIndex(double angle) {
+        return (int) Math.floor(angle / (2. * Math.PI / STOPS_PER_LAP));
+    }
+
+    /**
+     * Write a stop on the track of a vehicle.
+     * 
+     * @param vehicle
+     * @param stop      index of the stop on the track, may exceed one lap
+     */
+    private void writeStop(JsonGenerator json, String field, int vehicle, int stop)
+        throws IOException
+    {
+        int lapStop = Math.floorMod(stop, STOPS_PER_LAP);
+        int id = vehicle * STOPS_PER_LAP + lapStop;
+        double angle = lapStop * 2. * Math.PI / STOPS_PER_LAP;
+
+        json.writeObjectFieldStart(field);
+        json.writeStringField("type", "stop");
+        json.writeStringField("id", Integer.toString(900000000 + id));
+        json.writeStringField("name", STOPS[id % STOPS.length]);
+        json.writeObjectFieldStart("location");
+        json.writeStringField("type", "location");
+        json.writeNumberField("latitude", latitudes[vehicle] + AMPLITUDE * Math.sin(angle));
+        json.writeNumberField("longitude", longitudes[vehicle] + AMPLITUDE * Math.cos(angle));
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+}
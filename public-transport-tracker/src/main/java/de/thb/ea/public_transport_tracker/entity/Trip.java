@@ -10,6 +10,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
@@ -30,8 +31,18 @@ import lombok.Setter;
     }
 )
 public class Trip {
+
+    /**
+     * Number of ids a value of the id sequence stands for: the value <code>v</code> reserves the
+     * ids <code>v - ID_ALLOCATION_SIZE + 1</code> to <code>v</code> (pooled optimizer).
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "trips_seq")
+    @SequenceGenerator(
+        name = "trips_seq", sequenceName = "trips_seq", allocationSize = ID_ALLOCATION_SIZE
+    )
     private Long id;
 
     @Column(length = 32, nullable = false, name = "remote_id")
@@ -32,7 +32,8 @@ public class JwtAuthFilter extends OncePerRequestFilter {
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) {
         String path = request.getServletPath();
-        return path.startsWith("/auth") || path.startsWith("/api/v1/trips/nearby");
+        return path.startsWith("/auth") || path.startsWith("/api/v1/trips/nearby")
+            || path.startsWith("/api/v1/vehicles/stream") || path.startsWith("/stub/vbb");
     }
 
     @Override
@@ -0,0 +1,58 @@
+package de.thb.ea.public_transport_tracker.initializer;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.SnapshotPersister;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshotFile;
+import de.thb.ea.public_transport_tracker.service.TripService;
+
+
+/**
+ * Restores the vehicle snapshot and the trip cache written before the last shutdown.
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Component
+public class SnapshotInitializer implements ApplicationRunner {
+
+    private final Logger logger = LoggerFactory.getLogger(SnapshotInitializer.class);
+
+    private final SnapshotPersister snapshotPersister;
+    private final TripService tripService;
+
+
+    public SnapshotInitializer(SnapshotPersister snapshotPersister, TripService tripService) {
+        this.snapshotPersister = snapshotPersister;
+        this.tripService = tripService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Optional<VehicleSnapshotFile.Content> content = snapshotPersister.restore();
+        if (content.isEmpty() || content.get().trips().isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            int restored = tripService.restoreTripCache(content.get().trips());
+            logger.info(String.format(
+                "Restored %d of %d trips into the trip cache in %d ms", restored,
+                content.get().trips().size(), Duration.ofNanos(System.nanoTime() - start).toMillis()
+            ));
+        }
+        catch (RuntimeException e) {
+            // the cache is filled on demand then
+            logger.warn(String.format("Could not restore the trip cache: %s", e.getMessage()));
+        }
+    }
+
+}
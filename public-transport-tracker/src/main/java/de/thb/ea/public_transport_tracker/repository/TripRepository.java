@@ -1,8 +1,12 @@
 package de.thb.ea.public_transport_tracker.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import de.thb.ea.public_transport_tracker.entity.Trip;;
@@ -14,4 +18,55 @@ public interface TripRepository extends CrudRepository<Trip, Long>  {
 
     boolean existsByRemoteOriginAndRemoteId(String remoteOrigin, String remoteId);
 
+    List<Trip> findTripsByRemoteOriginAndRemoteIdIn(
+        String remoteOrigin, Collection<String> remoteIds
+    );
+
+    /**
+     * Reserve a block of {@link Trip#ID_ALLOCATION_SIZE} ids from the id sequence, so trips can
+     * be given their id before they are inserted. Only to be called by the optimizer of the trip
+     * id generator (see {@link de.thb.ea.public_transport_tracker.service.TripIdAllocator}),
+     * which determines the ids a sequence value stands for.
+     * 
+     * @return the next sequence value
+     */
+    @Query(nativeQuery = true, value = "SELECT nextval('trips_seq')")
+    long reserveIdBlock();
+
+    /**
+     * Insert trips with reserved ids and given timestamps (epoch millis) with a single
+     * statement. The arrays are columns, the i-th elements make up the i-th trip. Trips whose id
+     * or natural key already exists are skipped and not returned. Must be called inside a
+     * transaction.
+     * 
+     * @return the inserted trips
+     */
+    @Query(
+        nativeQuery = true,
+        value = """
+            INSERT INTO trips (
+                id, remote_id, remote_origin, direction, line_name, type, created_at, updated_at
+            )
+            SELECT t.id, t.remote_id, t.remote_origin, t.direction, t.line_name, t.type,
+                to_timestamp(t.created_at / 1000.0), to_timestamp(t.created_at / 1000.0)
+            FROM unnest(
+                CAST(:ids AS bigint[]), CAST(:remoteIds AS varchar[]),
+                CAST(:remoteOrigins AS varchar[]), CAST(:directions AS varchar[]),
+                CAST(:lineNames AS varchar[]), CAST(:types AS varchar[]),
+                CAST(:createdAts AS bigint[])
+            ) AS t(id, remote_id, remote_origin, direction, line_name, type, created_at)
+            ON CONFLICT DO NOTHING
+            RETURNING *
+            """
+    )
+    List<Trip> insertTripsWithIds(
+        @Param("ids") Long[] ids,
+        @Param("remoteIds") String[] remoteIds,
+        @Param("remoteOrigins") String[] remoteOrigins,
+        @Param("directions") String[] directions,
+        @Param("lineNames") String[] lineNames,
+        @Param("types") String[] types,
+        @Param("createdAts") Long[] createdAts
+    );
+
 }
@@ -0,0 +1,278 @@
+package de.thb.ea.public_transport_tracker.repository.history;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import de.thb.ea.public_transport_tracker.repository.history.model.VehicleObservation;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+
+/**
+ * Compressed block of observations, the unit that is appended to a segment.
+ * 
+ * <pre>
+ * header   raw length, compressed length (int), min/max time (long, epoch millis),
+ *          min/max latitude, min/max longitude (int, micro degrees), rows (int), crc32 (int)
+ * payload  deflated: strings count, (length, utf-8 bytes)*,
+ *          (time delta, latitude delta, longitude delta, trip ref, line ref + 1)*
+ * </pre>
+ * All payload numbers are varints, deltas are zigzag encoded. Rows are sorted by trip and time,
+ * so consecutive rows mostly belong to the same vehicle and their deltas are small. The header
+ * is stored uncompressed, so blocks outside the time range or bounding box of a query are
+ * skipped without inflating them.
+ */
+class HistoryBlock {
+
+    static final int HEADER_BYTES = Integer.BYTES * 8 + Long.BYTES * 2;
+    private static final double SCALE = 1e6;
+
+    /**
+     * Uncompressed block header.
+     */
+    record Header(
+        int rawLength, int compressedLength, long minTime, long maxTime,
+        int minLatitude, int maxLatitude, int minLongitude, int maxLongitude,
+        int rows, int crc
+    ) {
+
+        static Header read(ByteBuffer buffer) {
+            return new Header(
+                buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong(),
+                buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getInt(), buffer.getInt()
+            );
+        }
+
+        void write(ByteBuffer buffer) {
+            buffer.putInt(rawLength).putInt(compressedLength).putLong(minTime).putLong(maxTime)
+                .putInt(minLatitude).putInt(maxLatitude).putInt(minLongitude).putInt(maxLongitude)
+                .putInt(rows).putInt(crc);
+        }
+
+        boolean overlaps(long from, long to, BoundingBox bbox) {
+            return maxTime >= from && minTime <= to
+                && (bbox == null || (
+                    maxLatitude >= scale(bbox.getSouthEast().getLatitude()) - 1
+                    && minLatitude <= scale(bbox.getNorthWest().getLatitude()) + 1
+                    && maxLongitude >= scale(bbox.getNorthWest().getLongitude()) - 1
+                    && minLongitude <= scale(bbox.getSouthEast().getLongitude()) + 1
+                ));
+        }
+
+    }
+
+    private HistoryBlock() {}
+
+    /**
+     * Encode observations as block.
+     * 
+     * @param observations  at least one observation
+     * @return header and compressed payload
+     */
+    static byte[] encode(List<VehicleObservation> observations) {
+        List<VehicleObservation> rows = new ArrayList<>(observations);
+        rows.sort(Comparator
+            .comparing(VehicleObservation::getTripId, Comparator.nullsFirst(String::compareTo))
+            .thenComparing(VehicleObservation::getTime)
+        );
+
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> values = new ArrayList<>();
+        for (VehicleObservation row : rows) {
+            reference(row.getTripId(), strings, values);
+            reference(row.getLineName(), strings, values);
+        }
+
+        Output raw = new Output();
+        raw.varint(values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            raw.varint(bytes.length);
+            raw.write(bytes, 0, bytes.length);
+        }
+
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        int minLat = Integer.MAX_VALUE;
+        int maxLat = Integer.MIN_VALUE;
+        int minLon = Integer.MAX_VALUE;
+        int maxLon = Integer.MIN_VALUE;
+        long previousTime = 0;
+        int previousLat = 0;
+        int previousLon = 0;
+        for (VehicleObservation row : rows) {
+            long time = row.getTime().toEpochMilli();
+            int lat = scale(row.getLatitude());
+            int lon = scale(row.getLongitude());
+            raw.zigzag(time - previousTime);
+            raw.zigzag(lat - previousLat);
+            raw.zigzag(lon - previousLon);
+            raw.varint(row.getTripId() != null ? strings.get(row.getTripId()) + 1 : 0);
+            raw.varint(row.getLineName() != null ? strings.get(row.getLineName()) + 1 : 0);
+            previousTime = time;
+            previousLat = lat;
+            previousLon = lon;
+
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+            minLat = Math.min(minLat, lat);
+            maxLat = Math.max(maxLat, lat);
+            minLon = Math.min(minLon, lon);
+            maxLon = Math.max(maxLon, lon);
+        }
+
+        byte[] compressed = deflate(raw.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+
+        ByteBuffer block = ByteBuffer.allocate(HEADER_BYTES + compressed.length);
+        new Header(
+            raw.size(), compressed.length, minTime, maxTime, minLat, maxLat, minLon, maxLon,
+            rows.size(), (int) crc.getValue()
+        ).write(block);
+        block.put(compressed);
+        return block.array();
+    }
+
+    /**
+     * Decode the payload of a block.
+     * 
+     * @param header
+     * @param compressed    the compressed payload
+     * @return the observations sorted by trip and time
+     * @throws IllegalStateException if the payload is corrupted
+     */
+    static List<VehicleObservation> decode(Header header, byte[] compressed) {
+        CRC32 crc = new CRC32();
+        crc.update(compressed);
+        if ((int) crc.getValue() != header.crc()) {
+            throw new IllegalStateException("History block is corrupted");
+        }
+
+        ByteBuffer raw = ByteBuffer.wrap(inflate(compressed, header.rawLength()));
+        String[] strings = new String[(int) varint(raw)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[(int) varint(raw)];
+            raw.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        List<VehicleObservation> rows = new ArrayList<>(header.rows());
+        long time = 0;
+        long lat = 0;
+        long lon = 0;
+        for (int i = 0; i < header.rows(); i++) {
+            time += zigzag(raw);
+            lat += zigzag(raw);
+            lon += zigzag(raw);
+            int trip = (int) varint(raw);
+            int line = (int) varint(raw) - 1;
+            rows.add(new VehicleObservation(
+                Instant.ofEpochMilli(time),
+                trip > 0 ? strings[trip - 1] : null,
+                line >= 0 ? strings[line] : null,
+                lat / SCALE, lon / SCALE
+            ));
+        }
+        return rows;
+    }
+
+    static int scale(double degrees) {
+        return (int) Math.round(degrees * SCALE);
+    }
+
+
+    private static void reference(String value, Map<String, Integer> ids, List<String> values) {
+        if (value != null && !ids.containsKey(value)) {
+            ids.put(value, values.size());
+            values.add(value);
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, length, rawLength - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawLength) {
+                throw new IllegalStateException("History block is truncated");
+            }
+            return raw;
+        }
+        catch (DataFormatException e) {
+            throw new IllegalStateException("History block is corrupted", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    private static long varint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long zigzag(ByteBuffer in) {
+        long value = varint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+
+    private static class Output extends ByteArrayOutputStream {
+
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void zigzag(long value) {
+            varint((value << 1) ^ (value >> 63));
+        }
+
+    }
+
+}
@@ -0,0 +1,326 @@
+package de.thb.ea.public_transport_tracker.repository.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import de.thb.ea.public_transport_tracker.repository.history.model.VehicleObservation;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+
+/**
+ * Append-only file holding the observation blocks of one time partition.
+ * 
+ * <pre>
+ * header   magic "PTTH", version (int), partition start (long, epoch millis),
+ *          partition duration (long, millis)
+ * blocks   ({@link HistoryBlock} header, compressed payload)*
+ * </pre>
+ * The block headers are kept in memory, so queries only read the blocks they need. A block that
+ * was only partially written (e.g. on a crash) is cut off when the segment is opened.
+ */
+class HistorySegment {
+
+    private static final int MAGIC = 0x50545448; // PTTH
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES * 2;
+
+    private final Path path;
+    private final Instant start;
+    private final Duration duration;
+    private final List<Block> blocks;
+    private FileChannel channel;
+    private long size;
+
+    /**
+     * Position and header of a block inside the segment file.
+     */
+    record Block(long offset, HistoryBlock.Header header) {}
+
+
+    private HistorySegment(
+        Path path, Instant start, Duration duration, FileChannel channel, List<Block> blocks,
+        long size
+    ) {
+        this.path = path;
+        this.start = start;
+        this.duration = duration;
+        this.channel = channel;
+        this.blocks = blocks;
+        this.size = size;
+    }
+
+    /**
+     * Create an empty segment, an existing file is replaced.
+     * 
+     * @param path
+     * @param start     start of the partition
+     * @param duration  duration of the partition
+     * @return the segment
+     * @throws IOException
+     */
+    static HistorySegment create(Path path, Instant start, Duration duration) throws IOException {
+        FileChannel channel = FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        try {
+            writeHeader(channel, start, duration);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new HistorySegment(path, start, duration, channel, new ArrayList<>(), HEADER_BYTES);
+    }
+
+    /**
+     * Open an existing segment and cut off a partially written block at its end.
+     * 
+     * @param path
+     * @return the segment
+     * @throws IOException if the file can't be read or isn't a segment
+     */
+    static HistorySegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(
+            path, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.read(header, 0) != HEADER_BYTES
+                || header.flip().getInt() != MAGIC
+            ) {
+                throw new IOException("Not a history segment");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported history version %d", version));
+            }
+            Instant start = Instant.ofEpochMilli(header.getLong());
+            Duration duration = Duration.ofMillis(header.getLong());
+
+            List<Block> blocks = new ArrayList<>();
+            long offset = HEADER_BYTES;
+            ByteBuffer blockHeader = ByteBuffer.allocate(HistoryBlock.HEADER_BYTES);
+            while (channel.read(blockHeader.clear(), offset) == HistoryBlock.HEADER_BYTES) {
+                HistoryBlock.Header parsed = HistoryBlock.Header.read(blockHeader.flip());
+                long end = offset + HistoryBlock.HEADER_BYTES + parsed.compressedLength();
+                if (parsed.compressedLength() < 0 || end > channel.size()) {
+                    break;
+                }
+                blocks.add(new Block(offset, parsed));
+                offset = end;
+            }
+            if (offset < channel.size()) {
+                channel.truncate(offset);
+            }
+            return new HistorySegment(path, start, duration, channel, blocks, offset);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    Instant getStart() {
+        return start;
+    }
+
+    Instant getEnd() {
+        return start.plus(duration);
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized int getBlockCount() {
+        return blocks.size();
+    }
+
+    synchronized int getRowCount() {
+        return blocks.stream().mapToInt(block -> block.header().rows()).sum();
+    }
+
+    /**
+     * Append an encoded block and force it to disk.
+     * 
+     * @param block encoded by {@link HistoryBlock#encode}
+     * @throws IOException
+     */
+    synchronized void append(byte[] block) throws IOException {
+        HistoryBlock.Header header = HistoryBlock.Header.read(ByteBuffer.wrap(block));
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        long offset = size;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+        channel.force(false);
+        blocks.add(new Block(size, header));
+        size = offset;
+    }
+
+    /**
+     * Open a reader for the blocks that overlap a time range and bounding box. The reader uses
+     * its own file handle, so it isn't affected by appends or compaction of the segment.
+     * 
+     * @param from
+     * @param to
+     * @param bbox  may be <code>null</code> for all locations
+     * @return the reader, it must be closed
+     * @throws IOException
+     */
+    synchronized Reader reader(Instant from, Instant to, BoundingBox bbox) throws IOException {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        List<Block> matching = blocks.stream()
+            .filter(block -> block.header().overlaps(fromMillis, toMillis, bbox))
+            .toList();
+        return new Reader(FileChannel.open(path, StandardOpenOption.READ), matching);
+    }
+
+    /**
+     * Rewrite the segment with its observations ordered by time and merged into blocks of up to
+     * <code>maxRows</code> rows. Fewer, time-ordered blocks compress better and let queries skip
+     * more blocks. The new file replaces the old one atomically.
+     * 
+     * @param maxRows   maximum number of rows per block
+     * @return <code>true</code> if the segment was rewritten; otherwise <code>false</code>
+     * @throws IOException
+     */
+    synchronized boolean compact(int maxRows) throws IOException {
+        int rows = getRowCount();
+        if (blocks.size() <= (rows + maxRows - 1) / maxRows) {
+            return false;
+        }
+
+        List<VehicleObservation> observations = new ArrayList<>(rows);
+        try (Reader reader = new Reader(FileChannel.open(path, StandardOpenOption.READ), blocks)) {
+            for (Block block : blocks) {
+                observations.addAll(reader.read(block));
+            }
+        }
+        observations.sort(Comparator.comparing(VehicleObservation::getTime));
+
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(),
+            path.getFileName().toString(), ".tmp"
+        );
+        try {
+            HistorySegment compacted = create(temp, start, duration);
+            try {
+                for (int i = 0; i < observations.size(); i += maxRows) {
+                    compacted.append(HistoryBlock.encode(
+                        observations.subList(i, Math.min(i + maxRows, observations.size()))
+                    ));
+                }
+            }
+            finally {
+                compacted.close();
+            }
+            Files.move(
+                temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING
+            );
+
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            blocks.clear();
+            blocks.addAll(compacted.blocks);
+            size = compacted.size;
+            return true;
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Close and delete the segment. Open readers can still finish reading.
+     * 
+     * @throws IOException
+     */
+    synchronized void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+
+    private static void writeHeader(FileChannel channel, Instant start, Duration duration)
+        throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+            .putInt(MAGIC)
+            .putInt(VERSION)
+            .putLong(start.toEpochMilli())
+            .putLong(duration.toMillis())
+            .flip();
+        channel.write(header, 0);
+        channel.force(true);
+    }
+
+
+    /**
+     * Reads the selected blocks of a segment.
+     */
+    static class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final List<Block> blocks;
+
+        private Reader(FileChannel channel, List<Block> blocks) {
+            this.channel = channel;
+            this.blocks = blocks;
+        }
+
+        List<Block> getBlocks() {
+            return blocks;
+        }
+
+        /**
+         * Read and decode a block.
+         * 
+         * @param block
+         * @return the observations of the block
+         * @throws IOException if the block can't be read or is corrupted
+         */
+        List<VehicleObservation> read(Block block) throws IOException {
+            ByteBuffer compressed = ByteBuffer.allocate(block.header().compressedLength());
+            long offset = block.offset() + HistoryBlock.HEADER_BYTES;
+            while (compressed.hasRemaining()) {
+                int n = channel.read(compressed, offset + compressed.position());
+                if (n < 0) {
+                    throw new IOException("History segment is truncated");
+                }
+            }
+            try {
+                return HistoryBlock.decode(block.header(), compressed.array());
+            }
+            catch (IllegalStateException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,265 @@
+package de.thb.ea.public_transport_tracker.repository.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Repository;
+
+import de.thb.ea.public_transport_tracker.config.property.HistoryProperties;
+import de.thb.ea.public_transport_tracker.repository.history.model.VehicleObservation;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Append-only log of vehicle observations on disk. Observations are partitioned by time into
+ * {@link HistorySegment} files of {@link HistoryProperties#getSegmentDuration()}, so retention
+ * drops whole files and a time range query only opens the segments of its range.
+ */
+@Repository
+public class VehicleHistoryRepository implements DisposableBean {
+
+    private static final String SUFFIX = ".history";
+
+    private final Logger logger = LoggerFactory.getLogger(VehicleHistoryRepository.class);
+
+    private final HistoryProperties properties;
+    private final NavigableMap<Instant, HistorySegment> segments = new ConcurrentSkipListMap<>();
+
+
+    public VehicleHistoryRepository(HistoryProperties properties) {
+        this.properties = properties;
+        if (properties.isEnabled()) {
+            load();
+        }
+    }
+
+    /**
+     * Append observations, each to the segment of its partition. The observations of a
+     * partition are written as one block.
+     * 
+     * @param observations
+     * @throws IOException
+     */
+    public void append(List<VehicleObservation> observations) throws IOException {
+        if (observations == null) {
+            throw new IllegalArgumentException("null is not a valid value for observations");
+        }
+
+        Map<Instant, List<VehicleObservation>> partitions = new TreeMap<>();
+        for (VehicleObservation observation : observations) {
+            partitions
+                .computeIfAbsent(partitionStart(observation.getTime()), k -> new ArrayList<>())
+                .add(observation);
+        }
+        for (Map.Entry<Instant, List<VehicleObservation>> partition : partitions.entrySet()) {
+            segment(partition.getKey()).append(HistoryBlock.encode(partition.getValue()));
+        }
+    }
+
+    /**
+     * Stream the observations of a time range, optionally restricted to a bounding box. Segments
+     * and blocks are read lazily on a worker thread, so the stream can be consumed with
+     * backpressure without loading the whole range into memory. Observations are ordered by
+     * segment, within a segment they are only ordered by time per trip.
+     * 
+     * @param from  inclusive
+     * @param to    inclusive
+     * @param bbox  may be <code>null</code> for all locations
+     * @return flux of observations
+     */
+    public Flux<VehicleObservation> query(Instant from, Instant to, BoundingBox bbox) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("null is not a valid value for from or to");
+        }
+
+        return Flux.defer(() -> Flux.fromIterable(List.copyOf(
+                segments.subMap(partitionStart(from), true, partitionStart(to), true).values()
+            )))
+            .concatMap(segment -> Flux.using(
+                () -> segment.reader(from, to, bbox),
+                reader -> Flux.fromIterable(reader.getBlocks())
+                    .concatMapIterable(block -> read(reader, block)),
+                reader -> {
+                    try {
+                        reader.close();
+                    }
+                    catch (IOException e) {
+                        logger.warn(String.format(
+                            "Could not close history segment '%s'", segment.getPath()
+                        ));
+                    }
+                }
+            ))
+            .filter(observation -> !observation.getTime().isBefore(from)
+                && !observation.getTime().isAfter(to)
+                && (bbox == null
+                    || bbox.contains(observation.getLatitude(), observation.getLongitude()))
+            )
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Delete all segments that ended before a point in time.
+     * 
+     * @param time
+     * @return number of deleted segments
+     */
+    public int dropBefore(Instant time) {
+        int dropped = 0;
+        for (HistorySegment segment : List.copyOf(segments.headMap(time).values())) {
+            if (segment.getEnd().isAfter(time)) {
+                continue;
+            }
+            segments.remove(segment.getStart());
+            try {
+                segment.delete();
+                dropped++;
+            }
+            catch (IOException e) {
+                logger.error(String.format(
+                    "Could not delete history segment '%s': %s", segment.getPath(),
+                    e.getMessage()
+                ));
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Compact all segments that ended before a point in time, see
+     * {@link HistorySegment#compact(int)}.
+     * 
+     * @param time
+     * @return number of compacted segments
+     */
+    public int compactBefore(Instant time) {
+        int compacted = 0;
+        for (HistorySegment segment : List.copyOf(segments.headMap(time).values())) {
+            if (segment.getEnd().isAfter(time)) {
+                continue;
+            }
+            try {
+                if (segment.compact(properties.getCompactedBlockSize())) {
+                    compacted++;
+                }
+            }
+            catch (IOException e) {
+                logger.error(String.format(
+                    "Could not compact history segment '%s': %s", segment.getPath(),
+                    e.getMessage()
+                ));
+            }
+        }
+        return compacted;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return total size of all segment files in bytes
+     */
+    public long getSizeBytes() {
+        return segments.values().stream().mapToLong(HistorySegment::getSize).sum();
+    }
+
+    @Override
+    public void destroy() {
+        for (HistorySegment segment : segments.values()) {
+            try {
+                segment.close();
+            }
+            catch (IOException e) {
+                logger.warn(String.format(
+                    "Could not close history segment '%s'", segment.getPath()
+                ));
+            }
+        }
+    }
+
+
+    private Instant partitionStart(Instant time) {
+        long duration = properties.getSegmentDuration().toMillis();
+        return Instant.ofEpochMilli(Math.floorDiv(time.toEpochMilli(), duration) * duration);
+    }
+
+    private HistorySegment segment(Instant start) throws IOException {
+        HistorySegment segment = segments.get(start);
+        if (segment != null) {
+            return segment;
+        }
+        synchronized (segments) {
+            segment = segments.get(start);
+            if (segment == null) {
+                Path directory = Path.of(properties.getDirectory());
+                Files.createDirectories(directory);
+                segment = HistorySegment.create(
+                    directory.resolve(start.toEpochMilli() + SUFFIX), start,
+                    properties.getSegmentDuration()
+                );
+                segments.put(start, segment);
+            }
+            return segment;
+        }
+    }
+
+    private List<VehicleObservation> read(
+        HistorySegment.Reader reader, HistorySegment.Block block
+    ) {
+        try {
+            return reader.read(block);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void load() {
+        Path directory = Path.of(properties.getDirectory());
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    HistorySegment segment = HistorySegment.open(file);
+                    segments.put(segment.getStart(), segment);
+                }
+                catch (IOException e) {
+                    logger.warn(String.format(
+                        "Skipping history segment '%s': %s", file, e.getMessage()
+                    ));
+                }
+            }
+        }
+        catch (IOException e) {
+            logger.error(String.format(
+                "Could not list history directory '%s': %s", directory, e.getMessage()
+            ));
+        }
+
+        logger.info(String.format(
+            "Opened %d history segments (%d bytes) in %d ms", segments.size(), getSizeBytes(),
+            Duration.ofNanos(System.nanoTime() - start).toMillis()
+        ));
+    }
+
+}
@@ -0,0 +1,21 @@
+package de.thb.ea.public_transport_tracker.repository.history.model;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Position of a vehicle at a point in time.
+ */
+@Getter
+@AllArgsConstructor
+public class VehicleObservation {
+
+    private final Instant time;
+    private final String tripId;
+    private final String lineName;
+    private final double latitude;
+    private final double longitude;
+
+}
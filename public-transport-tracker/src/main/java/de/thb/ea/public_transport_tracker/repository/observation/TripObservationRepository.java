@@ -0,0 +1,245 @@
+package de.thb.ea.public_transport_tracker.repository.observation;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+
+import de.thb.ea.public_transport_tracker.repository.observation.model.TripObservation;
+
+/**
+ * Stores trip observations in the table <code>trip_observations</code>, which is partitioned by
+ * day (UTC) into tables named <code>trip_observations_yyyyMMdd</code>. Hibernate can't create
+ * partitioned tables, so the table and its partitions are created here. Observations are
+ * inserted with the <code>COPY</code> protocol and removed by dropping whole partitions.
+ * 
+ * Observations reference their trip with a foreign key that cascades deletes. If the trips table
+ * was recreated (e.g. by <code>spring.jpa.hibernate.ddl-auto=create-drop</code>, which drops the
+ * foreign key along with the table), the trip ids start over and the existing observations refer
+ * to other trips, so they are truncated before the foreign key is added again.
+ */
+@Repository
+public class TripObservationRepository {
+
+    private static final String TABLE = "trip_observations";
+    private static final String TRIP_FOREIGN_KEY = "trip_observations_trip_id_fkey";
+    private static final DateTimeFormatter PARTITION_SUFFIX =
+        DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final Logger logger = LoggerFactory.getLogger(TripObservationRepository.class);
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    // partitions known to exist, so a batch only creates the partitions of new days
+    private final Set<LocalDate> partitions = ConcurrentHashMap.newKeySet();
+    private volatile boolean schemaCreated = false;
+
+
+    public TripObservationRepository(DataSource dataSource, JdbcTemplate jdbcTemplate) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Create the partitioned table if it doesn't exist. The index and the foreign key on the
+     * parent table are created on every partition. If the foreign key is missing the table is
+     * truncated before it is added.
+     */
+    public synchronized void createSchema() {
+        if (schemaCreated) {
+            return;
+        }
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS trip_observations (
+                trip_id bigint NOT NULL,
+                observed_at timestamptz NOT NULL,
+                latitude double precision NOT NULL,
+                longitude double precision NOT NULL
+            ) PARTITION BY RANGE (observed_at)
+            """);
+        jdbcTemplate.execute("""
+            CREATE INDEX IF NOT EXISTS trip_observations_trip_id_observed_at_idx
+            ON trip_observations (trip_id, observed_at)
+            """);
+
+        Integer foreignKeys = jdbcTemplate.queryForObject("""
+            SELECT count(*) FROM pg_constraint
+            WHERE conrelid = 'trip_observations'::regclass AND conname = ?
+            """, Integer.class, TRIP_FOREIGN_KEY);
+        if (foreignKeys == null || foreignKeys == 0) {
+            // the trips were recreated, the observations refer to trips that don't exist anymore
+            jdbcTemplate.execute("TRUNCATE trip_observations");
+            jdbcTemplate.execute(String.format(
+                "ALTER TABLE trip_observations ADD CONSTRAINT %s FOREIGN KEY (trip_id) "
+                    + "REFERENCES trips (id) ON DELETE CASCADE",
+                TRIP_FOREIGN_KEY
+            ));
+            logger.info("Truncated the trip observations and added their foreign key to trips");
+        }
+        schemaCreated = true;
+    }
+
+    /**
+     * Create the partition of a day if it doesn't exist.
+     * 
+     * @param day   day in UTC
+     */
+    public void createPartition(LocalDate day) {
+        if (partitions.contains(day)) {
+            return;
+        }
+        createSchema();
+        jdbcTemplate.execute(String.format(
+            "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+            partitionName(day), TABLE, day.atStartOfDay(ZoneOffset.UTC),
+            day.plusDays(1).atStartOfDay(ZoneOffset.UTC)
+        ));
+        partitions.add(day);
+    }
+
+    /**
+     * @return the days of all existing partitions
+     */
+    public List<LocalDate> getPartitions() {
+        createSchema();
+        List<LocalDate> days = new ArrayList<>();
+        for (String name : jdbcTemplate.queryForList("""
+            SELECT c.relname
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            WHERE p.relname = 'trip_observations'
+            """, String.class)
+        ) {
+            String suffix = name.substring(TABLE.length() + 1);
+            if (suffix.matches("\\d{8}")) {
+                days.add(LocalDate.parse(suffix, PARTITION_SUFFIX));
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Drop the partitions of all days before a day.
+     * 
+     * @param day   first day to keep (UTC)
+     * @return number of dropped partitions
+     */
+    public int dropPartitionsBefore(LocalDate day) {
+        int dropped = 0;
+        for (LocalDate partition : getPartitions()) {
+            if (partition.isBefore(day)) {
+                jdbcTemplate.execute(String.format(
+                    "DROP TABLE IF EXISTS %s", partitionName(partition)
+                ));
+                partitions.remove(partition);
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Insert observations with <code>COPY ... FROM STDIN</code>. The partitions of their days
+     * are created first.
+     * 
+     * @param observations
+     * @return number of inserted rows
+     * @throws SQLException
+     */
+    public long copy(Collection<TripObservation> observations) throws SQLException {
+        if (observations == null) {
+            throw new IllegalArgumentException("null is not a valid value for observations");
+        }
+        if (observations.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder rows = new StringBuilder(observations.size() * 64);
+        for (TripObservation observation : observations) {
+            createPartition(LocalDate.ofInstant(observation.getObservedAt(), ZoneOffset.UTC));
+            // text format: tab separated columns, one row per line
+            rows.append(observation.getTripId()).append('\t')
+                .append(observation.getObservedAt()).append('\t')
+                .append(observation.getLatitude()).append('\t')
+                .append(observation.getLongitude()).append('\n');
+        }
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                "COPY trip_observations (trip_id, observed_at, latitude, longitude) FROM STDIN",
+                new StringReader(rows.toString())
+            );
+        }
+        catch (IOException e) {
+            throw new SQLException("Could not copy trip observations", e);
+        }
+        finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * Get the ids of the given trip ids that exist.
+     * 
+     * @param tripIds
+     * @return the existing trip ids
+     */
+    public List<Long> getExistingTripIds(Collection<Long> tripIds) {
+        if (tripIds == null) {
+            throw new IllegalArgumentException("null is not a valid value for tripIds");
+        }
+        return jdbcTemplate.queryForList(
+            "SELECT id FROM trips WHERE id = ANY(?)", Long.class,
+            (Object) tripIds.toArray(Long[]::new)
+        );
+    }
+
+    /**
+     * Delete up to <code>limit</code> trips that were created before a point in time and have
+     * no observation (i.e. weren't observed within the retained partitions).
+     * 
+     * @param createdBefore
+     * @param limit
+     * @return ids of the deleted trips
+     */
+    public List<Long> deleteUnobservedTrips(Instant createdBefore, int limit) {
+        createSchema();
+        return jdbcTemplate.queryForList("""
+            DELETE FROM trips
+            WHERE id IN (
+                SELECT t.id FROM trips t
+                WHERE t.created_at < ?
+                AND NOT EXISTS (SELECT 1 FROM trip_observations o WHERE o.trip_id = t.id)
+                LIMIT ?
+            )
+            RETURNING id
+            """, Long.class, Timestamp.from(createdBefore), limit);
+    }
+
+
+    private static String partitionName(LocalDate day) {
+        return TABLE + "_" + day.format(PARTITION_SUFFIX);
+    }
+
+}
@@ -0,0 +1,20 @@
+package de.thb.ea.public_transport_tracker.repository.observation.model;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Position of a trip at a point in time.
+ */
+@Getter
+@AllArgsConstructor
+public class TripObservation {
+
+    private final long tripId;
+    private final Instant observedAt;
+    private final double latitude;
+    private final double longitude;
+
+}
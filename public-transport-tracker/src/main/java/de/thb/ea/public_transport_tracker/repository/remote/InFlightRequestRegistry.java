@@ -0,0 +1,92 @@
+package de.thb.ea.public_transport_tracker.repository.remote;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Registry of pending remote requests. Concurrent callers requesting the same key share the
+ * pending request and its result instead of issuing their own request. A request is removed from
+ * the registry as soon as it terminates, so later callers issue a new one.
+ * 
+ * The number of issued and coalesced requests is exported as the counter
+ * <code>&lt;name&gt;</code> with the tag <code>result</code>.
+ */
+public class InFlightRequestRegistry<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter issued;
+    private final Counter coalesced;
+
+
+    public InFlightRequestRegistry(String name, MeterRegistry meterRegistry) {
+        this.issued = Counter.builder(name)
+            .tag("result", "issued")
+            .description("Remote requests that were sent")
+            .register(meterRegistry);
+        this.coalesced = Counter.builder(name)
+            .tag("result", "coalesced")
+            .description("Remote requests that joined an already pending request")
+            .register(meterRegistry);
+        Gauge.builder(name + ".in-flight", inFlight, Map::size)
+            .description("Remote requests that are currently pending")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Execute a request or join the pending request with the same key.
+     * 
+     * @param key       identifies the request (i.e. the request uri)
+     * @param request   creates the request if none is pending for the key
+     * @return the shared result of the request
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> request) {
+        return Mono.defer(() -> {
+            AtomicBoolean created = new AtomicBoolean(false);
+            Mono<V> shared = inFlight.computeIfAbsent(key, k -> {
+                created.set(true);
+                return share(k, request.get());
+            });
+
+            if (created.get()) {
+                issued.increment();
+            }
+            else {
+                coalesced.increment();
+            }
+            return shared;
+        });
+    }
+
+    public long getIssuedCount() {
+        return (long) issued.count();
+    }
+
+    public long getCoalescedCount() {
+        return (long) coalesced.count();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+
+    private Mono<V> share(K key, Mono<V> request) {
+        AtomicReference<Mono<V>> self = new AtomicReference<>();
+        Mono<V> shared = request
+            // only remove this request; a newer one may already be registered for the key
+            .doFinally(signal -> inFlight.remove(key, self.get()))
+            .cache();
+        self.set(shared);
+        return shared;
+    }
+
+}
@@ -0,0 +1,34 @@
+package de.thb.ea.public_transport_tracker.repository.remote;
+
+import java.util.List;
+
+import de.thb.ea.public_transport_tracker.repository.remote.model.RemoteResult;
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import reactor.core.publisher.Mono;
+
+/**
+ * A provider of live vehicle positions. Every bean implementing this interface is queried for
+ * nearby trips.
+ */
+public interface TransitDataSource {
+
+    /**
+     * @return the remote origin the trips of this source are stored with (max. 16 characters)
+     */
+    String getOrigin();
+
+    /**
+     * Find the movements within a radius around a location.
+     * 
+     * @param latitude  center lat
+     * @param longitude center lon
+     * @param radius    radius in meters
+     * @param n         maximum number of movements
+     * @return list of movements in radius, nearest first, or an empty mono if the source is
+     *         unavailable
+     */
+    Mono<RemoteResult<List<TransitMovement>>> findNearbyMovements(
+        double latitude, double longitude, double radius, int n
+    );
+
+}
@@ -0,0 +1,15 @@
+package de.thb.ea.public_transport_tracker.repository.remote.exception;
+
+public class RemoteResponseMappingException extends RemoteRepositoryException {
+
+    public RemoteResponseMappingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public static RemoteResponseMappingException fromUri(String uri, Throwable cause) {
+        return new RemoteResponseMappingException(
+            String.format("Failed to map response of '%s'", uri), cause
+        );
+    }
+
+}
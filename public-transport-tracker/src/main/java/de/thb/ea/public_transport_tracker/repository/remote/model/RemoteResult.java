@@ -0,0 +1,38 @@
+package de.thb.ea.public_transport_tracker.repository.remote.model;
+
+import java.util.function.Function;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Data loaded from a remote repository. Data is marked as stale if it was served from a cache
+ * because fresh data could not (yet) be loaded.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class RemoteResult<T> {
+
+    private final T value;
+    private final boolean stale;
+
+    public static <T> RemoteResult<T> fresh(T value) {
+        return new RemoteResult<>(value, false);
+    }
+
+    public static <T> RemoteResult<T> stale(T value) {
+        return new RemoteResult<>(value, true);
+    }
+
+    /**
+     * Map the value but keep the staleness.
+     * 
+     * @param mapper
+     * @return the mapped result
+     */
+    public <R> RemoteResult<R> map(Function<? super T, ? extends R> mapper) {
+        return new RemoteResult<>(mapper.apply(value), stale);
+    }
+
+}
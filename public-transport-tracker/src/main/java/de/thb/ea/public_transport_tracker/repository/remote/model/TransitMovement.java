@@ -0,0 +1,35 @@
+package de.thb.ea.public_transport_tracker.repository.remote.model;
+
+import java.time.Instant;
+
+/**
+ * Position of a vehicle on a trip, independent of the transit data source it came from.
+ */
+public interface TransitMovement {
+
+    /**
+     * @return id of the trip at the data source
+     */
+    String getTripId();
+
+    String getDirection();
+
+    String getLineName();
+
+    /**
+     * @return the product (vehicle type) of the line, i.e. bus or tram
+     */
+    String getProduct();
+
+    double getLatitude();
+
+    double getLongitude();
+
+    /**
+     * @return time the position was observed or <code>null</code> if unknown
+     */
+    default Instant getObservedAt() {
+        return null;
+    }
+
+}
@@ -0,0 +1,165 @@
+package de.thb.ea.public_transport_tracker.repository.remote.resilience;
+
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.thb.ea.public_transport_tracker.config.property.CircuitBreakerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Circuit breaker for calls to a remote repository.
+ * 
+ * The breaker opens after the configured number of consecutive failures, where a call that takes
+ * longer than the slow call threshold counts as failure. While open, calls are rejected without
+ * being executed. After the open duration a limited number of trial calls is let through
+ * (half open); if they succeed the breaker closes again, otherwise it reopens.
+ * 
+ * The state is exported as gauge <code>&lt;name&gt;.state</code> (0 closed, 1 half open,
+ * 2 open) and every transition is counted in <code>&lt;name&gt;.transitions</code>.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final String name;
+    private final CircuitBreakerProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private int trialCalls = 0;
+    private long openedAt = 0;
+
+
+    public CircuitBreaker(
+        String name, CircuitBreakerProperties properties, MeterRegistry meterRegistry
+    ) {
+        this.name = name;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder(name + ".state", this, e -> e.getState().ordinal())
+            .description("State of the circuit breaker (0 closed, 1 half open, 2 open)")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Execute a call protected by the breaker. A call fails if it errors or completes empty.
+     * 
+     * @param call
+     * @return the result of the call or an empty mono if the breaker rejected or the call failed
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                return Mono.empty();
+            }
+
+            long start = System.nanoTime();
+            return call
+                .doOnNext(e -> onSuccess(Duration.ofNanos(System.nanoTime() - start)))
+                .switchIfEmpty(Mono.fromRunnable(this::onFailure))
+                .doOnError(e -> onFailure());
+        });
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Check whether a call would be let through without acquiring a permission, e.g. before
+     * spending other resources on the call.
+     * 
+     * @return <code>false</code> if a call would be rejected; otherwise <code>true</code>
+     */
+    public synchronized boolean isCallPermitted() {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        return switch (state) {
+            case OPEN -> System.nanoTime() - openedAt >= properties.getOpenDuration().toNanos();
+            case HALF_OPEN -> trialCalls < properties.getHalfOpenCalls();
+            case CLOSED -> true;
+        };
+    }
+
+    /**
+     * @return <code>true</code> if a call may be executed; otherwise <code>false</code>
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < properties.getOpenDuration().toNanos()) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialCalls >= properties.getHalfOpenCalls()) {
+                return false;
+            }
+            trialCalls++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(Duration elapsed) {
+        if (elapsed.compareTo(properties.getSlowCallThreshold()) > 0) {
+            onFailure();
+            return;
+        }
+        failures = 0;
+        if (state == State.HALF_OPEN) {
+            transition(State.CLOSED);
+        }
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN
+            || (state == State.CLOSED && failures >= properties.getFailureThreshold()))
+        {
+            transition(State.OPEN);
+        }
+    }
+
+
+    private void transition(State next) {
+        State previous = state;
+        state = next;
+        trialCalls = 0;
+        if (next == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        if (next == State.CLOSED) {
+            failures = 0;
+        }
+
+        Counter.builder(name + ".transitions")
+            .tag("from", previous.name().toLowerCase())
+            .tag("to", next.name().toLowerCase())
+            .description("State transitions of the circuit breaker")
+            .register(meterRegistry)
+            .increment();
+
+        logger.info(String.format(
+            "Circuit breaker '%s' changed from %s to %s", name, previous, next
+        ));
+    }
+
+}
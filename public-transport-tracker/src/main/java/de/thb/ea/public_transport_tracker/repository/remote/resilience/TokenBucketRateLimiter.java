@@ -0,0 +1,137 @@
+package de.thb.ea.public_transport_tracker.repository.remote.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.thb.ea.public_transport_tracker.config.property.RateLimiterProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Token bucket limiting the calls to a remote repository. The bucket holds up to
+ * <code>burst</code> tokens and is refilled with <code>permitsPerMinute</code> tokens per minute.
+ * 
+ * A call without an available token is queued until its token is refilled, as long as that takes
+ * at most <code>maxWait</code>. Otherwise the call is rejected without being executed.
+ * 
+ * Exported metrics: <code>&lt;name&gt;.calls</code> (tag <code>result</code>: granted, queued,
+ * rejected), <code>&lt;name&gt;.available</code>, <code>&lt;name&gt;.queued</code> and
+ * <code>&lt;name&gt;.wait</code>.
+ */
+public class TokenBucketRateLimiter {
+
+    private final RateLimiterProperties properties;
+
+    private double tokens;
+    private long refilledAt;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Counter granted;
+    private final Counter delayed;
+    private final Counter rejected;
+    private final Timer wait;
+
+
+    public TokenBucketRateLimiter(
+        String name, RateLimiterProperties properties, MeterRegistry meterRegistry
+    ) {
+        this.properties = properties;
+        this.tokens = properties.getBurst();
+        this.refilledAt = System.nanoTime();
+
+        this.granted = Counter.builder(name + ".calls")
+            .tag("result", "granted")
+            .description("Calls executed immediately")
+            .register(meterRegistry);
+        this.delayed = Counter.builder(name + ".calls")
+            .tag("result", "queued")
+            .description("Calls executed after waiting for a token")
+            .register(meterRegistry);
+        this.rejected = Counter.builder(name + ".calls")
+            .tag("result", "rejected")
+            .description("Calls rejected because the quota was exhausted")
+            .register(meterRegistry);
+        this.wait = Timer.builder(name + ".wait")
+            .description("Time calls waited for a token")
+            .register(meterRegistry);
+        Gauge.builder(name + ".available", this, TokenBucketRateLimiter::getAvailableTokens)
+            .description("Tokens currently available")
+            .register(meterRegistry);
+        Gauge.builder(name + ".queued", queued, AtomicInteger::get)
+            .description("Calls currently waiting for a token")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Execute a call once a token is available.
+     * 
+     * @param call
+     * @return the result of the call or an empty mono if the call was rejected
+     */
+    public <T> Mono<T> limit(Mono<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+
+        return Mono.defer(() -> {
+            long waitNanos = reserve();
+            if (waitNanos < 0) {
+                rejected.increment();
+                return Mono.empty();
+            }
+            if (waitNanos == 0) {
+                granted.increment();
+                return call;
+            }
+
+            delayed.increment();
+            wait.record(Duration.ofNanos(waitNanos));
+            queued.incrementAndGet();
+            return Mono.delay(Duration.ofNanos(waitNanos))
+                .doFinally(signal -> queued.decrementAndGet())
+                .then(call);
+        });
+    }
+
+    /**
+     * Reserve a token.
+     * 
+     * @return nanoseconds until the reserved token is available or -1 if the wait would exceed
+     *         the maximum wait time
+     */
+    public synchronized long reserve() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+
+        // tokens below zero are reservations of queued calls
+        long waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano());
+        if (waitNanos > properties.getMaxWait().toNanos()) {
+            return -1;
+        }
+        tokens -= 1;
+        return waitNanos;
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return Math.max(0, tokens);
+    }
+
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(properties.getBurst(), tokens + (now - refilledAt) * tokensPerNano());
+        refilledAt = now;
+    }
+
+    private double tokensPerNano() {
+        return properties.getPermitsPerMinute() / (double) Duration.ofMinutes(1).toNanos();
+    }
+
+}
@@ -1,110 +1,382 @@
 package de.thb.ea.public_transport_tracker.repository.remote.vbb;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import de.thb.ea.public_transport_tracker.config.property.CircuitBreakerProperties;
+import de.thb.ea.public_transport_tracker.config.property.RadarCacheProperties;
+import de.thb.ea.public_transport_tracker.config.property.RadarFramesProperties;
+import de.thb.ea.public_transport_tracker.config.property.RadarPollerProperties;
+import de.thb.ea.public_transport_tracker.config.property.RateLimiterProperties;
+import de.thb.ea.public_transport_tracker.config.property.UpstreamClientProperties;
+import de.thb.ea.public_transport_tracker.config.property.VbbProperties;
+import de.thb.ea.public_transport_tracker.repository.remote.InFlightRequestRegistry;
+import de.thb.ea.public_transport_tracker.repository.remote.TransitDataSource;
+import de.thb.ea.public_transport_tracker.repository.remote.exception.RemoteResponseMappingException;
+import de.thb.ea.public_transport_tracker.repository.remote.model.RemoteResult;
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.resilience.CircuitBreaker;
+import de.thb.ea.public_transport_tracker.repository.remote.resilience.TokenBucketRateLimiter;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.cache.RadarTileCache;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder.LocationFilter;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder.VbbRadarDecoder;
 import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
-import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbRadarResponse;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshot;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshotStore;
+import de.thb.ea.public_transport_tracker.util.GeoRadius;
 import de.thb.ea.public_transport_tracker.util.GeoUtils;
 import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
-import lombok.AllArgsConstructor;
+import de.thb.ea.public_transport_tracker.util.model.GeoTile;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Repository
-@AllArgsConstructor
-public class VbbRepository {
+public class VbbRepository implements TransitDataSource {
 
     private final Logger logger = LoggerFactory.getLogger(VbbRepository.class);
     
-    public static final String API = "https://v6.vbb.transport.rest";
+    public static final String ORIGIN = "vbb";
     private final WebClient webClient;
-    private final ObjectMapper objectMapper;
+    private final VbbProperties vbbProperties;
+    private final VbbRadarDecoder radarDecoder;
+    private final RadarTileCache radarTileCache;
+    private final RadarCacheProperties radarCacheProperties;
+    private final RadarFramesProperties radarFramesProperties;
+    private final VehicleSnapshotStore snapshotStore;
+    private final RadarPollerProperties radarPollerProperties;
+    private final InFlightRequestRegistry<URI, List<VbbMovement>> inFlightRadarRequests;
+    private final CircuitBreaker circuitBreaker;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final int maxBodySize;
+
+
+    public VbbRepository(
+        WebClient webClient, VbbProperties vbbProperties, VbbRadarDecoder radarDecoder,
+        RadarTileCache radarTileCache, RadarCacheProperties radarCacheProperties,
+        RadarFramesProperties radarFramesProperties, VehicleSnapshotStore snapshotStore,
+        RadarPollerProperties radarPollerProperties,
+        CircuitBreakerProperties circuitBreakerProperties,
+        RateLimiterProperties rateLimiterProperties, UpstreamClientProperties clientProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.webClient = webClient;
+        this.vbbProperties = vbbProperties;
+        this.radarDecoder = radarDecoder;
+        this.radarTileCache = radarTileCache;
+        this.radarCacheProperties = radarCacheProperties;
+        this.radarFramesProperties = radarFramesProperties;
+        this.snapshotStore = snapshotStore;
+        this.radarPollerProperties = radarPollerProperties;
+        this.inFlightRadarRequests = new InFlightRequestRegistry<>(
+            "vbb.radar.requests", meterRegistry
+        );
+        this.circuitBreaker = new CircuitBreaker(
+            "vbb.radar.circuit", circuitBreakerProperties, meterRegistry
+        );
+        // one bucket for all outgoing VBB calls
+        this.rateLimiter = new TokenBucketRateLimiter(
+            "vbb.rate-limit", rateLimiterProperties, meterRegistry
+        );
+        this.maxBodySize = (int) clientProperties.getMaxInMemorySize().toBytes();
+    }
+
+    @Override
+    public String getOrigin() {
+        return ORIGIN;
+    }
+
+
+    /**
+     * Find the nearby movements either in the latest radar snapshot (if enabled and available)
+     * or through the radar endpoint. Movements of a snapshot older than the poller ttl (e.g. one
+     * restored on startup) are marked as stale. If the radar endpoint can't be reached and
+     * nothing is cached the mono completes empty.
+     */
+    @Override
+    public Mono<RemoteResult<List<TransitMovement>>> findNearbyMovements(
+        double latitude, double longitude, double radius, int n
+    ) {
+        Mono<RemoteResult<List<VbbMovement>>> movements;
+
+        Optional<VehicleSnapshot> snapshot = radarPollerProperties.isServeNearby()
+            ? snapshotStore.getSnapshot()
+            : Optional.empty();
+        if (snapshot.isPresent()) {
+            List<VbbMovement> nearby = getNearbyMovements(
+                snapshot.get(), latitude, longitude, radius, n
+            );
+            boolean stale = Duration.between(snapshot.get().getCreatedAt(), Instant.now())
+                .compareTo(radarPollerProperties.getTtl()) > 0;
+            movements = Mono.just(stale ? RemoteResult.stale(nearby) : RemoteResult.fresh(nearby));
+        }
+        else {
+            movements = getNearbyMovementsAsync(latitude, longitude, radius, n);
+        }
+
+        return movements.map(
+            result -> result.map(e -> Collections.<TransitMovement>unmodifiableList(e))
+        );
+    }
 
 
     public List<VbbMovement> getNearbyMovements(
         double latitude, double longitude, double radius, int n
+    ) {
+        return getNearbyMovementsAsync(latitude, longitude, radius, n)
+            .blockOptional()
+            .map(RemoteResult::getValue)
+            .orElse(List.of());
+    }
+
+
+    /**
+     * Get the movements within a radius around a location without blocking the calling thread.
+     * 
+     * If cached tiles are older than the ttl they are served as stale while they are refreshed
+     * in the background. The result is marked as stale if any of its tiles was stale or could not
+     * be loaded. If radar frames are enabled the positions are interpolated to the current time.
+     * 
+     * @param latitude  center lat
+     * @param longitude center lon
+     * @param radius    radius in meters
+     * @param n         maximum number of movements
+     * @return list of movements in radius, nearest first, or an empty mono if none of the tiles
+     *         could be loaded
+     */
+    public Mono<RemoteResult<List<VbbMovement>>> getNearbyMovementsAsync(
+        double latitude, double longitude, double radius, int n
     ) {
         BoundingBox bbox = GeoUtils.getBbox(latitude, longitude, radius * 2.);
 
+        if (!radarCacheProperties.isEnabled()) {
+            // drop vehicles outside the radius while decoding
+            LocationFilter inRadius = new GeoRadius(latitude, longitude, radius)::contains;
+            return getMovements(bbox, n, inRadius)
+                .map(movements -> RemoteResult.fresh(
+                    filterNearby(interpolate(movements), latitude, longitude, radius, n)
+                ));
+        }
+
+        // merge the movements of all tiles covering the bounding box
+        return Flux.fromIterable(
+                GeoUtils.getCoveringTiles(bbox, radarCacheProperties.getTileSize())
+            )
+            .flatMapSequential(tile -> getTileMovements(tile)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+            )
+            .collectList()
+            .flatMap(tiles -> {
+                if (tiles.stream().noneMatch(Optional::isPresent)) {
+                    return Mono.empty();
+                }
+
+                Map<String, VbbMovement> movements = new LinkedHashMap<>();
+                boolean stale = false;
+                for (Optional<RemoteResult<List<VbbMovement>>> tile : tiles) {
+                    // a tile that could not be loaded leaves a gap in the result
+                    stale |= tile.isEmpty() || tile.get().isStale();
+                    tile.ifPresent(result -> result.getValue()
+                        .forEach(e -> movements.putIfAbsent(e.getTripId(), e))
+                    );
+                }
+
+                List<VbbMovement> nearby = filterNearby(
+                    interpolate(new ArrayList<>(movements.values())), latitude, longitude, radius, n
+                );
+                return Mono.just(stale ? RemoteResult.stale(nearby) : RemoteResult.fresh(nearby));
+            });
+    }
+
+
+    /**
+     * Get the movements of a snapshot within a radius, nearest first. If radar frames are enabled
+     * the vehicles may have moved into or out of the radius since they were observed, so the
+     * snapshot is searched within the radius padded by the distance a vehicle can travel within
+     * its frames and the movements are filtered after they were interpolated.
+     */
+    private List<VbbMovement> getNearbyMovements(
+        VehicleSnapshot snapshot, double latitude, double longitude, double radius, int n
+    ) {
+        if (!radarFramesProperties.isEnabled()) {
+            return snapshot.getNearbyMovements(latitude, longitude, radius, n);
+        }
+
+        double padding = vbbProperties.getMaxVehicleSpeed()
+            * radarFramesProperties.getDuration().toSeconds();
+        List<VbbMovement> candidates = snapshot.getNearbyMovements(
+            latitude, longitude, radius + padding, Integer.MAX_VALUE
+        );
+        return filterNearby(interpolate(candidates), latitude, longitude, radius, n);
+    }
+
+
+    /**
+     * @return the cached or fetched movements of a tile or an empty mono if the tile is not
+     *         cached and could not be fetched
+     */
+    private Mono<RemoteResult<List<VbbMovement>>> getTileMovements(GeoTile tile) {
+        Optional<RemoteResult<List<VbbMovement>>> cached = radarTileCache.get(tile);
+        if (cached.isPresent()) {
+            if (cached.get().isStale()) {
+                // revalidate in the background; concurrent refreshes of a tile are coalesced
+                fetchTile(tile).subscribe();
+            }
+            return Mono.just(cached.get());
+        }
+
+        return fetchTile(tile).map(RemoteResult::fresh);
+    }
+
+
+    private Mono<List<VbbMovement>> fetchTile(GeoTile tile) {
+        return getMovements(tile.getBbox(), radarCacheProperties.getTileResults())
+            // failed requests are not cached so the next call retries the tile
+            .doOnNext(movements -> radarTileCache.put(tile, movements));
+    }
+
+
+    /**
+     * Move the movements to their interpolated position at the current time.
+     */
+    private List<VbbMovement> interpolate(List<VbbMovement> movements) {
+        if (!radarFramesProperties.isEnabled()) {
+            return movements;
+        }
+        Instant now = Instant.now();
+        return movements.stream().map(e -> e.at(now)).collect(Collectors.toList());
+    }
+
+
+    private List<VbbMovement> filterNearby(
+        List<VbbMovement> movements, double latitude, double longitude, double radius, int n
+    ) {
+        int size = movements.size();
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = movements.get(i).getLatitude();
+            longitudes[i] = movements.get(i).getLongitude();
+        }
+
+        // vehicles that are actually in radius, nearest first
+        int[] nearby = GeoUtils.nearestWithinRadius(
+            latitude, longitude, radius, latitudes, longitudes, size, n
+        );
+        List<VbbMovement> result = new ArrayList<>(nearby.length);
+        for (int i : nearby) {
+            result.add(movements.get(i));
+        }
+        return result;
+    }
+
+
+    /**
+     * Get all movements inside a bounding box from the radar endpoint. Concurrent requests for
+     * the same bounding box share a single upstream request. Requests are queued if the rate limit
+     * is exceeded. While the circuit breaker is open or if the request would have to wait too
+     * long for the rate limit no request is sent and the mono completes empty.
+     * 
+     * @param bbox      area to request
+     * @param results   maximum number of movements
+     * @return the movements or an empty mono if the request failed
+     */
+    public Mono<List<VbbMovement>> getMovements(BoundingBox bbox, int results) {
+        return getMovements(bbox, results, bbox::contains);
+    }
+
+
+    /**
+     * Get the movements inside a bounding box that are accepted by the filter. The filter has to
+     * be determined by the bounding box, since requests for the same bounding box are shared.
+     */
+    private Mono<List<VbbMovement>> getMovements(
+        BoundingBox bbox, int results, LocationFilter filter
+    ) {
+        boolean frames = radarFramesProperties.isEnabled();
         URI uri = UriComponentsBuilder
-            .fromUriString(API + "/radar")
+            .fromUriString(vbbProperties.getBaseUrl() + "/radar")
             .queryParam("north", bbox.getNorthWest().getLatitude())
             .queryParam("west", bbox.getNorthWest().getLongitude())
             .queryParam("south", bbox.getSouthEast().getLatitude())
             .queryParam("east", bbox.getSouthEast().getLongitude())
-            .queryParam("results", n)
-            .queryParam("duration", 0)
-            .queryParam("frames", 0)
+            .queryParam("results", results)
+            .queryParam("duration", frames ? radarFramesProperties.getDuration().toSeconds() : 0)
+            .queryParam("frames", frames ? radarFramesProperties.getFrames() : 0)
             .queryParam("polylines", false)
             .queryParam("language", "de")
             .build()
             .encode()
             .toUri();
 
+        // the breaker is checked before a token is taken, so rejected calls don't use up the
+        // quota; it is acquired after the wait for the token, so the wait doesn't count as latency
+        return inFlightRadarRequests.execute(uri, () -> Mono.defer(
+            () -> circuitBreaker.isCallPermitted()
+                ? rateLimiter.limit(circuitBreaker.protect(fetchRadar(uri, filter)))
+                : Mono.empty()
+        ));
+    }
 
-        ResponseEntity<String> response;
-        try {
-            response = webClient.get()
-                .uri(uri)
-                .retrieve()
-                .toEntity(String.class)
-                .block();
-        }
-        catch (Exception e) {
-            logger.warn(String.format(
-                "Request '%s' failed with error: %s", uri.toString(), e.toString()
-            ));
-            return List.of();
-        }
-
-        if (response.getStatusCode() != HttpStatus.OK) {
-            logger.info(String.format(
-                "Request '%s' failed with HttpStatus %d", uri.toString(), response.getStatusCode()
-            ));
-            return List.of();
-        }
-
-        // check if response is empty
-        if (response.getBody() == null || response.getBody().equals("[]")) {
-            return List.of();
-        }
 
-        VbbRadarResponse radarResponse;
-        try {
-            radarResponse = objectMapper.readValue(
-                response.getBody(), VbbRadarResponse.class
-            );
-        }
-        catch (Exception e) {
-            logger.error(
-                "Failed to map '%s' to VbbRadarResponse: %s",
-                response.getBody(), e.getMessage()
-            );
-            // TODO: throw a RemoteRepositoryException
-            return List.of();
-        }
-        
-        return radarResponse
-            .getMovements()
-            .stream()
-            .filter(
-                // filter for vehicles that are actually in radius
-                e -> GeoUtils.distanceInMeters(
-                    e.getLocation().getLatitude(), e.getLocation().getLongitude(),
-                    latitude, longitude
-                ) <= radius
-            )
-            .collect(Collectors.toList());
+    /**
+     * Fetch the radar response of an uri and decode it straight from the received buffers.
+     * 
+     * @param uri
+     * @param filter    only movements accepted by the filter are decoded
+     * @return the movements or an empty mono if the request failed or the body exceeded the
+     * configured max in memory size
+     */
+    private Mono<List<VbbMovement>> fetchRadar(URI uri, LocationFilter filter) {
+        return webClient.get()
+            .uri(uri)
+            .retrieve()
+            .bodyToFlux(DataBuffer.class)
+            // joined buffers bypass the codecs, so their limit is applied here
+            .as(body -> DataBufferUtils.join(body, maxBodySize))
+            .map(buffer -> {
+                Instant observedAt = Instant.now();
+                try (InputStream body = buffer.asInputStream(true)) {
+                    List<VbbMovement> movements = radarDecoder.decode(body, filter);
+                    // frame offsets are relative to the time of the response
+                    movements.forEach(e -> e.setObservedAt(observedAt));
+                    return movements;
+                }
+                catch (IOException e) {
+                    throw RemoteResponseMappingException.fromUri(uri.toString(), e);
+                }
+            })
+            // an empty body is an empty result
+            .defaultIfEmpty(List.of())
+            .onErrorResume(RemoteResponseMappingException.class, e -> {
+                logger.error(String.format("%s: %s", e.getMessage(), e.getCause().getMessage()));
+                return Mono.empty();
+            })
+            .onErrorResume(e -> {
+                logger.warn(String.format(
+                    "Request '%s' failed with error: %s", uri.toString(), e.toString()
+                ));
+                return Mono.empty();
+            });
     }
 
 }
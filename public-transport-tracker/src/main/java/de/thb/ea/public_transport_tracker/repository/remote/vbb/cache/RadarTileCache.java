@@ -0,0 +1,101 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.config.property.RadarCacheProperties;
+import de.thb.ea.public_transport_tracker.config.property.RadarFramesProperties;
+import de.thb.ea.public_transport_tracker.repository.remote.model.RemoteResult;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.util.model.GeoTile;
+
+/**
+ * Cache for the movements returned by the radar endpoint, keyed by the geo tile they were
+ * requested for. Entries are fresh for the configured ttl and are served as stale for the
+ * configured stale ttl afterwards. If radar frames are enabled entries are fresh at most as long
+ * as the frames last, since positions can't be interpolated past them. The least recently used
+ * tile is evicted if the cache exceeds its maximum size.
+ */
+@Component
+public class RadarTileCache {
+
+    private record Entry(List<VbbMovement> movements, Instant freshUntil, Instant expiresAt) {}
+
+    private final RadarCacheProperties properties;
+    private final RadarFramesProperties framesProperties;
+    private final Map<GeoTile, Entry> entries;
+
+
+    public RadarTileCache(
+        RadarCacheProperties properties, RadarFramesProperties framesProperties
+    ) {
+        this.properties = properties;
+        this.framesProperties = framesProperties;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GeoTile, Entry> eldest) {
+                return size() > properties.getMaxTiles();
+            }
+        };
+    }
+
+    /**
+     * Get the cached movements of a tile.
+     * 
+     * @param tile
+     * @return the movements (marked as stale if older than the ttl) or an empty optional if the
+     *         tile is not cached or expired
+     */
+    public Optional<RemoteResult<List<VbbMovement>>> get(GeoTile tile) {
+        Instant now = Instant.now();
+        synchronized (entries) {
+            Entry entry = entries.get(tile);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            if (entry.expiresAt().isBefore(now)) {
+                entries.remove(tile);
+                return Optional.empty();
+            }
+            return Optional.of(
+                entry.freshUntil().isBefore(now)
+                    ? RemoteResult.stale(entry.movements())
+                    : RemoteResult.fresh(entry.movements())
+            );
+        }
+    }
+
+    /**
+     * Store the movements of a tile.
+     * 
+     * @param tile
+     * @param movements movements located in the tile
+     */
+    public void put(GeoTile tile, List<VbbMovement> movements) {
+        Duration ttl = properties.getTtl();
+        if (framesProperties.isEnabled() && framesProperties.getDuration().compareTo(ttl) < 0) {
+            // the movements can only be interpolated until their frames run out
+            ttl = framesProperties.getDuration();
+        }
+        Instant freshUntil = Instant.now().plus(ttl);
+        Entry entry = new Entry(
+            List.copyOf(movements), freshUntil, freshUntil.plus(properties.getStaleTtl())
+        );
+        synchronized (entries) {
+            entries.put(tile, entry);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder;
+
+/**
+ * Decides while decoding if a movement at a location should be kept.
+ */
+@FunctionalInterface
+public interface LocationFilter {
+
+    LocationFilter ALL = (latitude, longitude) -> true;
+
+    boolean accept(double latitude, double longitude);
+
+}
@@ -0,0 +1,101 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder;
+
+/**
+ * Bounded table of canonical strings that can be looked up by a range of characters, so a
+ * string that is already in the table is returned without allocating a new one.
+ * 
+ * Lookups don't lock; only adding a string does. A lookup that misses a string added
+ * concurrently falls through to the locked path which checks again.
+ */
+class StringTable {
+
+    private final int maxSize;
+    private final String[] table;
+    private volatile int size = 0;
+
+
+    StringTable(int maxSize) {
+        this.maxSize = maxSize;
+        this.table = new String[Integer.highestOneBit(Math.max(16, maxSize * 2 - 1)) << 1];
+    }
+
+    /**
+     * Get the canonical string of a range of characters.
+     * 
+     * @param chars
+     * @param offset
+     * @param length
+     * @return the canonical string or a new string if the table is full
+     */
+    String get(char[] chars, int offset, int length) {
+        int hash = hash(chars, offset, length);
+        String found = find(table, chars, offset, length, hash);
+        if (found != null) {
+            return found;
+        }
+        return add(new String(chars, offset, length), hash);
+    }
+
+    int size() {
+        return size;
+    }
+
+
+    private synchronized String add(String value, int hash) {
+        String[] current = table;
+        int mask = current.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            String entry = current[i];
+            if (entry == null) {
+                if (size >= maxSize) {
+                    return value;
+                }
+                current[i] = value;
+                size++;
+                return value;
+            }
+            if (entry.hashCode() == hash && entry.equals(value)) {
+                return entry;
+            }
+        }
+    }
+
+    private static String find(
+        String[] table, char[] chars, int offset, int length, int hash
+    ) {
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            String entry = table[i];
+            if (entry == null) {
+                return null;
+            }
+            if (entry.hashCode() == hash && matches(entry, chars, offset, length)) {
+                return entry;
+            }
+        }
+    }
+
+    private static boolean matches(String entry, char[] chars, int offset, int length) {
+        if (entry.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (entry.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same hash as {@link String#hashCode()}.
+     */
+    private static int hash(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        return hash;
+    }
+
+}
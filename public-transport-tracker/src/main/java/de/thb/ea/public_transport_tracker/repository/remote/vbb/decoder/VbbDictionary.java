@@ -0,0 +1,141 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import de.thb.ea.public_transport_tracker.config.property.VbbDictionaryProperties;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLine;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbOperator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Long-lived dictionary of the values that repeat across radar responses. Strings (directions,
+ * line names, products, ...) are read straight from the parser's buffer and reused if known;
+ * lines and operators are canonicalized by id, so all movements of a line share one instance.
+ * 
+ * The canonical instances are shared between responses and must not be modified. All parts of
+ * the dictionary are bounded; once full, new values are returned without being added.
+ */
+@Component
+public class VbbDictionary {
+
+    private final VbbDictionaryProperties properties;
+    private final StringTable strings;
+    private final Map<String, VbbLine> lines = new ConcurrentHashMap<>();
+    private final Map<String, VbbOperator> operators = new ConcurrentHashMap<>();
+
+
+    public VbbDictionary(VbbDictionaryProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.strings = new StringTable(properties.getMaxStrings());
+
+        Gauge.builder("vbb.dictionary.size", strings, StringTable::size)
+            .tag("kind", "string")
+            .register(meterRegistry);
+        Gauge.builder("vbb.dictionary.size", lines, Map::size)
+            .tag("kind", "line")
+            .register(meterRegistry);
+        Gauge.builder("vbb.dictionary.size", operators, Map::size)
+            .tag("kind", "operator")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Get the current string value of the parser.
+     * 
+     * @param parser
+     * @return the canonical string or <code>null</code> if the value is null
+     * @throws IOException
+     */
+    public String string(JsonParser parser) throws IOException {
+        if (!properties.isEnabled() || parser.currentToken() != JsonToken.VALUE_STRING) {
+            return parser.getValueAsString();
+        }
+        return strings.get(
+            parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()
+        );
+    }
+
+    /**
+     * Get the canonical instance of a string.
+     * 
+     * @param value
+     * @return the canonical string or <code>null</code> if the value is null
+     */
+    public String string(String value) {
+        if (!properties.isEnabled() || value == null) {
+            return value;
+        }
+        return strings.get(value.toCharArray(), 0, value.length());
+    }
+
+    /**
+     * Get the canonical instance of a line. A new line is only created if the line is unknown or
+     * changed. The strings should be canonical, since they are compared by reference first.
+     * 
+     * @return the canonical line with the given values
+     */
+    public VbbLine line(
+        String id, String name, String productName, String mode, String product,
+        Boolean isPublic, VbbOperator operator
+    ) {
+        VbbLine known = properties.isEnabled() && id != null ? lines.get(id) : null;
+        if (known != null
+            && Objects.equals(known.getName(), name)
+            && Objects.equals(known.getProductName(), productName)
+            && Objects.equals(known.getMode(), mode)
+            && Objects.equals(known.getProduct(), product)
+            && Objects.equals(known.getIsPublic(), isPublic)
+            && known.getOperator() == operator)
+        {
+            return known;
+        }
+
+        VbbLine line = new VbbLine();
+        line.setId(id);
+        line.setName(name);
+        line.setProductName(productName);
+        line.setMode(mode);
+        line.setProduct(product);
+        line.setIsPublic(isPublic);
+        line.setOperator(operator);
+        if (properties.isEnabled() && id != null
+            && (known != null || lines.size() < properties.getMaxLines()))
+        {
+            // the line is new or changed upstream
+            lines.put(id, line);
+        }
+        return line;
+    }
+
+    /**
+     * Get the canonical instance of an operator.
+     * 
+     * @return the canonical operator with the given values
+     */
+    public VbbOperator operator(String id, String name) {
+        VbbOperator known = properties.isEnabled() && id != null ? operators.get(id) : null;
+        if (known != null && Objects.equals(known.getName(), name)) {
+            return known;
+        }
+
+        VbbOperator operator = new VbbOperator();
+        operator.setId(id);
+        operator.setName(name);
+        if (properties.isEnabled() && id != null
+            && (known != null || operators.size() < properties.getMaxOperators()))
+        {
+            operators.put(id, operator);
+        }
+        return operator;
+    }
+
+}
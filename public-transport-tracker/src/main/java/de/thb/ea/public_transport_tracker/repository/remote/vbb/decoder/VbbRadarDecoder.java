@@ -0,0 +1,382 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.thb.ea.public_transport_tracker.config.property.RadarFramesProperties;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbFrame;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLine;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLocation;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbOperator;
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+
+/**
+ * Streaming decoder for responses of the radar endpoint. The response is read token by token,
+ * fields that are not part of the movement model (i.e. stopovers, polylines) are skipped
+ * without being materialized and movements rejected by the location filter are never allocated.
+ * Lines, operators and repeating strings are canonicalized through the {@link VbbDictionary}.
+ */
+@Component
+public class VbbRadarDecoder {
+
+    /**
+     * Frame as sent by the radar endpoint: the stops the vehicle travels between at a time.
+     */
+    private record StopFrame(
+        long offset, String originId, double originLatitude, double originLongitude,
+        String destinationId, double destinationLatitude, double destinationLongitude
+    ) {}
+
+    private final JsonFactory jsonFactory;
+    private final VbbDictionary dictionary;
+    private final RadarFramesProperties framesProperties;
+
+
+    public VbbRadarDecoder(
+        ObjectMapper objectMapper, VbbDictionary dictionary,
+        RadarFramesProperties framesProperties
+    ) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.dictionary = dictionary;
+        this.framesProperties = framesProperties;
+    }
+
+    /**
+     * Decode a radar response.
+     * 
+     * @param in        the response body
+     * @param filter    only movements at locations accepted by the filter are decoded
+     * @return list of decoded movements
+     * @throws IOException if the body is not a valid radar response
+     */
+    public List<VbbMovement> decode(InputStream in, LocationFilter filter) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            JsonToken token = parser.nextToken();
+
+            // an empty result is sent as empty array
+            if (token == null || token == JsonToken.START_ARRAY) {
+                return List.of();
+            }
+            expect(parser, JsonToken.START_OBJECT);
+
+            List<VbbMovement> movements = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                token = parser.nextToken();
+
+                if ("movements".equals(field) && token == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        VbbMovement movement = readMovement(parser, filter);
+                        if (movement != null) {
+                            movements.add(movement);
+                        }
+                    }
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+            return movements;
+        }
+    }
+
+
+    /**
+     * Read a movement object. The parser has to be positioned on its start token.
+     * 
+     * @return the movement or <code>null</code> if it has no location or is filtered
+     */
+    private VbbMovement readMovement(JsonParser parser, LocationFilter filter)
+        throws IOException
+    {
+        String tripId = null;
+        String direction = null;
+        VbbLine line = null;
+        String locationId = null;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        List<StopFrame> frames = List.of();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            switch (field) {
+                case "tripId" -> tripId = parser.getValueAsString();
+                case "direction" -> direction = dictionary.string(parser);
+                case "line" -> {
+                    if (token == JsonToken.START_OBJECT) {
+                        line = readLine(parser);
+                    }
+                }
+                case "location" -> {
+                    if (token != JsonToken.START_OBJECT) {
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String locationField = parser.currentName();
+                        parser.nextToken();
+                        switch (locationField) {
+                            case "id" -> locationId = dictionary.string(parser);
+                            case "latitude" -> latitude = parser.getValueAsDouble(Double.NaN);
+                            case "longitude" -> longitude = parser.getValueAsDouble(Double.NaN);
+                            default -> parser.skipChildren();
+                        }
+                    }
+                }
+                case "frames" -> {
+                    boolean rejected = !Double.isNaN(latitude) && !Double.isNaN(longitude)
+                        && !filter.accept(latitude, longitude);
+                    if (token == JsonToken.START_ARRAY && !rejected) {
+                        frames = readFrames(parser);
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)
+            || !filter.accept(latitude, longitude))
+        {
+            return null;
+        }
+
+        VbbLocation location = new VbbLocation();
+        location.setId(locationId);
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+
+        VbbMovement movement = new VbbMovement();
+        movement.setTripId(tripId);
+        movement.setDirection(direction);
+        movement.setLine(line);
+        movement.setLocation(location);
+        movement.setFrames(toFrames(frames, latitude, longitude));
+        return movement;
+    }
+
+    /**
+     * Read the frames of a movement. A frame only names the stops the vehicle travels between at
+     * its time, the positions are estimated by {@link #toFrames(List, double, double)}.
+     */
+    private List<StopFrame> readFrames(JsonParser parser) throws IOException {
+        List<StopFrame> frames = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            long offset = -1;
+            String originId = null;
+            double[] origin = { Double.NaN, Double.NaN };
+            String destinationId = null;
+            double[] destination = { Double.NaN, Double.NaN };
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                switch (field) {
+                    case "t" -> offset = parser.getValueAsLong(-1);
+                    case "origin" -> {
+                        if (token == JsonToken.START_OBJECT) {
+                            originId = readStop(parser, origin);
+                        }
+                    }
+                    case "destination" -> {
+                        if (token == JsonToken.START_OBJECT) {
+                            destinationId = readStop(parser, destination);
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+
+            if (offset >= 0 && originId != null && !Double.isNaN(origin[0])
+                && !Double.isNaN(origin[1])
+            ) {
+                frames.add(new StopFrame(
+                    offset, originId, origin[0], origin[1],
+                    destinationId, destination[0], destination[1]
+                ));
+            }
+        }
+        expect(parser, JsonToken.END_ARRAY);
+        return frames;
+    }
+
+    /**
+     * Read a stop with a nested location. The parser has to be positioned on its start token.
+     * 
+     * @param location  receives latitude and longitude
+     * @return the id of the stop
+     */
+    private String readStop(JsonParser parser, double[] location) throws IOException {
+        String id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("id".equals(field)) {
+                id = dictionary.string(parser);
+            }
+            else if ("location".equals(field) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String locationField = parser.currentName();
+                    parser.nextToken();
+                    switch (locationField) {
+                        case "latitude" -> location[0] = parser.getValueAsDouble(Double.NaN);
+                        case "longitude" -> location[1] = parser.getValueAsDouble(Double.NaN);
+                        default -> parser.skipChildren();
+                    }
+                }
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Estimate the position of the vehicle at every frame. A frame with a new origin marks the
+     * arrival at that stop, so the vehicle is at the stop at that time. In between the vehicle
+     * moves in a straight line from its last known position towards the destination: it arrives
+     * at the time of the next arrival frame or, if it doesn't arrive within the frames, it moves
+     * at the assumed speed and stops at the destination.
+     * 
+     * @param frames    frames ordered by offset
+     * @param latitude  observed position
+     * @param longitude observed position
+     * @return the estimated positions, without the frame at the time of the observation
+     */
+    private List<VbbFrame> toFrames(List<StopFrame> frames, double latitude, double longitude) {
+        if (frames.isEmpty() || Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return List.of();
+        }
+
+        List<VbbFrame> positions = new ArrayList<>(frames.size());
+        // last known position of the vehicle
+        long fromOffset = 0;
+        double fromLatitude = latitude;
+        double fromLongitude = longitude;
+        String currentOrigin = frames.get(0).originId();
+
+        for (int i = 0; i < frames.size(); i++) {
+            StopFrame frame = frames.get(i);
+            if (!frame.originId().equals(currentOrigin)) {
+                // arrived at the origin of this frame
+                fromOffset = frame.offset();
+                fromLatitude = frame.originLatitude();
+                fromLongitude = frame.originLongitude();
+                currentOrigin = frame.originId();
+                if (frame.offset() > 0) {
+                    positions.add(new VbbFrame(frame.offset(), fromLatitude, fromLongitude));
+                }
+                continue;
+            }
+            if (frame.offset() <= fromOffset || frame.destinationId() == null
+                || Double.isNaN(frame.destinationLatitude())
+                || Double.isNaN(frame.destinationLongitude())
+            ) {
+                continue;
+            }
+
+            long arrival = -1;
+            for (int j = i + 1; j < frames.size(); j++) {
+                if (!frames.get(j).originId().equals(currentOrigin)) {
+                    arrival = frames.get(j).originId().equals(frame.destinationId())
+                        ? frames.get(j).offset()
+                        : -1;
+                    break;
+                }
+            }
+
+            double fraction;
+            if (arrival > fromOffset) {
+                fraction = (double) (frame.offset() - fromOffset) / (arrival - fromOffset);
+            }
+            else {
+                double distance = GeoUtils.distanceInMeters(
+                    fromLatitude, fromLongitude,
+                    frame.destinationLatitude(), frame.destinationLongitude()
+                );
+                double travelled = framesProperties.getAssumedSpeed()
+                    * (frame.offset() - fromOffset) / 1000.;
+                fraction = distance > 0 ? Math.min(1., travelled / distance) : 1.;
+            }
+            positions.add(new VbbFrame(
+                frame.offset(),
+                fromLatitude + (frame.destinationLatitude() - fromLatitude) * fraction,
+                fromLongitude + (frame.destinationLongitude() - fromLongitude) * fraction
+            ));
+        }
+        return positions;
+    }
+
+    private VbbLine readLine(JsonParser parser) throws IOException {
+        String id = null;
+        String name = null;
+        String productName = null;
+        String mode = null;
+        String product = null;
+        Boolean isPublic = null;
+        VbbOperator operator = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            switch (field) {
+                case "id" -> id = dictionary.string(parser);
+                case "name" -> name = dictionary.string(parser);
+                case "productName" -> productName = dictionary.string(parser);
+                case "mode" -> mode = dictionary.string(parser);
+                case "product" -> product = dictionary.string(parser);
+                case "public" -> isPublic =
+                    token == JsonToken.VALUE_NULL ? null : parser.getValueAsBoolean();
+                case "operator" -> {
+                    if (token == JsonToken.START_OBJECT) {
+                        operator = readOperator(parser);
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return dictionary.line(id, name, productName, mode, product, isPublic, operator);
+    }
+
+    private VbbOperator readOperator(JsonParser parser) throws IOException {
+        String id = null;
+        String name = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+
+            switch (field) {
+                case "id" -> id = dictionary.string(parser);
+                case "name" -> name = dictionary.string(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return dictionary.operator(id, name);
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected) throws IOException {
+        if (parser.currentToken() != expected) {
+            throw new IOException(String.format(
+                "Expected %s but got %s at %s",
+                expected, parser.currentToken(), parser.currentLocation()
+            ));
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Predicted position of a vehicle at a point in time after the movement was observed.
+ */
+@Getter
+@AllArgsConstructor
+public class VbbFrame {
+
+    /**
+     * Milliseconds after the observation of the movement.
+     */
+    private final long offset;
+    private final double latitude;
+    private final double longitude;
+
+}
@@ -1,18 +1,103 @@
 package de.thb.ea.public_transport_tracker.repository.remote.vbb.model;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
 import lombok.Getter;
 import lombok.Setter;
 
 @Getter
 @Setter
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class VbbMovement {
+public class VbbMovement implements TransitMovement {
     
     private String tripId;
     private String direction;
     private VbbLine line;
     private VbbLocation location;
 
+    /**
+     * Predicted positions ordered by offset, empty if no frames were requested.
+     */
+    @JsonIgnore
+    private List<VbbFrame> frames = List.of();
+
+    /**
+     * Time the location was observed, the frame offsets are relative to it.
+     */
+    @JsonIgnore
+    private Instant observedAt;
+
+    @Override
+    public String getLineName() {
+        return line != null ? line.getName() : null;
+    }
+
+    @Override
+    public String getProduct() {
+        return line != null ? line.getProduct() : null;
+    }
+
+    @Override
+    public double getLatitude() {
+        return location.getLatitude();
+    }
+
+    @Override
+    public double getLongitude() {
+        return location.getLongitude();
+    }
+
+    /**
+     * Get the movement with the position interpolated between its frames at a point in time.
+     * Before the observation the observed location is used, after the last frame the position
+     * of the last frame.
+     * 
+     * @param time
+     * @return a copy of the movement at the interpolated position (without frames) or the
+     *         movement itself if it has no frames
+     */
+    public VbbMovement at(Instant time) {
+        if (frames.isEmpty() || observedAt == null || location == null) {
+            return this;
+        }
+
+        long elapsed = Duration.between(observedAt, time).toMillis();
+        double latitude = getLatitude();
+        double longitude = getLongitude();
+        long offset = 0;
+        for (VbbFrame frame : frames) {
+            if (elapsed <= offset) {
+                break;
+            }
+            if (elapsed < frame.getOffset()) {
+                double fraction = (double) (elapsed - offset) / (frame.getOffset() - offset);
+                latitude += (frame.getLatitude() - latitude) * fraction;
+                longitude += (frame.getLongitude() - longitude) * fraction;
+                break;
+            }
+            latitude = frame.getLatitude();
+            longitude = frame.getLongitude();
+            offset = frame.getOffset();
+        }
+
+        VbbLocation interpolated = new VbbLocation();
+        interpolated.setId(location.getId());
+        interpolated.setLatitude(latitude);
+        interpolated.setLongitude(longitude);
+
+        VbbMovement movement = new VbbMovement();
+        movement.setTripId(tripId);
+        movement.setDirection(direction);
+        movement.setLine(line);
+        movement.setLocation(interpolated);
+        movement.setObservedAt(observedAt);
+        return movement;
+    }
+
 }
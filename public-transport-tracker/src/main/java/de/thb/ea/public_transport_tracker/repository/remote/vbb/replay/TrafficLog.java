@@ -0,0 +1,306 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only log of upstream exchanges.
+ * 
+ * <pre>
+ * header   magic "PTTR", version (int)
+ * entries  (time (long, epoch millis), latency (int, millis), status (short), uri (utf),
+ *          content type (utf), body length (int), compressed length (int),
+ *          deflated body)*
+ * </pre>
+ * Bodies are compressed one by one, so an entry that was only partially written (e.g. on a
+ * crash) only loses that entry; it is ignored when the log is read and cut off when the log is
+ * appended to. Reading keeps only the
+ * entry metadata in memory, bodies are read on demand.
+ */
+class TrafficLog {
+
+    private static final int MAGIC = 0x50545452; // PTTR
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * Metadata of a logged exchange.
+     * 
+     * @param offset    position of the compressed body in the log
+     */
+    record Entry(
+        long time, int latency, int status, String uri, String contentType, int bodyLength,
+        int compressedLength, long offset
+    ) {}
+
+    private TrafficLog() {}
+
+
+    /**
+     * Appends entries to a log file.
+     */
+    static class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        /**
+         * Open a log for appending, a new log is created if the file doesn't exist. A partially
+         * written last entry of an existing log is cut off, so the appended entries follow the
+         * last complete one.
+         * 
+         * @param path
+         * @throws IOException if the file can't be written or isn't a traffic log
+         */
+        Writer(Path path) throws IOException {
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            long length = Files.exists(path) ? completeLength(path) : 0;
+            try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.CREATE, StandardOpenOption.WRITE
+            )) {
+                channel.truncate(length);
+            }
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                path, StandardOpenOption.APPEND
+            ), 1 << 16));
+            if (length == 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.flush();
+            }
+        }
+
+        synchronized void append(
+            long time, int latency, int status, String uri, String contentType, byte[] body
+        ) throws IOException {
+            deflater.reset();
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] compressed = new byte[body.length + body.length / 1000 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+
+            out.writeLong(time);
+            out.writeInt(latency);
+            out.writeShort(status);
+            out.writeUTF(uri);
+            out.writeUTF(contentType != null ? contentType : "");
+            out.writeInt(body.length);
+            out.writeInt(length);
+            out.write(compressed, 0, length);
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            deflater.end();
+            out.close();
+        }
+
+
+        /**
+         * @return the length of a log up to the end of its last complete entry or 0 if not even
+         *         its header was written completely
+         * @throws IOException if the file isn't a traffic log
+         */
+        private static long completeLength(Path path) throws IOException {
+            if (Files.size(path) < HEADER_LENGTH) {
+                return 0;
+            }
+            try (Reader reader = new Reader(path)) {
+                List<Entry> entries = reader.getEntries();
+                if (entries.isEmpty()) {
+                    return HEADER_LENGTH;
+                }
+                Entry last = entries.getLast();
+                return last.offset() + last.compressedLength();
+            }
+        }
+
+    }
+
+
+    /**
+     * Reads the entries of a log file.
+     */
+    static class Reader implements Closeable {
+
+        private final FileChannel channel;
+        private final List<Entry> entries;
+
+        /**
+         * Open a log and read the metadata of all complete entries.
+         * 
+         * @param path
+         * @throws IOException if the file can't be read or isn't a traffic log
+         */
+        Reader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                this.entries = readEntries();
+            }
+            catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the entries in the order they were logged
+         */
+        List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Read and decompress the body of an entry.
+         * 
+         * @param entry
+         * @return the body
+         * @throws IOException
+         */
+        byte[] read(Entry entry) throws IOException {
+            ByteBuffer compressed = ByteBuffer.allocate(entry.compressedLength());
+            while (compressed.hasRemaining()) {
+                if (channel.read(compressed, entry.offset() + compressed.position()) < 0) {
+                    throw new IOException("Traffic log is truncated");
+                }
+            }
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed.array());
+                byte[] body = new byte[entry.bodyLength()];
+                int length = 0;
+                while (length < body.length && !inflater.finished()) {
+                    int n = inflater.inflate(body, length, body.length - length);
+                    if (n == 0 && inflater.needsInput()) {
+                        break;
+                    }
+                    length += n;
+                }
+                if (length != body.length) {
+                    throw new IOException("Traffic log entry is truncated");
+                }
+                return body;
+            }
+            catch (DataFormatException e) {
+                throw new IOException("Traffic log entry is corrupted", e);
+            }
+            finally {
+                inflater.end();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+
+        private List<Entry> readEntries() throws IOException {
+            // counts the bytes consumed by the data stream, i.e. the position in the log
+            CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16)
+            );
+            DataInputStream in = new DataInputStream(counter);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a traffic log");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported traffic log version %d", version));
+            }
+
+            List<Entry> entries = new ArrayList<>();
+            long size = channel.size();
+            try {
+                while (true) {
+                    long time = in.readLong();
+                    int latency = in.readInt();
+                    int status = in.readShort();
+                    String uri = in.readUTF();
+                    String contentType = in.readUTF();
+                    int bodyLength = in.readInt();
+                    int compressedLength = in.readInt();
+                    long offset = counter.count;
+                    if (compressedLength < 0 || offset + compressedLength > size) {
+                        break;
+                    }
+                    in.skipNBytes(compressedLength);
+                    entries.add(new Entry(
+                        time, latency, status, uri, contentType.isEmpty() ? null : contentType,
+                        bodyLength, compressedLength, offset
+                    ));
+                }
+            }
+            catch (EOFException e) {
+                // end of the log or a partially written entry
+            }
+            return entries;
+        }
+
+    }
+
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.replay;
+
+/**
+ * How upstream VBB traffic is handled by the {@link TrafficReplayFilter}.
+ */
+public enum TrafficMode {
+
+    /** Requests go to the network. */
+    OFF,
+
+    /** Requests go to the network, every exchange is appended to the traffic log. */
+    RECORD,
+
+    /** Requests are answered from the traffic log, nothing goes to the network. */
+    REPLAY
+
+}
@@ -0,0 +1,347 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.replay;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import de.thb.ea.public_transport_tracker.config.property.TrafficReplayProperties;
+import de.thb.ea.public_transport_tracker.config.property.UpstreamClientProperties;
+import de.thb.ea.public_transport_tracker.config.property.VbbProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Records the exchanges with the VBB API to a {@link TrafficLog} or answers the requests from a
+ * recorded log instead of the network, depending on the {@link TrafficMode}. Requests to other
+ * hosts are passed through.
+ * 
+ * A replay runs on a virtual clock that starts at the time of the first logged exchange when
+ * the first request is replayed and advances with the configured speed. A request is answered
+ * with the latest matching exchange that was logged before the virtual time, after the logged
+ * latency (divided by the speed). Uris are logged relative to the base url, so traffic recorded
+ * from the real API can be replayed against any base url.
+ * 
+ * Requests are matched by path and query parameters regardless of their order. The bounding box
+ * of radar requests depends on the requested location, so it doesn't have to match exactly: the
+ * smallest recorded bounding box that contains the requested one is used, the movements outside
+ * the requested box are dropped by the decoder. A request without a matching exchange is passed
+ * through, so a replay miss isn't counted as a failure by the circuit breaker.
+ */
+@Component
+public class TrafficReplayFilter implements ExchangeFilterFunction, DisposableBean {
+
+    private static final List<String> BBOX_PARAMS = List.of("north", "west", "south", "east");
+
+    private final Logger logger = LoggerFactory.getLogger(TrafficReplayFilter.class);
+
+    private final TrafficReplayProperties properties;
+    private final VbbProperties vbbProperties;
+    private final int maxBodySize;
+
+    private TrafficLog.Writer writer;
+    // the log is written on its own thread, so the event loop isn't blocked by file io
+    private Scheduler writeScheduler;
+
+    private TrafficLog.Reader reader;
+    // recorded areas by request key
+    private final Map<String, List<Area>> areas = new HashMap<>();
+    private final Set<String> missed = ConcurrentHashMap.newKeySet();
+    private long firstTime;
+    private long span;
+    private final AtomicLong replayStart = new AtomicLong();
+
+    /**
+     * Exchanges of one uri ordered by time.
+     */
+    private record Timeline(long[] times, TrafficLog.Entry[] entries) {}
+
+    /**
+     * Request without its bounding box.
+     * 
+     * @param key       path and sorted query parameters except the bounding box
+     * @param bounds    north, west, south and east or <code>null</code> if it has no bounding box
+     */
+    private record RequestKey(String key, List<Double> bounds) {}
+
+    /**
+     * Exchanges of the requests with one bounding box.
+     */
+    private record Area(List<Double> bounds, Timeline timeline) {}
+
+
+    public TrafficReplayFilter(
+        TrafficReplayProperties properties, VbbProperties vbbProperties,
+        UpstreamClientProperties clientProperties
+    ) throws IOException {
+        this.properties = properties;
+        this.vbbProperties = vbbProperties;
+        this.maxBodySize = (int) clientProperties.getMaxInMemorySize().toBytes();
+
+        Path path = Path.of(properties.getPath());
+        switch (properties.getMode()) {
+            case RECORD -> {
+                writer = new TrafficLog.Writer(path);
+                writeScheduler = Schedulers.newSingle("traffic-recorder");
+                logger.info(String.format("Recording VBB traffic to '%s'", path));
+            }
+            case REPLAY -> {
+                if (properties.getSpeed() <= 0) {
+                    throw new IllegalArgumentException(String.format(
+                        "%s is not a valid value for speed", properties.getSpeed()
+                    ));
+                }
+                reader = new TrafficLog.Reader(path);
+                index(reader.getEntries());
+                logger.info(String.format(
+                    "Replaying %d VBB exchanges of %d requests (%s) from '%s' at speed %s",
+                    reader.getEntries().size(), areas.values().stream().mapToInt(List::size).sum(),
+                    Duration.ofMillis(span), path, properties.getSpeed()
+                ));
+            }
+            case OFF -> {}
+        }
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        String url = request.url().toString();
+        if (properties.getMode() == TrafficMode.OFF
+            || !url.startsWith(vbbProperties.getBaseUrl())
+        ) {
+            return next.exchange(request);
+        }
+
+        String uri = url.substring(vbbProperties.getBaseUrl().length());
+        return properties.getMode() == TrafficMode.RECORD
+            ? record(uri, request, next)
+            : replay(uri, request, next);
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (writeScheduler != null) {
+            // exchanges that are still queued are written before the log is closed
+            writeScheduler.disposeGracefully()
+                .timeout(Duration.ofSeconds(10))
+                .onErrorResume(e -> Mono.empty())
+                .block();
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+
+    private Mono<ClientResponse> record(String uri, ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            long time = System.currentTimeMillis();
+            long start = System.nanoTime();
+            return next.exchange(request).map(response -> response.mutate()
+                // the same limit as for the buffered responses, larger bodies fail unrecorded
+                .body(body -> DataBufferUtils.join(body, maxBodySize)
+                    .map(TrafficReplayFilter::toBytes)
+                    .defaultIfEmpty(new byte[0])
+                    .doOnNext(bytes -> {
+                        int latency = (int) Duration.ofNanos(System.nanoTime() - start).toMillis();
+                        String contentType = response.headers().contentType()
+                            .map(MediaType::toString)
+                            .orElse(null);
+                        writeScheduler.schedule(() -> write(
+                            time, latency, response.statusCode().value(), uri, contentType, bytes
+                        ));
+                    })
+                    .filter(bytes -> bytes.length > 0)
+                    .map(bytes -> (DataBuffer) DefaultDataBufferFactory.sharedInstance.wrap(bytes))
+                    .flux()
+                )
+                .build()
+            );
+        });
+    }
+
+    private void write(
+        long time, int latency, int status, String uri, String contentType, byte[] body
+    ) {
+        try {
+            writer.append(time, latency, status, uri, contentType, body);
+        }
+        catch (IOException e) {
+            logger.error(String.format("Could not record '%s': %s", uri, e.getMessage()));
+        }
+    }
+
+    private Mono<ClientResponse> replay(String uri, ClientRequest request, ExchangeFunction next) {
+        RequestKey key = normalize(uri);
+        Timeline timeline = find(key);
+        if (timeline == null) {
+            if (missed.add(key.key())) {
+                logger.warn(String.format(
+                    "No recorded exchange for '%s', passing such requests through", uri
+                ));
+            }
+            return next.exchange(request);
+        }
+
+        TrafficLog.Entry entry = select(timeline);
+        return Mono.fromCallable(() -> reader.read(entry))
+            .subscribeOn(Schedulers.boundedElastic())
+            .delayElement(Duration.ofMillis((long) (entry.latency() / properties.getSpeed())))
+            .map(body -> {
+                ClientResponse.Builder response = ClientResponse
+                    .create(HttpStatusCode.valueOf(entry.status()))
+                    .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body)));
+                if (entry.contentType() != null) {
+                    response.header(HttpHeaders.CONTENT_TYPE, entry.contentType());
+                }
+                return response.build();
+            });
+    }
+
+    private TrafficLog.Entry select(Timeline timeline) {
+        long now = System.currentTimeMillis();
+        replayStart.compareAndSet(0, now);
+        long elapsed = (long) ((now - replayStart.get()) * properties.getSpeed());
+        long time = firstTime + (properties.isLoop() ? elapsed % span : elapsed);
+
+        int i = Arrays.binarySearch(timeline.times(), time);
+        // the latest exchange at or before the time, the first one if there is none
+        i = i >= 0 ? i : Math.max(0, -i - 2);
+        return timeline.entries()[i];
+    }
+
+    /**
+     * Find the exchanges of the recorded request that matches a request: the same request
+     * without bounding box or the one with the smallest bounding box containing the requested one.
+     * 
+     * @return the exchanges or <code>null</code> if no request matches
+     */
+    private Timeline find(RequestKey key) {
+        Area best = null;
+        for (Area area : areas.getOrDefault(key.key(), List.of())) {
+            if (key.bounds() == null) {
+                if (area.bounds() == null) {
+                    return area.timeline();
+                }
+            }
+            else if (area.bounds() != null && contains(area.bounds(), key.bounds())
+                && (best == null || size(area.bounds()) < size(best.bounds()))
+            ) {
+                best = area;
+            }
+        }
+        return best != null ? best.timeline() : null;
+    }
+
+    private void index(List<TrafficLog.Entry> entries) {
+        Map<RequestKey, List<TrafficLog.Entry>> byRequest = new HashMap<>();
+        long lastTime = Long.MIN_VALUE;
+        firstTime = Long.MAX_VALUE;
+        for (TrafficLog.Entry entry : entries) {
+            byRequest.computeIfAbsent(normalize(entry.uri()), k -> new ArrayList<>()).add(entry);
+            firstTime = Math.min(firstTime, entry.time());
+            lastTime = Math.max(lastTime, entry.time());
+        }
+        span = entries.isEmpty() ? 1 : lastTime - firstTime + 1;
+
+        for (Map.Entry<RequestKey, List<TrafficLog.Entry>> request : byRequest.entrySet()) {
+            TrafficLog.Entry[] sorted = request.getValue().stream()
+                .sorted(Comparator.comparingLong(TrafficLog.Entry::time))
+                .toArray(TrafficLog.Entry[]::new);
+            long[] times = Arrays.stream(sorted).mapToLong(TrafficLog.Entry::time).toArray();
+            areas.computeIfAbsent(request.getKey().key(), k -> new ArrayList<>()).add(
+                new Area(request.getKey().bounds(), new Timeline(times, sorted))
+            );
+        }
+    }
+
+    /**
+     * Split an uri into its path with the sorted query parameters and its bounding box.
+     */
+    private static RequestKey normalize(String uri) {
+        UriComponents components = UriComponentsBuilder.fromUriString(uri).build();
+        Map<String, List<String>> params = new TreeMap<>(components.getQueryParams());
+
+        List<Double> bounds = null;
+        if (params.keySet().containsAll(BBOX_PARAMS)) {
+            try {
+                List<Double> values = new ArrayList<>(BBOX_PARAMS.size());
+                for (String param : BBOX_PARAMS) {
+                    values.add(Double.parseDouble(params.get(param).get(0)));
+                }
+                bounds = List.copyOf(values);
+                params.keySet().removeAll(BBOX_PARAMS);
+            }
+            catch (NumberFormatException e) {
+                // not a bounding box, matched like any other parameter
+            }
+        }
+
+        StringBuilder key = new StringBuilder(
+            components.getPath() != null ? components.getPath() : ""
+        );
+        char separator = '?';
+        for (Map.Entry<String, List<String>> param : params.entrySet()) {
+            for (String value : param.getValue()) {
+                key.append(separator).append(param.getKey()).append('=').append(value);
+                separator = '&';
+            }
+        }
+        return new RequestKey(key.toString(), bounds);
+    }
+
+    /**
+     * @return whether the outer bounds (north, west, south, east) contain the inner ones
+     */
+    private static boolean contains(List<Double> outer, List<Double> inner) {
+        return outer.get(0) >= inner.get(0) && outer.get(1) <= inner.get(1)
+            && outer.get(2) <= inner.get(2) && outer.get(3) >= inner.get(3);
+    }
+
+    private static double size(List<Double> bounds) {
+        return (bounds.get(0) - bounds.get(2)) * (bounds.get(3) - bounds.get(1));
+    }
+
+    private static byte[] toBytes(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return bytes;
+        }
+        finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,432 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLine;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLocation;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.util.GeoRadius;
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.spatial.ZOrder;
+
+/**
+ * Immutable, column oriented store of vehicle movements. Instead of one object graph per
+ * movement every attribute is stored in a primitive column:
+ * <ul>
+ *   <li>z-order code, latitude and longitude</li>
+ *   <li>trip id, line and direction as index into a dictionary of the distinct values</li>
+ *   <li>observation time in epoch milliseconds</li>
+ * </ul>
+ * The vehicles are sorted along the z-order curve, so vehicles close to each other are stored
+ * close to each other and bounding box queries scan a few short ranges of the columns. The
+ * columns can be allocated off-heap. A store is filled by a {@link Builder}, which only keeps
+ * the columns, so the movements can be dropped as soon as they were added.
+ * 
+ * Movements are only materialized for query results, {@link #getVehicles()} reads the columns on
+ * access instead. Frames are not stored, so the store can't be used with frames.
+ */
+public class ColumnarVehicleStore {
+
+    private final int size;
+    private final LongBuffer codes;
+    private final DoubleBuffer latitudes;
+    private final DoubleBuffer longitudes;
+    private final IntBuffer trips;
+    private final IntBuffer lines;
+    private final IntBuffer directions;
+    private final LongBuffer observedAt;
+
+    private final String[] tripDictionary;
+    private final VbbLine[] lineDictionary;
+    private final String[] directionDictionary;
+
+
+    public ColumnarVehicleStore(List<VbbMovement> movements, boolean offHeap) {
+        this(builder().addAll(movements), offHeap);
+    }
+
+    private ColumnarVehicleStore(Builder builder, boolean offHeap) {
+        this.size = builder.size;
+
+        // sort along the z-order curve
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ZOrder.encode(builder.latitudes[i], builder.longitudes[i]);
+        }
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(order[a], order[b]));
+
+        codes = allocate(size * Long.BYTES, offHeap).asLongBuffer();
+        latitudes = allocate(size * Double.BYTES, offHeap).asDoubleBuffer();
+        longitudes = allocate(size * Double.BYTES, offHeap).asDoubleBuffer();
+        trips = allocate(size * Integer.BYTES, offHeap).asIntBuffer();
+        lines = allocate(size * Integer.BYTES, offHeap).asIntBuffer();
+        directions = allocate(size * Integer.BYTES, offHeap).asIntBuffer();
+        observedAt = allocate(size * Long.BYTES, offHeap).asLongBuffer();
+
+        for (int i = 0; i < size; i++) {
+            int j = sorted[i];
+            codes.put(i, order[j]);
+            latitudes.put(i, builder.latitudes[j]);
+            longitudes.put(i, builder.longitudes[j]);
+            trips.put(i, builder.trips[j]);
+            lines.put(i, builder.lines[j]);
+            directions.put(i, builder.directions[j]);
+            observedAt.put(i, builder.observedAt[j]);
+        }
+
+        tripDictionary = builder.tripValues.toArray(String[]::new);
+        lineDictionary = builder.lineValues.toArray(VbbLine[]::new);
+        directionDictionary = builder.directionValues.toArray(String[]::new);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return views of all vehicles, ordered along the z-order curve; a view reads the columns
+     *         when its attributes are accessed, so no movement is materialized
+     */
+    public List<TransitMovement> getVehicles() {
+        return new AbstractList<>() {
+            @Override
+            public TransitMovement get(int i) {
+                if (i < 0 || i >= size) {
+                    throw new IndexOutOfBoundsException(i);
+                }
+                return new Vehicle(i);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return all movements, ordered along the z-order curve
+     */
+    public List<VbbMovement> getMovements() {
+        List<VbbMovement> movements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            movements.add(get(i));
+        }
+        return movements;
+    }
+
+    /**
+     * Get all movements inside a bounding box.
+     * 
+     * @param bbox
+     * @return list of movements
+     */
+    public List<VbbMovement> withinBoundingBox(BoundingBox bbox) {
+        List<VbbMovement> movements = new ArrayList<>();
+        forEachInBoundingBox(bbox, i -> movements.add(get(i)));
+        return movements;
+    }
+
+    /**
+     * Get the movements within a radius around a location, nearest first.
+     * 
+     * @param latitude  center lat
+     * @param longitude center lon
+     * @param radius    radius in meters
+     * @param n         maximum number of movements
+     * @return list of movements in radius
+     */
+    public List<VbbMovement> withinRadius(
+        double latitude, double longitude, double radius, int n
+    ) {
+        BoundingBox bbox = GeoUtils.getBbox(latitude, longitude, radius * 2.);
+        GeoRadius circle = new GeoRadius(latitude, longitude, radius);
+
+        List<long[]> scored = new ArrayList<>();
+        forEachInBoundingBox(bbox, i -> {
+            double distance = circle.distanceWithin(latitudes.get(i), longitudes.get(i));
+            if (!Double.isNaN(distance)) {
+                scored.add(new long[] { Double.doubleToLongBits(distance), i });
+            }
+        });
+        // non-negative doubles order like their bits
+        scored.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        List<VbbMovement> movements = new ArrayList<>(Math.min(n, scored.size()));
+        for (int i = 0; i < scored.size() && i < n; i++) {
+            movements.add(get((int) scored.get(i)[1]));
+        }
+        return movements;
+    }
+
+    /**
+     * Get the k movements nearest to a location. The search radius is doubled until enough
+     * movements are found.
+     * 
+     * @param latitude
+     * @param longitude
+     * @param k
+     * @return list of the nearest movements, nearest first
+     */
+    public List<VbbMovement> nearest(double latitude, double longitude, int k) {
+        if (k <= 0 || size == 0) {
+            return List.of();
+        }
+        List<VbbMovement> nearest = List.of();
+        // half the circumference covers the whole earth
+        for (double radius = 500.; radius < 2.1e7; radius *= 2.) {
+            nearest = withinRadius(latitude, longitude, radius, k);
+            if (nearest.size() >= Math.min(k, size)) {
+                break;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @return approximate size of the columns in bytes (without the dictionaries)
+     */
+    public long getColumnBytes() {
+        return (long) size * (Long.BYTES * 2 + Double.BYTES * 2 + Integer.BYTES * 3);
+    }
+
+
+    /**
+     * Collects movements column by column. Movements of a trip that was already added are
+     * skipped, the first one is kept.
+     */
+    public static class Builder {
+
+        private int size;
+        private double[] latitudes = new double[1024];
+        private double[] longitudes = new double[1024];
+        private int[] trips = new int[1024];
+        private int[] lines = new int[1024];
+        private int[] directions = new int[1024];
+        private long[] observedAt = new long[1024];
+
+        private final Map<String, Integer> tripIds = new HashMap<>();
+        private final Map<VbbLine, Integer> lineIds = new HashMap<>();
+        private final Map<String, Integer> directionIds = new HashMap<>();
+        private final List<String> tripValues = new ArrayList<>();
+        private final List<VbbLine> lineValues = new ArrayList<>();
+        private final List<String> directionValues = new ArrayList<>();
+        private boolean nullTrip = false;
+
+
+        private Builder() {}
+
+        /**
+         * @return <code>true</code> if the movement was added, <code>false</code> if its trip
+         *         was already added
+         */
+        public boolean add(VbbMovement movement) {
+            String tripId = movement.getTripId();
+            if (tripId != null ? tripIds.containsKey(tripId) : nullTrip) {
+                return false;
+            }
+            nullTrip |= tripId == null;
+
+            if (size == latitudes.length) {
+                int capacity = size * 2;
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                trips = Arrays.copyOf(trips, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                directions = Arrays.copyOf(directions, capacity);
+                observedAt = Arrays.copyOf(observedAt, capacity);
+            }
+
+            latitudes[size] = movement.getLatitude();
+            longitudes[size] = movement.getLongitude();
+            trips[size] = encode(tripId, tripIds, tripValues);
+            // lines are canonical instances of the dictionary, so identity is enough
+            lines[size] = encode(movement.getLine(), lineIds, lineValues);
+            directions[size] = encode(movement.getDirection(), directionIds, directionValues);
+            observedAt[size] = movement.getObservedAt() != null
+                ? movement.getObservedAt().toEpochMilli()
+                : Long.MIN_VALUE;
+            size++;
+            return true;
+        }
+
+        public Builder addAll(List<VbbMovement> movements) {
+            movements.forEach(this::add);
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public ColumnarVehicleStore build(boolean offHeap) {
+            return new ColumnarVehicleStore(this, offHeap);
+        }
+
+    }
+
+    /**
+     * View of a row of the columns.
+     */
+    private class Vehicle implements TransitMovement {
+
+        private final int i;
+
+
+        private Vehicle(int i) {
+            this.i = i;
+        }
+
+        @Override
+        public String getTripId() {
+            return decode(trips.get(i), tripDictionary);
+        }
+
+        @Override
+        public String getDirection() {
+            return decode(directions.get(i), directionDictionary);
+        }
+
+        @Override
+        public String getLineName() {
+            VbbLine line = decode(lines.get(i), lineDictionary);
+            return line != null ? line.getName() : null;
+        }
+
+        @Override
+        public String getProduct() {
+            VbbLine line = decode(lines.get(i), lineDictionary);
+            return line != null ? line.getProduct() : null;
+        }
+
+        @Override
+        public double getLatitude() {
+            return latitudes.get(i);
+        }
+
+        @Override
+        public double getLongitude() {
+            return longitudes.get(i);
+        }
+
+        @Override
+        public Instant getObservedAt() {
+            return observedAt(i);
+        }
+
+    }
+
+
+    private interface IndexConsumer {
+        void accept(int i);
+    }
+
+    /**
+     * Scan the z-order range of a bounding box. Parts of the range that leave the box are
+     * skipped with {@link ZOrder#nextInside(long, long, long)}.
+     */
+    private void forEachInBoundingBox(BoundingBox bbox, IndexConsumer consumer) {
+        long min = ZOrder.encode(
+            bbox.getSouthEast().getLatitude(), bbox.getNorthWest().getLongitude()
+        );
+        long max = ZOrder.encode(
+            bbox.getNorthWest().getLatitude(), bbox.getSouthEast().getLongitude()
+        );
+
+        int i = lowerBound(min, 0);
+        while (i < size) {
+            long code = codes.get(i);
+            if (code > max) {
+                break;
+            }
+            if (ZOrder.inside(code, min, max)) {
+                if (bbox.contains(latitudes.get(i), longitudes.get(i))) {
+                    consumer.accept(i);
+                }
+                i++;
+                continue;
+            }
+            long next = ZOrder.nextInside(code, min, max);
+            if (next < 0) {
+                break;
+            }
+            i = lowerBound(next, i + 1);
+        }
+    }
+
+    /**
+     * @return index of the first code greater than or equal to the given code
+     */
+    private int lowerBound(long code, int from) {
+        int lo = from;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (codes.get(mid) < code) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private VbbMovement get(int i) {
+        VbbLocation location = new VbbLocation();
+        location.setLatitude(latitudes.get(i));
+        location.setLongitude(longitudes.get(i));
+
+        VbbMovement movement = new VbbMovement();
+        movement.setTripId(decode(trips.get(i), tripDictionary));
+        movement.setDirection(decode(directions.get(i), directionDictionary));
+        movement.setLine(decode(lines.get(i), lineDictionary));
+        movement.setLocation(location);
+        movement.setObservedAt(observedAt(i));
+        return movement;
+    }
+
+    private Instant observedAt(int i) {
+        long observed = observedAt.get(i);
+        return observed != Long.MIN_VALUE ? Instant.ofEpochMilli(observed) : null;
+    }
+
+    private static <T> int encode(T value, Map<T, Integer> ids, List<T> values) {
+        if (value == null) {
+            return -1;
+        }
+        return ids.computeIfAbsent(value, e -> {
+            values.add(e);
+            return values.size() - 1;
+        });
+    }
+
+    private static <T> T decode(int id, T[] dictionary) {
+        return id >= 0 ? dictionary[id] : null;
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean offHeap) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+}
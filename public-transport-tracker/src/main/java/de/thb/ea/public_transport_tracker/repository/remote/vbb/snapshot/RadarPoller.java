@@ -0,0 +1,236 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.config.property.RadarFramesProperties;
+import de.thb.ea.public_transport_tracker.config.property.RadarPollerProperties;
+import de.thb.ea.public_transport_tracker.config.property.RateLimiterProperties;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.VbbRepository;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.Location;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Periodically sweeps the whole configured area through the radar endpoint and publishes the
+ * result as an immutable {@link VehicleSnapshot} to the {@link VehicleSnapshotStore}.
+ * 
+ * The radar endpoint returns at most the requested number of results, so a box that returned
+ * exactly that many was probably truncated. Such a box is split into quarters that are requested
+ * again, up to the configured number of splits. Boxes that are still truncated are logged and
+ * counted.
+ * 
+ * A sweep doesn't block the scheduling thread, which is shared by all scheduled jobs; a sweep that
+ * is due while the previous one is still running is skipped. The movements of a box are collected
+ * as soon as it arrives. Columnar snapshots only keep the columns of the collected movements, they
+ * don't store frames and can't be used with them.
+ */
+@Component
+public class RadarPoller implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(RadarPoller.class);
+
+    // share of the rate limit a sweep may use, the rest is left for splits and other requests
+    private static final double MAX_QUOTA_SHARE = 0.8;
+
+    private final VbbRepository vbbRepository;
+    private final VehicleSnapshotStore snapshotStore;
+    private final RadarPollerProperties properties;
+    private final Counter splits;
+    private final Counter truncated;
+
+    // sweeps are collected and published on their own thread and never overlap
+    private final Scheduler sweepScheduler = Schedulers.newSingle("radar-poller");
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+
+    public RadarPoller(
+        VbbRepository vbbRepository, VehicleSnapshotStore snapshotStore,
+        RadarPollerProperties properties, RadarFramesProperties framesProperties,
+        RateLimiterProperties rateLimiterProperties, MeterRegistry meterRegistry
+    ) {
+        if (properties.isColumnar() && framesProperties.isEnabled()) {
+            throw new IllegalArgumentException(
+                "columnar snapshots don't store frames, disable application.vbb.poller.columnar"
+                    + " or application.vbb.frames.enabled"
+            );
+        }
+
+        this.vbbRepository = vbbRepository;
+        this.snapshotStore = snapshotStore;
+        this.properties = properties;
+
+        this.splits = Counter.builder("vbb.poller.splits")
+            .description("Radar boxes split because they returned the maximum number of results")
+            .register(meterRegistry);
+        this.truncated = Counter.builder("vbb.poller.truncated")
+            .description("Radar boxes that returned the maximum number of results after all splits")
+            .register(meterRegistry);
+
+        double requestsPerMinute = properties.getRows() * properties.getColumns()
+            * (double) Duration.ofMinutes(1).toMillis() / properties.getInterval().toMillis();
+        if (properties.isEnabled() && rateLimiterProperties.isEnabled()
+            && requestsPerMinute > rateLimiterProperties.getPermitsPerMinute() * MAX_QUOTA_SHARE
+        ) {
+            logger.warn(String.format(
+                "Radar sweeps need %.0f of %d requests per minute, boxes will be delayed or"
+                    + " rejected; increase the interval or reduce rows and columns",
+                requestsPerMinute, rateLimiterProperties.getPermitsPerMinute()
+            ));
+        }
+    }
+
+    /**
+     * Start a sweep unless the previous one is still running. Its results are collected and
+     * published on the poller's own thread.
+     */
+    @Scheduled(fixedDelayString = "${application.vbb.poller.interval:60s}")
+    public void poll() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (!sweeping.compareAndSet(false, true)) {
+            logger.warn("Previous radar sweep is still running, skipping this sweep");
+            return;
+        }
+
+        sweep()
+            .doFinally(signal -> sweeping.set(false))
+            .subscribe(
+                snapshotStore::publish,
+                e -> logger.error("Radar sweep failed", e)
+            );
+    }
+
+    @Override
+    public void destroy() {
+        sweepScheduler.dispose();
+    }
+
+
+    /**
+     * Sweep the area and build a snapshot of the results.
+     * 
+     * @return the snapshot or an empty mono if all boxes failed
+     */
+    private Mono<VehicleSnapshot> sweep() {
+        BoundingBox area = new BoundingBox(
+            new Location(properties.getNorth(), properties.getWest()),
+            new Location(properties.getSouth(), properties.getEast())
+        );
+        List<BoundingBox> boxes = GeoUtils.splitBbox(
+            area, properties.getRows(), properties.getColumns()
+        );
+
+        // the first movement of a trip is kept
+        ColumnarVehicleStore.Builder columns = properties.isColumnar()
+            ? ColumnarVehicleStore.builder()
+            : null;
+        Map<String, VbbMovement> movements = new LinkedHashMap<>();
+        Consumer<VbbMovement> collect = columns != null
+            ? columns::add
+            : movement -> movements.putIfAbsent(movement.getTripId(), movement);
+
+        long start = System.nanoTime();
+        List<BoundingBox> failed = new ArrayList<>();
+        return Flux.fromIterable(boxes)
+            .flatMap(box -> fetch(box, 0), properties.getConcurrency())
+            // only the poller's thread touches the collected movements
+            .publishOn(sweepScheduler)
+            .doOnNext(result -> {
+                if (result.movements().isEmpty()) {
+                    failed.add(result.box());
+                }
+                else {
+                    result.movements().get().forEach(collect);
+                }
+            })
+            .count()
+            .flatMap(results -> {
+                if (failed.size() == results) {
+                    logger.warn("Radar sweep failed for all boxes, keeping previous snapshot");
+                    return Mono.empty();
+                }
+
+                // keep the previous state of areas that could not be refreshed
+                VehicleSnapshot previous = snapshotStore.getSnapshot().orElse(null);
+                if (!failed.isEmpty() && previous != null) {
+                    for (BoundingBox box : failed) {
+                        previous.getMovementsInBoundingBox(box).forEach(collect);
+                    }
+                }
+
+                int size = columns != null ? columns.size() : movements.size();
+                VehicleSnapshot snapshot = columns != null
+                    ? VehicleSnapshot.columnar(columns, Instant.now(), properties.isOffHeap())
+                    : new VehicleSnapshot(
+                        new ArrayList<>(movements.values()), Instant.now(), properties.getIndex()
+                    );
+
+                logger.debug(String.format(
+                    "Radar sweep collected %d movements in %d ms (%d of %d boxes failed)",
+                    size, Duration.ofNanos(System.nanoTime() - start).toMillis(), failed.size(),
+                    results
+                ));
+                return Mono.just(snapshot);
+            });
+    }
+
+
+    /**
+     * Fetch the movements of a box and split it into quarters as long as it is truncated.
+     * 
+     * @param depth     number of times the box has been split
+     * @return the results of the box or its quarters
+     */
+    private Flux<BoxResult> fetch(BoundingBox box, int depth) {
+        return vbbRepository.getMovements(box, properties.getResults())
+            .map(movements -> new BoxResult(box, Optional.of(movements)))
+            .defaultIfEmpty(new BoxResult(box, Optional.empty()))
+            .flatMapMany(result -> {
+                int size = result.movements().map(List::size).orElse(0);
+                if (size < properties.getResults()) {
+                    return Flux.just(result);
+                }
+                if (depth >= properties.getMaxSplits()) {
+                    truncated.increment();
+                    logger.warn(String.format(
+                        "Radar box (%.4f, %.4f, %.4f, %.4f) returned %d movements after %d splits,"
+                            + " some may be missing",
+                        box.getNorthWest().getLatitude(), box.getNorthWest().getLongitude(),
+                        box.getSouthEast().getLatitude(), box.getSouthEast().getLongitude(),
+                        size, depth
+                    ));
+                    return Flux.just(result);
+                }
+                splits.increment();
+                // quarters are fetched one after another so the sweep keeps its concurrency
+                return Flux.fromIterable(GeoUtils.splitBbox(box, 2, 2))
+                    .concatMap(quarter -> fetch(quarter, depth + 1));
+            });
+    }
+
+
+    private record BoxResult(BoundingBox box, Optional<List<VbbMovement>> movements) {}
+
+}
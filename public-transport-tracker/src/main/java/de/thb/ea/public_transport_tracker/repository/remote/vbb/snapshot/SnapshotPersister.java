@@ -0,0 +1,158 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.config.property.RadarPollerProperties;
+import de.thb.ea.public_transport_tracker.config.property.SnapshotFileProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.service.cache.TripIdentityCache;
+
+/**
+ * Periodically writes the latest vehicle snapshot and the cached trip identities to a
+ * {@link VehicleSnapshotFile} and restores it on startup, so a restarted service can serve
+ * vehicles before its first radar sweep and doesn't have to look up every known trip again.
+ */
+@Component
+public class SnapshotPersister implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(SnapshotPersister.class);
+
+    private final VehicleSnapshotFile snapshotFile;
+    private final VehicleSnapshotStore snapshotStore;
+    private final SnapshotFileProperties properties;
+    private final RadarPollerProperties pollerProperties;
+    private final TripIdentityCache tripCache;
+
+    // creation time of the last written snapshot
+    private Instant written = Instant.MIN;
+    // modification count of the trip cache when the last snapshot was written
+    private long writtenTrips = -1;
+
+
+    public SnapshotPersister(
+        VehicleSnapshotFile snapshotFile, VehicleSnapshotStore snapshotStore,
+        SnapshotFileProperties properties, RadarPollerProperties pollerProperties,
+        TripIdentityCache tripCache
+    ) {
+        this.snapshotFile = snapshotFile;
+        this.snapshotStore = snapshotStore;
+        this.properties = properties;
+        this.pollerProperties = pollerProperties;
+        this.tripCache = tripCache;
+    }
+
+    /**
+     * Read the snapshot file if it exists and publish its vehicles if they aren't older than the
+     * maximum age. The trips of the file are returned regardless of its age, the caller has to
+     * validate them.
+     * 
+     * @return the content of the file or an empty optional if there is no readable file
+     */
+    public synchronized Optional<VehicleSnapshotFile.Content> restore() {
+        Path path = Path.of(properties.getPath());
+        if (!properties.isEnabled() || !Files.exists(path)) {
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        VehicleSnapshotFile.Content content;
+        try {
+            content = snapshotFile.read(path);
+        }
+        catch (IOException e) {
+            logger.warn(String.format(
+                "Could not restore snapshot '%s': %s", path, e.getMessage()
+            ));
+            return Optional.empty();
+        }
+
+        Duration age = Duration.between(content.createdAt(), Instant.now());
+        if (content.movements().isEmpty()) {
+            return Optional.of(content);
+        }
+        if (age.compareTo(properties.getMaxAge()) > 0) {
+            logger.info(String.format("Snapshot '%s' is too old to restore (%s)", path, age));
+            return Optional.of(content);
+        }
+
+        // a snapshot published in the meantime is newer
+        if (snapshotStore.getSnapshot().isPresent()) {
+            return Optional.of(content);
+        }
+        snapshotStore.publish(pollerProperties.isColumnar()
+            ? VehicleSnapshot.columnar(
+                content.movements(), content.createdAt(), pollerProperties.isOffHeap()
+            )
+            : new VehicleSnapshot(
+                content.movements(), content.createdAt(), pollerProperties.getIndex()
+            )
+        );
+        written = content.createdAt();
+
+        logger.info(String.format(
+            "Restored %d movements from snapshot '%s' (age %s) in %d ms",
+            content.movements().size(), path, age,
+            Duration.ofNanos(System.nanoTime() - start).toMillis()
+        ));
+        return Optional.of(content);
+    }
+
+    @Scheduled(fixedDelayString = "${application.snapshot.interval:60s}")
+    public synchronized void persist() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        Optional<VehicleSnapshot> snapshot = snapshotStore.getSnapshot();
+        long trips = tripCache.getModificationCount();
+        boolean vehiclesChanged = snapshot.isPresent()
+            && snapshot.get().getCreatedAt().isAfter(written);
+        if (!vehiclesChanged && trips == writtenTrips) {
+            return;
+        }
+
+        Path path = Path.of(properties.getPath());
+        long start = System.nanoTime();
+        // without a snapshot only the trips are written, the empty vehicles are never restored
+        Instant createdAt = snapshot.map(VehicleSnapshot::getCreatedAt).orElse(Instant.EPOCH);
+        List<VbbMovement> movements = snapshot.map(VehicleSnapshot::getMovements)
+            .orElse(List.of());
+        List<Trip> tripIdentities = tripCache.getTrips();
+        try {
+            snapshotFile.write(path, createdAt, movements, tripIdentities);
+            written = createdAt;
+            writtenTrips = trips;
+            logger.debug(String.format(
+                "Wrote %d movements and %d trips to snapshot '%s' in %d ms", movements.size(),
+                tripIdentities.size(), path, Duration.ofNanos(System.nanoTime() - start).toMillis()
+            ));
+        }
+        catch (IOException e) {
+            logger.error(String.format(
+                "Could not write snapshot '%s': %s", path, e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Write the latest snapshot on shutdown.
+     */
+    @Override
+    public void destroy() {
+        persist();
+    }
+
+}
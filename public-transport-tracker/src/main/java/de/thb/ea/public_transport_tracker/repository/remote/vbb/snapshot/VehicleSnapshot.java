@@ -0,0 +1,158 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot;
+
+import java.time.Instant;
+import java.util.List;
+
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.spatial.SpatialIndex;
+import de.thb.ea.public_transport_tracker.util.spatial.SpatialIndexType;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Immutable view of all vehicle movements of the network at a point in time. The movements are
+ * either kept as objects and indexed by their location for nearby lookups or stored in a
+ * {@link ColumnarVehicleStore}, which needs a fraction of the memory.
+ */
+@Getter
+public class VehicleSnapshot {
+
+    @Getter(AccessLevel.NONE)
+    private final List<VbbMovement> movements;
+    private final Instant createdAt;
+
+    @Getter(AccessLevel.NONE)
+    private final SpatialIndex<VbbMovement> index;
+
+    @Getter(AccessLevel.NONE)
+    private final ColumnarVehicleStore columns;
+
+
+    public VehicleSnapshot(List<VbbMovement> movements, Instant createdAt) {
+        this(movements, createdAt, SpatialIndexType.GRID);
+    }
+
+    public VehicleSnapshot(
+        List<VbbMovement> movements, Instant createdAt, SpatialIndexType indexType
+    ) {
+        this.movements = List.copyOf(movements);
+        this.createdAt = createdAt;
+        this.columns = null;
+        this.index = indexType.create();
+        for (VbbMovement movement : this.movements) {
+            index.insert(movement, movement.getLatitude(), movement.getLongitude());
+        }
+    }
+
+    private VehicleSnapshot(ColumnarVehicleStore columns, Instant createdAt) {
+        this.movements = null;
+        this.createdAt = createdAt;
+        this.index = null;
+        this.columns = columns;
+    }
+
+    /**
+     * Create a snapshot that stores the movements in columns.
+     * 
+     * @param movements
+     * @param createdAt
+     * @param offHeap   whether to allocate the columns off-heap
+     * @return the snapshot
+     */
+    public static VehicleSnapshot columnar(
+        List<VbbMovement> movements, Instant createdAt, boolean offHeap
+    ) {
+        return new VehicleSnapshot(new ColumnarVehicleStore(movements, offHeap), createdAt);
+    }
+
+    /**
+     * Create a snapshot that stores the collected movements in columns.
+     * 
+     * @param columns   the collected movements
+     * @param createdAt
+     * @param offHeap   whether to allocate the columns off-heap
+     * @return the snapshot
+     */
+    public static VehicleSnapshot columnar(
+        ColumnarVehicleStore.Builder columns, Instant createdAt, boolean offHeap
+    ) {
+        return new VehicleSnapshot(columns.build(offHeap), createdAt);
+    }
+
+    /**
+     * @return all movements; materialized on every call if the snapshot is columnar, use
+     *         {@link #getVehicles()} to iterate them
+     */
+    public List<VbbMovement> getMovements() {
+        return columns != null ? columns.getMovements() : movements;
+    }
+
+    /**
+     * @return all vehicles; the vehicles of a columnar snapshot are views that read the columns
+     *         on access, so iterating them doesn't materialize the movements
+     */
+    public List<? extends TransitMovement> getVehicles() {
+        return columns != null ? columns.getVehicles() : movements;
+    }
+
+    /**
+     * Get the movements within a radius around a location, nearest first.
+     * 
+     * @param latitude  center lat
+     * @param longitude center lon
+     * @param radius    radius in meters
+     * @param n         maximum number of movements
+     * @return list of movements in radius
+     */
+    public List<VbbMovement> getNearbyMovements(
+        double latitude, double longitude, double radius, int n
+    ) {
+        if (columns != null) {
+            return columns.withinRadius(latitude, longitude, radius, n);
+        }
+        List<VbbMovement> nearby = index.withinRadius(latitude, longitude, radius);
+        return nearby.subList(0, Math.min(n, nearby.size()));
+    }
+
+    /**
+     * Get the k movements nearest to a location.
+     * 
+     * @param latitude
+     * @param longitude
+     * @param k
+     * @return list of the nearest movements, nearest first
+     */
+    public List<VbbMovement> getNearestMovements(double latitude, double longitude, int k) {
+        return columns != null
+            ? columns.nearest(latitude, longitude, k)
+            : index.nearest(latitude, longitude, k);
+    }
+
+    /**
+     * Get all movements inside a bounding box.
+     * 
+     * @param bbox
+     * @return list of movements
+     */
+    public List<VbbMovement> getMovementsInBoundingBox(BoundingBox bbox) {
+        return columns != null ? columns.withinBoundingBox(bbox) : index.withinBoundingBox(bbox);
+    }
+
+    public int size() {
+        return columns != null ? columns.size() : movements.size();
+    }
+
+    public boolean isColumnar() {
+        return columns != null;
+    }
+
+    /**
+     * @return approximate size of the columns in bytes or 0 if the snapshot isn't columnar
+     */
+    public long getColumnBytes() {
+        return columns != null ? columns.getColumnBytes() : 0;
+    }
+
+}
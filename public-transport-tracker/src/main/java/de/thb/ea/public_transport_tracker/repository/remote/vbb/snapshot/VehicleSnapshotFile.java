@@ -0,0 +1,393 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder.VbbDictionary;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbFrame;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLine;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLocation;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbOperator;
+
+/**
+ * Binary file format for vehicle movements, used to restore the latest snapshot after a
+ * restart.
+ * 
+ * <pre>
+ * header   magic "PTTS", version (int), created at (long, epoch millis),
+ *          payload length (long), payload crc32 (long)
+ * payload  strings  count, (length, utf-8 bytes)*
+ *          operators count, (id, name)*                                  as string refs
+ *          lines    count, (id, name, product name, mode, product, public (byte), operator)*
+ *          vehicles count, (trip id, direction, line, latitude, longitude, observed at,
+ *                   frame count, (offset, latitude, longitude)*)*
+ *          trips    count, (id (long), remote origin, remote id)*              since version 2
+ * </pre>
+ * References are indices into the preceding table, -1 stands for null. A file is written to a
+ * temporary file next to the target and then atomically moved, so the target is always either
+ * the previous or the new complete file. Files are read through a memory mapping; files with an
+ * unknown version or a wrong checksum are rejected. The trips are the identities of known trips
+ * (id and natural key) to warm the trip cache, they hold no other trip data.
+ */
+@Component
+public class VehicleSnapshotFile {
+
+    private static final int MAGIC = 0x50545453; // PTTS
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES * 3;
+
+    private final VbbDictionary dictionary;
+
+
+    public VehicleSnapshotFile(VbbDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * A snapshot as read from a file.
+     */
+    public record Content(Instant createdAt, List<VbbMovement> movements, List<Trip> trips) {}
+
+    /**
+     * Write movements and trip identities to a file.
+     * 
+     * @param path      the target file
+     * @param createdAt creation time of the movements
+     * @param movements
+     * @param trips     only the id and natural key are written
+     * @throws IOException
+     */
+    public void write(Path path, Instant createdAt, List<VbbMovement> movements, List<Trip> trips)
+        throws IOException
+    {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+        try {
+            CRC32 crc = new CRC32();
+            long length;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                // reserve the header, it is written once the payload length and crc are known
+                channel.position(HEADER_BYTES);
+                CountingOutputStream counter = new CountingOutputStream(
+                    new CheckedOutputStream(new ChannelOutputStream(channel), crc)
+                );
+                try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(counter, 1 << 16)
+                )) {
+                    writePayload(out, movements, trips);
+                }
+                length = counter.count;
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(createdAt.toEpochMilli())
+                    .putLong(length)
+                    .putLong(crc.getValue())
+                    .flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+
+            Files.move(
+                temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING
+            );
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a snapshot file.
+     * 
+     * @param path
+     * @return the content of the file
+     * @throws IOException if the file can't be read, has an unknown version or is corrupted
+     */
+    public Content read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Snapshot file is truncated");
+            }
+            MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size()
+            );
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException(String.format("Unsupported snapshot version %d", version));
+            }
+            Instant createdAt = Instant.ofEpochMilli(buffer.getLong());
+            long length = buffer.getLong();
+            long checksum = buffer.getLong();
+            if (length != channel.size() - HEADER_BYTES) {
+                throw new IOException("Snapshot file is truncated");
+            }
+
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Snapshot file is corrupted");
+            }
+
+            return readPayload(payload, createdAt, version);
+        }
+        catch (RuntimeException e) {
+            // buffer underflows and invalid references of a malformed payload
+            throw new IOException("Snapshot file is malformed", e);
+        }
+    }
+
+
+    private void writePayload(DataOutputStream out, List<VbbMovement> movements, List<Trip> trips)
+        throws IOException {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> stringValues = new ArrayList<>();
+        Map<VbbOperator, Integer> operators = new IdentityHashMap<>();
+        Map<VbbLine, Integer> lines = new IdentityHashMap<>();
+
+        // build the tables
+        for (VbbMovement movement : movements) {
+            reference(movement.getTripId(), strings, stringValues);
+            reference(movement.getDirection(), strings, stringValues);
+            VbbLine line = movement.getLine();
+            if (line != null && !lines.containsKey(line)) {
+                lines.put(line, lines.size());
+                reference(line.getId(), strings, stringValues);
+                reference(line.getName(), strings, stringValues);
+                reference(line.getProductName(), strings, stringValues);
+                reference(line.getMode(), strings, stringValues);
+                reference(line.getProduct(), strings, stringValues);
+                VbbOperator operator = line.getOperator();
+                if (operator != null && !operators.containsKey(operator)) {
+                    operators.put(operator, operators.size());
+                    reference(operator.getId(), strings, stringValues);
+                    reference(operator.getName(), strings, stringValues);
+                }
+            }
+        }
+        for (Trip trip : trips) {
+            reference(trip.getRemoteOrigin(), strings, stringValues);
+            reference(trip.getRemoteId(), strings, stringValues);
+        }
+
+        out.writeInt(stringValues.size());
+        for (String value : stringValues) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        VbbOperator[] operatorValues = new VbbOperator[operators.size()];
+        operators.forEach((operator, i) -> operatorValues[i] = operator);
+        out.writeInt(operatorValues.length);
+        for (VbbOperator operator : operatorValues) {
+            out.writeInt(reference(operator.getId(), strings, stringValues));
+            out.writeInt(reference(operator.getName(), strings, stringValues));
+        }
+
+        VbbLine[] lineValues = new VbbLine[lines.size()];
+        lines.forEach((line, i) -> lineValues[i] = line);
+        out.writeInt(lineValues.length);
+        for (VbbLine line : lineValues) {
+            out.writeInt(reference(line.getId(), strings, stringValues));
+            out.writeInt(reference(line.getName(), strings, stringValues));
+            out.writeInt(reference(line.getProductName(), strings, stringValues));
+            out.writeInt(reference(line.getMode(), strings, stringValues));
+            out.writeInt(reference(line.getProduct(), strings, stringValues));
+            out.writeByte(line.getIsPublic() == null ? 0 : line.getIsPublic() ? 2 : 1);
+            out.writeInt(line.getOperator() != null ? operators.get(line.getOperator()) : -1);
+        }
+
+        out.writeInt(movements.size());
+        for (VbbMovement movement : movements) {
+            out.writeInt(reference(movement.getTripId(), strings, stringValues));
+            out.writeInt(reference(movement.getDirection(), strings, stringValues));
+            out.writeInt(movement.getLine() != null ? lines.get(movement.getLine()) : -1);
+            out.writeDouble(movement.getLatitude());
+            out.writeDouble(movement.getLongitude());
+            out.writeLong(movement.getObservedAt() != null
+                ? movement.getObservedAt().toEpochMilli()
+                : Long.MIN_VALUE
+            );
+            List<VbbFrame> frames = movement.getFrames() != null ? movement.getFrames() : List.of();
+            out.writeInt(frames.size());
+            for (VbbFrame frame : frames) {
+                out.writeLong(frame.getOffset());
+                out.writeDouble(frame.getLatitude());
+                out.writeDouble(frame.getLongitude());
+            }
+        }
+
+        out.writeInt(trips.size());
+        for (Trip trip : trips) {
+            out.writeLong(trip.getId());
+            out.writeInt(reference(trip.getRemoteOrigin(), strings, stringValues));
+            out.writeInt(reference(trip.getRemoteId(), strings, stringValues));
+        }
+    }
+
+    private Content readPayload(ByteBuffer in, Instant createdAt, int version) {
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            strings[i] = dictionary.string(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        VbbOperator[] operators = new VbbOperator[in.getInt()];
+        for (int i = 0; i < operators.length; i++) {
+            operators[i] = dictionary.operator(string(in, strings), string(in, strings));
+        }
+
+        VbbLine[] lines = new VbbLine[in.getInt()];
+        for (int i = 0; i < lines.length; i++) {
+            String id = string(in, strings);
+            String name = string(in, strings);
+            String productName = string(in, strings);
+            String mode = string(in, strings);
+            String product = string(in, strings);
+            byte isPublic = in.get();
+            int operator = in.getInt();
+            lines[i] = dictionary.line(
+                id, name, productName, mode, product,
+                isPublic == 0 ? null : isPublic == 2,
+                operator >= 0 ? operators[operator] : null
+            );
+        }
+
+        int count = in.getInt();
+        List<VbbMovement> movements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            VbbMovement movement = new VbbMovement();
+            movement.setTripId(string(in, strings));
+            movement.setDirection(string(in, strings));
+            int line = in.getInt();
+            movement.setLine(line >= 0 ? lines[line] : null);
+
+            VbbLocation location = new VbbLocation();
+            location.setLatitude(in.getDouble());
+            location.setLongitude(in.getDouble());
+            movement.setLocation(location);
+
+            long observedAt = in.getLong();
+            movement.setObservedAt(
+                observedAt != Long.MIN_VALUE ? Instant.ofEpochMilli(observedAt) : null
+            );
+
+            int frameCount = in.getInt();
+            List<VbbFrame> frames = new ArrayList<>(frameCount);
+            for (int f = 0; f < frameCount; f++) {
+                frames.add(new VbbFrame(in.getLong(), in.getDouble(), in.getDouble()));
+            }
+            movement.setFrames(frames);
+            movements.add(movement);
+        }
+
+        List<Trip> trips = new ArrayList<>();
+        if (version >= 2) {
+            int tripCount = in.getInt();
+            for (int i = 0; i < tripCount; i++) {
+                trips.add(Trip.builder()
+                    .id(in.getLong())
+                    .remoteOrigin(string(in, strings))
+                    .remoteId(string(in, strings))
+                    .build()
+                );
+            }
+        }
+        return new Content(createdAt, movements, trips);
+    }
+
+    private static int reference(String value, Map<String, Integer> ids, List<String> values) {
+        if (value == null) {
+            return -1;
+        }
+        return ids.computeIfAbsent(value, e -> {
+            values.add(e);
+            return values.size() - 1;
+        });
+    }
+
+    private static String string(ByteBuffer in, String[] strings) {
+        int i = in.getInt();
+        return i >= 0 ? strings[i] : null;
+    }
+
+
+    private static class ChannelOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+
+        ChannelOutputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+    }
+
+}
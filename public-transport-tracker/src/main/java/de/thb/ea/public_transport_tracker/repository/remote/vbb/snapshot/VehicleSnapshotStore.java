@@ -0,0 +1,49 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Holds the latest published {@link VehicleSnapshot} and multicasts every published snapshot to
+ * its subscribers.
+ */
+@Component
+public class VehicleSnapshotStore {
+
+    private final AtomicReference<VehicleSnapshot> snapshot = new AtomicReference<>();
+    private final Sinks.Many<VehicleSnapshot> snapshots =
+        Sinks.many().multicast().directBestEffort();
+
+    /**
+     * @return the latest snapshot or an empty optional if none was published yet
+     */
+    public Optional<VehicleSnapshot> getSnapshot() {
+        return Optional.ofNullable(snapshot.get());
+    }
+
+    /**
+     * Get the published snapshots, starting with the latest one (if any). Subscribers that can't
+     * keep up miss snapshots; they should conflate to the latest snapshot themselves.
+     * 
+     * @return flux of snapshots, it never completes
+     */
+    public Flux<VehicleSnapshot> getSnapshots() {
+        return Flux.defer(() -> {
+            Flux<VehicleSnapshot> published = snapshots.asFlux();
+            VehicleSnapshot latest = snapshot.get();
+            return latest != null ? published.startWith(latest) : published;
+        });
+    }
+
+    public synchronized void publish(VehicleSnapshot snapshot) {
+        this.snapshot.set(snapshot);
+        // fails only if there are no subscribers, then there is nobody to notify
+        snapshots.tryEmitNext(snapshot);
+    }
+
+}
@@ -0,0 +1,150 @@
+package de.thb.ea.public_transport_tracker.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.springframework.stereotype.Service;
+
+import de.thb.ea.public_transport_tracker.config.property.TripDeltaProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.service.model.TripDelta;
+
+/**
+ * Keeps track of recently served lists of trips so clients can request only the changes since
+ * the version they already have.
+ * 
+ * A version is derived from the content and the order of the list, so equal lists share one
+ * version and a list that was only reordered gets a new one. Versions
+ * are kept for the configured ttl; the least recently used version is dropped if the maximum
+ * number of versions is exceeded.
+ */
+@Service
+public class TripDeltaService {
+
+    /**
+     * @param fingerprints  fingerprints by trip id in the order of the list
+     */
+    private record Version(LinkedHashMap<Long, Integer> fingerprints, Instant expiresAt) {}
+
+    private final TripDeltaProperties properties;
+    private final Map<String, Version> versions;
+
+
+    public TripDeltaService(TripDeltaProperties properties) {
+        this.properties = properties;
+        this.versions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Version> eldest) {
+                return size() > properties.getMaxVersions();
+            }
+        };
+    }
+
+    /**
+     * Register a list of trips as version.
+     * 
+     * @param trips
+     * @return the opaque version of the list
+     */
+    public String register(List<Trip> trips) {
+        LinkedHashMap<Long, Integer> fingerprints = fingerprints(trips);
+        String version = version(fingerprints);
+
+        Version entry = new Version(fingerprints, Instant.now().plus(properties.getVersionTtl()));
+        synchronized (versions) {
+            versions.put(version, entry);
+        }
+        return version;
+    }
+
+    /**
+     * Register a list of trips as version and get its difference to a previous version.
+     * 
+     * @param since version the client already has (may be <code>null</code>)
+     * @param trips current list of trips
+     * @return the delta; it is a full delta if the previous version is unknown or expired
+     */
+    public TripDelta diff(String since, List<Trip> trips) {
+        LinkedHashMap<Long, Integer> previous = since != null ? getFingerprints(since) : null;
+        String version = register(trips);
+
+        if (previous == null) {
+            return new TripDelta(version, true, trips, List.of(), null);
+        }
+
+        List<Trip> upserted = new ArrayList<>();
+        Map<Long, Integer> current = new HashMap<>();
+        for (Trip trip : trips) {
+            int fingerprint = fingerprint(trip);
+            current.put(trip.getId(), fingerprint);
+            if (!Objects.equals(previous.get(trip.getId()), fingerprint)) {
+                upserted.add(trip);
+            }
+        }
+
+        List<Long> removed = new ArrayList<>();
+        for (Long id : previous.keySet()) {
+            if (!current.containsKey(id)) {
+                removed.add(id);
+            }
+        }
+
+        List<Long> order = trips.stream().map(Trip::getId).toList();
+        boolean reordered = !order.equals(new ArrayList<>(previous.keySet()));
+
+        return new TripDelta(version, false, upserted, removed, reordered ? order : null);
+    }
+
+
+    private LinkedHashMap<Long, Integer> getFingerprints(String version) {
+        synchronized (versions) {
+            Version entry = versions.get(version);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt().isBefore(Instant.now())) {
+                versions.remove(version);
+                return null;
+            }
+            return entry.fingerprints();
+        }
+    }
+
+    private static LinkedHashMap<Long, Integer> fingerprints(List<Trip> trips) {
+        LinkedHashMap<Long, Integer> fingerprints = new LinkedHashMap<>();
+        for (Trip trip : trips) {
+            fingerprints.put(trip.getId(), fingerprint(trip));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Hash of all fields of a trip that are sent to clients.
+     */
+    private static int fingerprint(Trip trip) {
+        return Objects.hash(
+            trip.getId(), trip.getRemoteId(), trip.getRemoteOrigin(), trip.getDirection(),
+            trip.getLineName(), trip.getType(), trip.getUpdatedAt()
+        );
+    }
+
+    /**
+     * Hash of the fingerprints in the order of the list.
+     */
+    private static String version(LinkedHashMap<Long, Integer> fingerprints) {
+        long hash = fingerprints.size();
+        for (Map.Entry<Long, Integer> entry : fingerprints.entrySet()) {
+            long h = Objects.hashCode(entry.getKey()) * 0x9E3779B97F4A7C15L + entry.getValue();
+            // mix each entry into the hash of its predecessors, so the position counts
+            hash = (hash ^ h) * 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+        }
+        return Long.toHexString(hash);
+    }
+
+}
@@ -0,0 +1,61 @@
+package de.thb.ea.public_transport_tracker.service;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.hibernate.id.enhanced.AccessCallback;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.repository.TripRepository;
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Hands out trip ids for inserts that bypass Hibernate (native bulk inserts). The ids come from
+ * the optimizer of the trip id generator, so they are taken from the same pool as the ids
+ * Hibernate generates and a sequence value is always interpreted the same way. Only when the
+ * pool is exhausted a block of {@link Trip#ID_ALLOCATION_SIZE} ids is reserved from the sequence.
+ */
+@Component
+public class TripIdAllocator {
+
+    private final TripRepository tripRepository;
+    private final Optimizer optimizer;
+    private final AccessCallback sequence = new AccessCallback() {
+        @Override
+        public IntegralDataTypeHolder getNextValue() {
+            return IdentifierGeneratorHelper.getIntegralDataTypeHolder(Long.class)
+                .initialize(tripRepository.reserveIdBlock());
+        }
+
+        @Override
+        public String getTenantIdentifier() {
+            return null;
+        }
+    };
+
+
+    public TripIdAllocator(
+        TripRepository tripRepository, EntityManagerFactory entityManagerFactory
+    ) {
+        this.tripRepository = tripRepository;
+
+        SequenceStyleGenerator generator = (SequenceStyleGenerator) entityManagerFactory
+            .unwrap(SessionFactoryImplementor.class)
+            .getMappingMetamodel()
+            .getEntityDescriptor(Trip.class)
+            .getGenerator();
+        this.optimizer = generator.getOptimizer();
+    }
+
+    /**
+     * @return an id that is neither handed out again nor generated by Hibernate
+     */
+    public long next() {
+        // the optimizer synchronizes itself
+        return ((Number) optimizer.generate(sequence)).longValue();
+    }
+
+}
@@ -0,0 +1,317 @@
+package de.thb.ea.public_transport_tracker.service;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import de.thb.ea.public_transport_tracker.config.property.RadarPollerProperties;
+import de.thb.ea.public_transport_tracker.config.property.TripObservationProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.repository.observation.TripObservationRepository;
+import de.thb.ea.public_transport_tracker.repository.observation.model.TripObservation;
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.VbbRepository;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshot;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshotStore;
+import de.thb.ea.public_transport_tracker.service.cache.TripIdentityCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Records where and when trips were seen. The vehicles of every snapshot published by the radar
+ * poller are recorded with the time they were observed at the source; a vehicle that wasn't
+ * observed again since the last snapshot isn't recorded twice. The trips of the vehicles are
+ * resolved like the trips of nearby requests, unknown trips are created. Without the poller
+ * nothing is recorded.
+ * 
+ * Observations are buffered and bulk loaded into the {@link TripObservationRepository} with
+ * <code>COPY</code>. A maintenance job creates the daily
+ * partitions in advance, drops the partitions past retention and then prunes the trips that
+ * have no observation left in batches; trips are only pruned while observations are recorded.
+ * Observations older than the retention aren't recorded.
+ * 
+ * The metrics <code>trips.observations.rows</code>, <code>trips.observations.copy</code> (time
+ * per batch), <code>trips.observations.copy-rate</code> (rows per second per batch),
+ * <code>trips.observations.dropped</code> and <code>trips.observations.buffered</code> are
+ * exported.
+ */
+@Service
+public class TripObservationService implements DisposableBean {
+
+    private static final String FOREIGN_KEY_VIOLATION = "23503";
+
+    private final Logger logger = LoggerFactory.getLogger(TripObservationService.class);
+
+    private final TripObservationRepository observationRepository;
+    private final TripService tripService;
+    private final TripWriteBehind tripWriteBehind;
+    private final TripIdentityCache tripCache;
+    private final TripObservationProperties properties;
+    // observations are only recorded with the poller
+    private final boolean recording;
+    private final BlockingQueue<TripObservation> buffer;
+    private final Disposable subscription;
+
+    // observation time of every vehicle of the last snapshot, only touched by the subscription
+    private Map<String, Instant> lastObserved = new HashMap<>();
+
+    private final Counter rows;
+    private final Counter dropped;
+    private final Timer copyLatency;
+    private final DistributionSummary copyRate;
+
+
+    public TripObservationService(
+        TripObservationRepository observationRepository, TripService tripService,
+        TripWriteBehind tripWriteBehind, TripIdentityCache tripCache,
+        VehicleSnapshotStore snapshotStore,
+        TripObservationProperties properties, RadarPollerProperties pollerProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.observationRepository = observationRepository;
+        this.tripService = tripService;
+        this.tripWriteBehind = tripWriteBehind;
+        this.tripCache = tripCache;
+        this.properties = properties;
+        this.recording = properties.isEnabled() && pollerProperties.isEnabled();
+        this.buffer = new ArrayBlockingQueue<>(properties.getCapacity());
+
+        this.rows = Counter.builder("trips.observations.rows")
+            .description("Trip observations written to the database")
+            .register(meterRegistry);
+        this.dropped = Counter.builder("trips.observations.dropped")
+            .description("Trip observations dropped because the buffer was full")
+            .register(meterRegistry);
+        this.copyLatency = Timer.builder("trips.observations.copy")
+            .description("Time to copy a batch of trip observations")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        this.copyRate = DistributionSummary.builder("trips.observations.copy-rate")
+            .description("Rows per second of a copied batch of trip observations")
+            .baseUnit("rows/s")
+            .register(meterRegistry);
+        Gauge.builder("trips.observations.buffered", buffer, BlockingQueue::size)
+            .description("Trip observations waiting to be written")
+            .register(meterRegistry);
+
+        if (properties.isEnabled() && !pollerProperties.isEnabled()) {
+            logger.warn(
+                "Trip observations are enabled but the radar poller isn't, nothing is recorded"
+            );
+        }
+        // resolving trips may block, so snapshots are recorded off the poller thread; a snapshot
+        // that arrives while one is recorded replaces the waiting one
+        this.subscription = properties.isEnabled()
+            ? snapshotStore.getSnapshots()
+                .onBackpressureLatest()
+                .publishOn(Schedulers.boundedElastic(), 1)
+                .subscribe(this::record)
+            : null;
+    }
+
+    /**
+     * Copy the buffered observations to the database.
+     */
+    @Scheduled(fixedDelayString = "${application.trips.observations.flush-interval:5s}")
+    public synchronized void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        List<TripObservation> batch = new ArrayList<>(buffer.size());
+        buffer.drainTo(batch);
+        long start = System.nanoTime();
+        try {
+            // queued trips have to be inserted before observations can reference them
+            tripWriteBehind.flush();
+            long copied = copy(batch);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            copyLatency.record(elapsed);
+            rows.increment(copied);
+            double rate = copied / Math.max(elapsed.toNanos() / 1e9, 1e-6);
+            copyRate.record(rate);
+            logger.debug(String.format(
+                "Copied %d trip observations in %d ms (%.0f rows/s)", copied, elapsed.toMillis(),
+                rate
+            ));
+        }
+        catch (SQLException | RuntimeException e) {
+            dropped.increment(batch.size());
+            logger.error(String.format(
+                "Could not copy %d trip observations: %s", batch.size(), e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Create upcoming partitions, drop the partitions past retention and prune the trips that
+     * weren't observed within the retention if observations are recorded.
+     */
+    @Scheduled(fixedDelayString = "${application.trips.observations.maintenance-interval:1h}")
+    public void maintain() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Instant now = Instant.now();
+        LocalDate today = LocalDate.ofInstant(now, ZoneOffset.UTC);
+        try {
+            for (int i = 0; i <= properties.getPartitionsAhead(); i++) {
+                observationRepository.createPartition(today.plusDays(i));
+            }
+
+            // buffered observations keep their trips from being pruned
+            flush();
+            Instant cutoff = now.minus(properties.getRetention());
+            int partitions = observationRepository.dropPartitionsBefore(
+                LocalDate.ofInstant(cutoff, ZoneOffset.UTC)
+            );
+
+            // without recorded observations every trip would count as unobserved
+            int trips = recording ? pruneUnobservedTrips(cutoff) : 0;
+
+            if (partitions > 0 || trips > 0) {
+                logger.info(String.format(
+                    "Dropped %d observation partitions and pruned %d trips in %d ms",
+                    partitions, trips, Duration.ofNanos(System.nanoTime() - start).toMillis()
+                ));
+            }
+        }
+        catch (RuntimeException e) {
+            logger.error(String.format(
+                "Could not maintain the trip observations: %s", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Write the buffered observations on shutdown.
+     */
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        flush();
+    }
+
+
+    /**
+     * Copy a batch of observations. If the batch references trips that don't exist (pruned or
+     * lost to a concurrent insert in the meantime) their observations are dropped and the rest
+     * is copied.
+     */
+    private long copy(List<TripObservation> batch) throws SQLException {
+        try {
+            return observationRepository.copy(batch);
+        }
+        catch (SQLException e) {
+            if (!FOREIGN_KEY_VIOLATION.equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+
+        Set<Long> existing = new HashSet<>(observationRepository.getExistingTripIds(
+            batch.stream().map(TripObservation::getTripId).distinct().toList()
+        ));
+        List<TripObservation> valid = batch.stream()
+            .filter(e -> existing.contains(e.getTripId()))
+            .toList();
+        dropped.increment(batch.size() - valid.size());
+        return observationRepository.copy(valid);
+    }
+
+    /**
+     * Delete the trips that weren't observed since the cutoff in batches.
+     * 
+     * @return the number of deleted trips
+     */
+    private int pruneUnobservedTrips(Instant cutoff) {
+        int trips = 0;
+        List<Long> pruned;
+        do {
+            pruned = observationRepository.deleteUnobservedTrips(
+                cutoff, properties.getPruneBatchSize()
+            );
+            pruned.forEach(tripCache::invalidate);
+            trips += pruned.size();
+        } while (pruned.size() == properties.getPruneBatchSize());
+        return trips;
+    }
+
+    private void record(VehicleSnapshot snapshot) {
+        // the partitions of older observations are already dropped and mustn't be recreated
+        Instant cutoff = Instant.now().minus(properties.getRetention());
+        Map<String, Instant> observed = new HashMap<>();
+        List<TransitMovement> movements = new ArrayList<>();
+        for (TransitMovement movement : snapshot.getVehicles()) {
+            if (movement.getTripId() == null) {
+                continue;
+            }
+            Instant time = observedAt(movement, snapshot);
+            if (time.isBefore(cutoff)) {
+                continue;
+            }
+            observed.put(movement.getTripId(), time);
+            if (!time.equals(lastObserved.get(movement.getTripId()))) {
+                movements.add(movement);
+            }
+        }
+
+        Map<String, Trip> trips;
+        try {
+            trips = tripService.resolveTrips(VbbRepository.ORIGIN, movements);
+        }
+        catch (RuntimeException e) {
+            // the vehicles are recorded with the next snapshot
+            logger.error(String.format(
+                "Could not resolve the trips of %d observations: %s", movements.size(),
+                e.getMessage()
+            ));
+            return;
+        }
+        lastObserved = observed;
+
+        for (TransitMovement movement : movements) {
+            Trip trip = trips.get(movement.getTripId());
+            if (trip == null || trip.getId() == null) {
+                continue;
+            }
+            if (!buffer.offer(new TripObservation(
+                trip.getId(), observedAt(movement, snapshot), movement.getLatitude(),
+                movement.getLongitude()
+            ))) {
+                dropped.increment();
+            }
+        }
+    }
+
+    private static Instant observedAt(TransitMovement movement, VehicleSnapshot snapshot) {
+        return movement.getObservedAt() != null
+            ? movement.getObservedAt()
+            : snapshot.getCreatedAt();
+    }
+
+}
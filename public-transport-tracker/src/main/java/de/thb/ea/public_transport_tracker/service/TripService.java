@@ -1,25 +1,54 @@
 package de.thb.ea.public_transport_tracker.service;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import de.thb.ea.public_transport_tracker.config.property.TransitSourceProperties;
 import de.thb.ea.public_transport_tracker.entity.Trip;
 import de.thb.ea.public_transport_tracker.repository.TripRepository;
-import de.thb.ea.public_transport_tracker.repository.remote.vbb.VbbRepository;
-import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.TransitDataSource;
+import de.thb.ea.public_transport_tracker.repository.remote.model.RemoteResult;
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import de.thb.ea.public_transport_tracker.service.cache.TripIdentityCache;
+import de.thb.ea.public_transport_tracker.service.exception.ServiceRuntimeException;
 import de.thb.ea.public_transport_tracker.service.exception.TripAlreadyExistsException;
 import de.thb.ea.public_transport_tracker.service.exception.TripNotFoundException;
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
 import lombok.AllArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 @Service
 @AllArgsConstructor
 public class TripService {
 
-    private final VbbRepository vbbService;
+    private static final int RESTORE_CHUNK_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(TripService.class);
+
+    private final List<TransitDataSource> transitDataSources;
+    private final TransitSourceProperties transitSourceProperties;
     private final TripRepository tripRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TripIdentityCache tripCache;
+    private final TripWriteBehind tripWriteBehind;
+    private final TripIdAllocator tripIdAllocator;
 
 
     public Trip getTripByRemoteOriginAndRemoteId(String remoteOrigin, String remoteId)
@@ -32,6 +61,12 @@ public class TripService {
             throw new IllegalArgumentException("null is not a valid value for remoteOrigin");
         }
 
+        Optional<Trip> cached = tripCache.get(remoteOrigin, remoteId)
+            .or(() -> tripWriteBehind.getPending(remoteOrigin, remoteId));
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
         Optional<Trip> trip = tripRepository.findTripByRemoteOriginAndRemoteId(
             remoteOrigin, remoteId
         );
@@ -39,6 +74,7 @@ public class TripService {
         if (trip.isEmpty()) {
             throw TripNotFoundException.fromRemote(remoteOrigin, remoteId);
         }
+        tripCache.put(trip.get());
         return trip.get();
     }
 
@@ -48,7 +84,10 @@ public class TripService {
             throw new IllegalArgumentException("null is not a valid value for trip");
         }
 
-        if (remoteTripExists(trip.getRemoteOrigin(), trip.getRemoteId())) {
+        if (tripCache.get(trip.getRemoteOrigin(), trip.getRemoteId()).isPresent()
+            || tripWriteBehind.getPending(trip.getRemoteOrigin(), trip.getRemoteId()).isPresent()
+            || remoteTripExists(trip.getRemoteOrigin(), trip.getRemoteId())
+        ) {
             throw TripAlreadyExistsException.fromRemote(trip.getRemoteOrigin(), trip.getRemoteId());
         }
 
@@ -60,6 +99,7 @@ public class TripService {
             throw e;
         }
 
+        tripCache.put(trip);
         return trip;
     }
 
@@ -69,10 +109,14 @@ public class TripService {
             throw new IllegalArgumentException("null is not a valid value for trip");
         }
 
+        // a queued trip has to be inserted before it can be updated
+        tripWriteBehind.flush();
         if (!tripIdExists(trip.getId())) {
             throw TripNotFoundException.fromId(trip.getId());
         }
 
+        // the natural key may change, so the cached trip is dropped before it is replaced
+        tripCache.invalidate(trip.getId());
         try {
             trip = tripRepository.save(trip);
         }
@@ -80,44 +124,292 @@ public class TripService {
             throw e;
         }
 
+        // a lookup during the update may have cached the old trip again, so the cached trip is
+        // replaced once the update is visible to others
+        Trip updated = trip;
+        afterCommit(() -> tripCache.put(updated));
         return trip;
     }
 
     
     public List<Trip> getNearbyTrips(double latitude, double longitude, double radius, int n) {
-        List<VbbMovement> movements = vbbService.getNearbyMovements(latitude, longitude, radius, n);
-
-        List<Trip> trips = new ArrayList<>();
-        for (VbbMovement movement : movements) {
-            try {
-                // load trip from database
-                trips.add(
-                    getTripByRemoteOriginAndRemoteId("vbb", movement.getTripId())
-                );
+        return getNearbyTripsAsync(latitude, longitude, radius, n)
+            .blockOptional()
+            .orElseThrow(() -> new ServiceRuntimeException("No transit data source is available"))
+            .getValue();
+    }
+
+
+    /**
+     * Get the trips within a radius around a location without blocking the calling thread. The
+     * trip repository is blocking, so loading and creating the trips runs on the bounded elastic
+     * scheduler.
+     * 
+     * @param latitude  center lat
+     * @param longitude center lon
+     * @param radius    radius in meters
+     * @param n         maximum number of trips
+     * @return list of nearby trips, marked as stale if the movements were served from a stale
+     *         cache or a source was unavailable; an empty mono if all sources were unavailable
+     */
+    public Mono<RemoteResult<List<Trip>>> getNearbyTripsAsync(
+        double latitude, double longitude, double radius, int n
+    ) {
+        return getNearbyMovements(latitude, longitude, radius, n)
+            .publishOn(Schedulers.boundedElastic())
+            .map(result -> result.map(this::resolveTrips));
+    }
+
+
+    /**
+     * Get the trips of movements of one origin and create the unknown ones, like the trips of
+     * nearby movements.
+     * 
+     * @param origin    remote origin of the movements
+     * @param movements
+     * @return trips by remote id
+     */
+    public Map<String, Trip> resolveTrips(
+        String origin, Collection<? extends TransitMovement> movements
+    ) {
+        if (origin == null) {
+            throw new IllegalArgumentException("null is not a valid value for origin");
+        }
+        if (movements == null) {
+            throw new IllegalArgumentException("null is not a valid value for movements");
+        }
+
+        return resolveTripsByOrigin(movements.stream()
+            .map(e -> new SourceMovement(origin, e))
+            .toList()
+        ).getOrDefault(origin, Map.of());
+    }
+
+
+    /**
+     * Load the trips of the movements from the cache or the database and create the unknown
+     * ones.
+     * 
+     * @return the trips in the order of the movements
+     */
+    private List<Trip> resolveTrips(List<SourceMovement> movements) {
+        Map<String, Map<String, Trip>> resolved = resolveTripsByOrigin(movements);
+
+        List<Trip> trips = new ArrayList<>(movements.size());
+        for (SourceMovement sourceMovement : movements) {
+            TransitMovement movement = sourceMovement.movement();
+            if (movement.getTripId() == null) {
+                continue;
             }
-            catch (TripNotFoundException e) {
-                try {
-                    // create new trip in database
-                    trips.add(addNewTrip(
-                        Trip.builder()
-                            .remoteId(movement.getTripId())
-                            .remoteOrigin("vbb")
-                            .direction(movement.getDirection())
-                            .lineName(movement.getLine().getName())
-                            .type(movement.getLine().getProduct())
-                            .build()
-                    ));
+            Trip trip = resolved.get(sourceMovement.origin()).get(movement.getTripId());
+            if (trip != null) {
+                trips.add(trip);
+            }
+        }
+        return trips;
+    }
+
+    /**
+     * Load the trips of the movements from the cache or the database and create the unknown
+     * ones. All trips of an origin that aren't cached are loaded with one query and the unknown
+     * ones inserted with one statement, all inside one transaction. If all trips are cached the
+     * database isn't accessed.
+     * 
+     * @return trips by remote id by origin
+     */
+    private Map<String, Map<String, Trip>> resolveTripsByOrigin(List<SourceMovement> movements) {
+        Map<String, Map<String, Trip>> resolved = new HashMap<>();
+        Map<String, Map<String, TransitMovement>> missing = new LinkedHashMap<>();
+        for (SourceMovement sourceMovement : movements) {
+            String origin = sourceMovement.origin();
+            TransitMovement movement = sourceMovement.movement();
+            if (movement.getTripId() == null) {
+                continue;
+            }
+            Optional<Trip> cached = tripCache.get(origin, movement.getTripId())
+                .or(() -> tripWriteBehind.getPending(origin, movement.getTripId()));
+            if (cached.isPresent()) {
+                resolved.computeIfAbsent(origin, k -> new HashMap<>())
+                    .put(movement.getTripId(), cached.get());
+            }
+            else {
+                missing.computeIfAbsent(origin, k -> new LinkedHashMap<>())
+                    .putIfAbsent(movement.getTripId(), movement);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, Map<String, Trip>> loaded = transactionTemplate.execute(status -> {
+                Map<String, Map<String, Trip>> trips = new HashMap<>();
+                for (Map.Entry<String, Map<String, TransitMovement>> origin : missing.entrySet()) {
+                    trips.put(origin.getKey(), resolveTrips(origin.getKey(), origin.getValue()));
                 }
-                catch (TripAlreadyExistsException _e) {
-                    // should not happen since TripNotFoundException
-                    // TODO: add logging and maybe throw RuntimeException
+                return trips;
+            });
+            for (Map.Entry<String, Map<String, Trip>> origin : loaded.entrySet()) {
+                origin.getValue().values().forEach(tripCache::put);
+                resolved.computeIfAbsent(origin.getKey(), k -> new HashMap<>())
+                    .putAll(origin.getValue());
+            }
+        }
+
+        return resolved;
+    }
+
+    /**
+     * Load the trips of one origin and insert the unknown ones. If write-behind is enabled the
+     * unknown trips are queued instead; only the ones that don't fit into the queue are inserted.
+     * 
+     * @param origin
+     * @param movements movements by trip id
+     * @return trips by remote id
+     */
+    private Map<String, Trip> resolveTrips(String origin, Map<String, TransitMovement> movements) {
+        Map<String, Trip> trips = new HashMap<>();
+        for (Trip trip : tripRepository.findTripsByRemoteOriginAndRemoteIdIn(
+            origin, movements.keySet()
+        )) {
+            trips.put(trip.getRemoteId(), trip);
+        }
+
+        List<TransitMovement> missing = movements.values().stream()
+            .filter(e -> !trips.containsKey(e.getTripId()))
+            .toList();
+        if (tripWriteBehind.isEnabled()) {
+            List<TransitMovement> rejected = new ArrayList<>();
+            for (TransitMovement movement : missing) {
+                Optional<Trip> queued = tripWriteBehind.enqueue(toTrip(origin, movement));
+                if (queued.isPresent()) {
+                    trips.put(movement.getTripId(), queued.get());
+                }
+                else {
+                    rejected.add(movement);
                 }
             }
+            missing = rejected;
+        }
+        if (missing.isEmpty()) {
+            return trips;
         }
 
+        long createdAt = Instant.now().toEpochMilli();
+        for (Trip trip : tripRepository.insertTripsWithIds(
+            missing.stream().map(e -> tripIdAllocator.next()).toArray(Long[]::new),
+            missing.stream().map(TransitMovement::getTripId).toArray(String[]::new),
+            missing.stream().map(e -> origin).toArray(String[]::new),
+            missing.stream().map(TransitMovement::getDirection).toArray(String[]::new),
+            missing.stream().map(TransitMovement::getLineName).toArray(String[]::new),
+            missing.stream().map(TransitMovement::getProduct).toArray(String[]::new),
+            missing.stream().map(e -> createdAt).toArray(Long[]::new)
+        )) {
+            trips.put(trip.getRemoteId(), trip);
+        }
+
+        // trips inserted concurrently by another request are skipped by the insert
+        List<String> conflicting = missing.stream()
+            .map(TransitMovement::getTripId)
+            .filter(e -> !trips.containsKey(e))
+            .toList();
+        if (!conflicting.isEmpty()) {
+            for (Trip trip : tripRepository.findTripsByRemoteOriginAndRemoteIdIn(
+                origin, conflicting
+            )) {
+                trips.put(trip.getRemoteId(), trip);
+            }
+        }
         return trips;
     }
 
+    /**
+     * Query all transit data sources in parallel and merge their movements, nearest first. A
+     * source that fails or does not answer within its deadline is left out of the result and the
+     * result is marked as stale. If no source answered the mono completes empty.
+     */
+    private Mono<RemoteResult<List<SourceMovement>>> getNearbyMovements(
+        double latitude, double longitude, double radius, int n
+    ) {
+        return Flux.fromIterable(transitDataSources)
+            .flatMap(source -> source.findNearbyMovements(latitude, longitude, radius, n)
+                .timeout(transitSourceProperties.getDeadline(source.getOrigin()))
+                .map(result -> result.map(movements -> movements.stream()
+                    .map(e -> new SourceMovement(source.getOrigin(), e))
+                    .collect(Collectors.toList())
+                ))
+                .onErrorResume(e -> {
+                    logger.warn(String.format(
+                        "Transit data source '%s' failed: %s", source.getOrigin(), e.toString()
+                    ));
+                    return Mono.empty();
+                })
+            )
+            .collectList()
+            .flatMap(results -> {
+                if (results.isEmpty() && !transitDataSources.isEmpty()) {
+                    return Mono.empty();
+                }
+
+                List<SourceMovement> merged = results.stream()
+                    .flatMap(e -> e.getValue().stream())
+                    .sorted(Comparator.comparingDouble(e -> GeoUtils.distanceInMeters(
+                        e.movement().getLatitude(), e.movement().getLongitude(),
+                        latitude, longitude
+                    )))
+                    .limit(n)
+                    .collect(Collectors.toList());
+
+                boolean stale = results.size() < transitDataSources.size()
+                    || results.stream().anyMatch(RemoteResult::isStale);
+                return Mono.just(stale ? RemoteResult.stale(merged) : RemoteResult.fresh(merged));
+            });
+    }
+
+    /**
+     * Put trips restored from a snapshot into the trip cache. Only the id and natural key of
+     * the restored trips are used; trips are loaded from the database and only cached if they
+     * still exist with the same natural key, the database may have been reset in the meantime.
+     * 
+     * @param trips
+     * @return number of cached trips
+     */
+    public int restoreTripCache(List<Trip> trips) {
+        if (trips == null) {
+            throw new IllegalArgumentException("null is not a valid value for trips");
+        }
+
+        Map<Long, Trip> restored = new HashMap<>();
+        for (Trip trip : trips) {
+            restored.put(trip.getId(), trip);
+        }
+
+        int cached = 0;
+        List<Long> ids = new ArrayList<>(restored.keySet());
+        // chunked to stay below the bind parameter limit
+        for (int i = 0; i < ids.size(); i += RESTORE_CHUNK_SIZE) {
+            for (Trip trip : tripRepository.findAllById(
+                ids.subList(i, Math.min(i + RESTORE_CHUNK_SIZE, ids.size()))
+            )) {
+                Trip restoredTrip = restored.get(trip.getId());
+                if (trip.getRemoteOrigin().equals(restoredTrip.getRemoteOrigin())
+                    && trip.getRemoteId().equals(restoredTrip.getRemoteId())
+                ) {
+                    tripCache.put(trip);
+                    cached++;
+                }
+            }
+        }
+        return cached;
+    }
+
+    private static Trip toTrip(String origin, TransitMovement movement) {
+        return Trip.builder()
+            .remoteId(movement.getTripId())
+            .remoteOrigin(origin)
+            .direction(movement.getDirection())
+            .lineName(movement.getLineName())
+            .type(movement.getProduct())
+            .build();
+    }
+
     public boolean remoteTripExists(String remoteOrigin, String remoteId) {
         return tripRepository.existsByRemoteOriginAndRemoteId(remoteOrigin, remoteId);
     }
@@ -125,4 +417,24 @@ public class TripService {
     public boolean tripIdExists(Long tripId) {
         return tripRepository.existsById(tripId);
     }
+
+
+    private record SourceMovement(String origin, TransitMovement movement) {}
+
+    /**
+     * Run an action after the current transaction committed or right away if there is none.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
 }
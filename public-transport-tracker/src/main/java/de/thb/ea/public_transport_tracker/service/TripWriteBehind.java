@@ -0,0 +1,270 @@
+package de.thb.ea.public_transport_tracker.service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.thb.ea.public_transport_tracker.config.property.TripWriteBehindProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.repository.TripRepository;
+import de.thb.ea.public_transport_tracker.service.cache.TripIdentityCache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Inserts newly observed trips in the background. A queued trip gets its id right away (from the
+ * {@link TripIdAllocator}), so it can be returned to clients before it is inserted. The queue is
+ * flushed with one multi-row insert per batch as soon as a batch is full, periodically and on
+ * shutdown. Queuing never waits for a flush: a flush only takes the queued trips out of the queue
+ * and inserts them without holding anything queuing needs.
+ * 
+ * The id of a queued trip is final unless another instance inserted the same trip in the
+ * meantime. Then the queued trip is skipped, its id is dropped from the trip cache and the existing
+ * trip is cached under the natural key instead, so later lookups return the persisted id. The
+ * metrics
+ * <code>trips.write-behind.depth</code>, <code>trips.write-behind.batch-size</code> and
+ * <code>trips.write-behind.flush</code> are exported.
+ */
+@Service
+public class TripWriteBehind implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(TripWriteBehind.class);
+
+    private record Key(String remoteOrigin, String remoteId) {}
+
+    private final TripRepository tripRepository;
+    private final TripIdAllocator tripIdAllocator;
+    private final TransactionTemplate transactionTemplate;
+    private final TripIdentityCache tripCache;
+    private final TripWriteBehindProperties properties;
+
+    private final BlockingDeque<Trip> queue;
+    // queued trips by natural key, so a trip is queued only once even if it left the cache
+    private final Map<Key, Trip> pending = new ConcurrentHashMap<>();
+    // flushes run on their own thread, so size triggered flushes don't block requests
+    private final Scheduler flushScheduler = Schedulers.newSingle("trip-write-behind");
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // serializes flushes only, so a flush waits for the one in progress to be inserted
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final DistributionSummary batchSizes;
+    private final Timer flushLatency;
+
+
+    public TripWriteBehind(
+        TripRepository tripRepository, TripIdAllocator tripIdAllocator,
+        TransactionTemplate transactionTemplate, TripIdentityCache tripCache,
+        TripWriteBehindProperties properties, MeterRegistry meterRegistry
+    ) {
+        this.tripRepository = tripRepository;
+        this.tripIdAllocator = tripIdAllocator;
+        this.transactionTemplate = transactionTemplate;
+        this.tripCache = tripCache;
+        this.properties = properties;
+        this.queue = new LinkedBlockingDeque<>(properties.getCapacity());
+
+        Gauge.builder("trips.write-behind.depth", queue, BlockingDeque::size)
+            .description("Number of trips waiting to be inserted")
+            .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("trips.write-behind.batch-size")
+            .description("Number of trips inserted per batch")
+            .register(meterRegistry);
+        this.flushLatency = Timer.builder("trips.write-behind.flush")
+            .description("Time to insert a batch of trips")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Get a trip that is queued but not inserted yet.
+     * 
+     * @param remoteOrigin
+     * @param remoteId
+     * @return the queued trip or an empty optional
+     */
+    public Optional<Trip> getPending(String remoteOrigin, String remoteId) {
+        return Optional.ofNullable(pending.get(new Key(remoteOrigin, remoteId)));
+    }
+
+    /**
+     * Give a new trip its id and queue it for insertion. If the trip is already queued the queued
+     * trip is returned.
+     * 
+     * @param trip  trip without id
+     * @return the queued trip or an empty optional if the queue is full
+     */
+    public Optional<Trip> enqueue(Trip trip) {
+        if (trip == null) {
+            throw new IllegalArgumentException("null is not a valid value for trip");
+        }
+
+        Key key = new Key(trip.getRemoteOrigin(), trip.getRemoteId());
+        Trip queued = pending.get(key);
+        if (queued != null) {
+            return Optional.of(queued);
+        }
+        // inserted by a flush after the caller looked the trip up
+        Optional<Trip> cached = tripCache.get(trip.getRemoteOrigin(), trip.getRemoteId());
+        if (cached.isPresent()) {
+            return cached;
+        }
+        if (queue.remainingCapacity() == 0) {
+            return Optional.empty();
+        }
+
+        // millisecond precision, so the inserted trip equals the queued one
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        Trip provisional = Trip.builder()
+            .id(tripIdAllocator.next())
+            .remoteId(trip.getRemoteId())
+            .remoteOrigin(trip.getRemoteOrigin())
+            .direction(trip.getDirection())
+            .lineName(trip.getLineName())
+            .type(trip.getType())
+            .createdAt(now)
+            .updatedAt(now)
+            .build();
+
+        queued = pending.putIfAbsent(key, provisional);
+        if (queued != null) {
+            // queued concurrently, the reserved id is skipped
+            return Optional.of(queued);
+        }
+        if (!queue.offer(provisional)) {
+            pending.remove(key, provisional);
+            return Optional.empty();
+        }
+
+        if (queue.size() >= properties.getBatchSize()
+            && flushScheduled.compareAndSet(false, true)
+        ) {
+            flushScheduler.schedule(() -> {
+                flushScheduled.set(false);
+                flush();
+            });
+        }
+        return Optional.of(provisional);
+    }
+
+    /**
+     * Insert all queued trips. Returns once the trips queued before the call are inserted, even
+     * if another thread is flushing them.
+     */
+    @Scheduled(fixedDelayString = "${application.trips.write-behind.flush-interval:1s}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushQueue();
+        }
+        finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Insert the queued trips on shutdown.
+     */
+    @Override
+    public void destroy() {
+        flushScheduler.dispose();
+        flush();
+    }
+
+
+    private void flushQueue() {
+        while (!queue.isEmpty()) {
+            // the batch is taken out of the queue atomically, queuing goes on during the insert
+            List<Trip> batch = new ArrayList<>(properties.getBatchSize());
+            queue.drainTo(batch, properties.getBatchSize());
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                flushLatency.record(() -> insert(batch));
+                batchSizes.record(batch.size());
+            }
+            catch (RuntimeException e) {
+                logger.error(String.format(
+                    "Could not insert %d trips: %s", batch.size(), e.getMessage()
+                ));
+                // retried with the next flush, trips that no longer fit are dropped
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    if (!queue.offerFirst(batch.get(i))) {
+                        Trip trip = batch.get(i);
+                        pending.remove(new Key(trip.getRemoteOrigin(), trip.getRemoteId()), trip);
+                        tripCache.invalidate(trip.getId());
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private void insert(List<Trip> batch) {
+        List<Trip> inserted = transactionTemplate.execute(status -> tripRepository
+            .insertTripsWithIds(
+                batch.stream().map(Trip::getId).toArray(Long[]::new),
+                batch.stream().map(Trip::getRemoteId).toArray(String[]::new),
+                batch.stream().map(Trip::getRemoteOrigin).toArray(String[]::new),
+                batch.stream().map(Trip::getDirection).toArray(String[]::new),
+                batch.stream().map(Trip::getLineName).toArray(String[]::new),
+                batch.stream().map(Trip::getType).toArray(String[]::new),
+                batch.stream().map(e -> e.getCreatedAt().toEpochMilli()).toArray(Long[]::new)
+            )
+        );
+
+        Map<Long, Trip> insertedById = new HashMap<>();
+        inserted.forEach(e -> insertedById.put(e.getId(), e));
+
+        // trips inserted by someone else in the meantime, the existing trip wins and replaces
+        // the queued one in the cache
+        Map<String, List<String>> skipped = new HashMap<>();
+        for (Trip trip : batch) {
+            if (!insertedById.containsKey(trip.getId())) {
+                tripCache.invalidate(trip.getId());
+                skipped.computeIfAbsent(trip.getRemoteOrigin(), k -> new ArrayList<>())
+                    .add(trip.getRemoteId());
+            }
+        }
+        for (Map.Entry<String, List<String>> origin : skipped.entrySet()) {
+            tripRepository.findTripsByRemoteOriginAndRemoteIdIn(origin.getKey(), origin.getValue())
+                .forEach(tripCache::put);
+        }
+        if (!skipped.isEmpty()) {
+            logger.info(String.format(
+                "%d queued trips already existed and were skipped",
+                skipped.values().stream().mapToInt(List::size).sum()
+            ));
+        }
+
+        for (Trip trip : batch) {
+            pending.remove(new Key(trip.getRemoteOrigin(), trip.getRemoteId()), trip);
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+package de.thb.ea.public_transport_tracker.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import de.thb.ea.public_transport_tracker.config.property.HistoryProperties;
+import de.thb.ea.public_transport_tracker.repository.history.VehicleHistoryRepository;
+import de.thb.ea.public_transport_tracker.repository.history.model.VehicleObservation;
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshot;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshotStore;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+/**
+ * Records the vehicle positions of every published snapshot into the
+ * {@link VehicleHistoryRepository} and replays them by time range. Observations are buffered and
+ * written as one block per flush; a vehicle whose position wasn't observed again since the last
+ * snapshot isn't recorded twice.
+ */
+@Service
+public class VehicleHistoryService implements DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(VehicleHistoryService.class);
+
+    private final VehicleHistoryRepository historyRepository;
+    private final HistoryProperties properties;
+    private final Counter recorded;
+    private final Timer queryLatency;
+    private final Disposable subscription;
+
+    // observation time of every vehicle of the last snapshot, only touched by the subscription
+    private Map<String, Instant> lastObserved = new HashMap<>();
+    private List<VehicleObservation> buffer = new ArrayList<>();
+
+
+    public VehicleHistoryService(
+        VehicleHistoryRepository historyRepository, VehicleSnapshotStore snapshotStore,
+        HistoryProperties properties, MeterRegistry meterRegistry
+    ) {
+        this.historyRepository = historyRepository;
+        this.properties = properties;
+        this.recorded = Counter.builder("history.observations")
+            .description("Number of recorded vehicle observations")
+            .register(meterRegistry);
+        this.queryLatency = Timer.builder("history.query")
+            .description("Time to stream the result of a history query")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+        Gauge.builder("history.segments", historyRepository,
+                VehicleHistoryRepository::getSegmentCount)
+            .description("Number of history segment files")
+            .register(meterRegistry);
+        Gauge.builder("history.size", historyRepository, VehicleHistoryRepository::getSizeBytes)
+            .description("Size of all history segment files")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+
+        this.subscription = properties.isEnabled()
+            ? snapshotStore.getSnapshots().subscribe(this::record)
+            : null;
+    }
+
+    /**
+     * Stream the recorded observations of a time range, including the not yet flushed ones.
+     * 
+     * @param from      inclusive
+     * @param to        inclusive
+     * @param bbox      may be <code>null</code> for all locations
+     * @param lineName  may be <code>null</code> for all lines
+     * @return flux of observations
+     */
+    public Flux<VehicleObservation> query(
+        Instant from, Instant to, BoundingBox bbox, String lineName
+    ) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("null is not a valid value for from or to");
+        }
+
+        return historyRepository.query(from, to, bbox)
+            .concatWith(Flux.defer(() -> Flux.fromIterable(buffered()))
+                .filter(observation -> !observation.getTime().isBefore(from)
+                    && !observation.getTime().isAfter(to)
+                    && (bbox == null
+                        || bbox.contains(observation.getLatitude(), observation.getLongitude()))
+                )
+            )
+            .filter(observation -> lineName == null
+                || lineName.equals(observation.getLineName()))
+            .transform(flux -> Flux.defer(() -> {
+                Timer.Sample sample = Timer.start();
+                return flux.doFinally(signal -> sample.stop(queryLatency));
+            }));
+    }
+
+    /**
+     * Write the buffered observations as one block.
+     */
+    @Scheduled(fixedDelayString = "${application.history.flush-interval:30s}")
+    public void flush() {
+        List<VehicleObservation> observations;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            observations = buffer;
+            buffer = new ArrayList<>();
+        }
+
+        try {
+            historyRepository.append(observations);
+        }
+        catch (IOException e) {
+            logger.error(String.format(
+                "Could not write %d observations to the history: %s", observations.size(),
+                e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Drop the segments past retention and compact the remaining closed segments.
+     */
+    @Scheduled(fixedDelayString = "${application.history.retention-interval:10m}")
+    public void maintain() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Instant now = Instant.now();
+        int dropped = historyRepository.dropBefore(now.minus(properties.getRetention()));
+        int compacted = historyRepository.compactBefore(now);
+        if (dropped > 0 || compacted > 0) {
+            logger.info(String.format(
+                "Dropped %d and compacted %d history segments in %d ms", dropped, compacted,
+                Duration.ofNanos(System.nanoTime() - start).toMillis()
+            ));
+        }
+    }
+
+    /**
+     * Write the buffered observations on shutdown.
+     */
+    @Override
+    public void destroy() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        flush();
+    }
+
+
+    private void record(VehicleSnapshot snapshot) {
+        Map<String, Instant> observed = new HashMap<>();
+        List<VehicleObservation> observations = new ArrayList<>();
+        for (TransitMovement movement : snapshot.getVehicles()) {
+            if (movement.getTripId() == null) {
+                continue;
+            }
+            Instant time = movement.getObservedAt() != null
+                ? movement.getObservedAt()
+                : snapshot.getCreatedAt();
+            observed.put(movement.getTripId(), time);
+            if (!time.equals(lastObserved.get(movement.getTripId()))) {
+                observations.add(new VehicleObservation(
+                    time, movement.getTripId(), movement.getLineName(),
+                    movement.getLatitude(), movement.getLongitude()
+                ));
+            }
+        }
+        lastObserved = observed;
+        recorded.increment(observations.size());
+
+        boolean full;
+        synchronized (this) {
+            buffer.addAll(observations);
+            full = buffer.size() >= properties.getMaxBuffered();
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    private synchronized List<VehicleObservation> buffered() {
+        return List.copyOf(buffer);
+    }
+
+}
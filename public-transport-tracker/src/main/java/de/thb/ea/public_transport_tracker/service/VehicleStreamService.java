@@ -0,0 +1,132 @@
+package de.thb.ea.public_transport_tracker.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Service;
+
+import de.thb.ea.public_transport_tracker.config.property.RadarPollerProperties;
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshot;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot.VehicleSnapshotStore;
+import de.thb.ea.public_transport_tracker.service.model.VehicleUpdate;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+
+/**
+ * Streams the vehicles of an area to subscribers. All subscribers share the snapshots published
+ * by the radar poller, so one upstream sweep fans out to every subscriber without further
+ * upstream requests. Without the poller there is nothing to stream, so the stream is only
+ * available if the poller is enabled.
+ * 
+ * Every subscriber is conflated to the latest snapshot: a slow subscriber skips the snapshots it
+ * couldn't consume and its next update is computed against the last update it received.
+ */
+@Service
+public class VehicleStreamService {
+
+    private final VehicleSnapshotStore snapshotStore;
+    private final RadarPollerProperties pollerProperties;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Timer fanOutLatency;
+
+
+    public VehicleStreamService(
+        VehicleSnapshotStore snapshotStore, RadarPollerProperties pollerProperties,
+        MeterRegistry meterRegistry
+    ) {
+        this.snapshotStore = snapshotStore;
+        this.pollerProperties = pollerProperties;
+        Gauge.builder("vehicles.stream.subscribers", subscribers, AtomicInteger::get)
+            .description("Number of subscribers of the live vehicle stream")
+            .register(meterRegistry);
+        this.fanOutLatency = Timer.builder("vehicles.stream.fan-out")
+            .description("Time from taking a snapshot until an update was emitted to a subscriber")
+            .publishPercentiles(0.5, 0.99)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Subscribe to the vehicles inside a bounding box. The first update contains all vehicles
+     * of the area (if a snapshot is available), every following update only the changes.
+     * 
+     * @param bbox  area to subscribe to
+     * @return flux of updates, it never completes
+     */
+    public Flux<VehicleUpdate> subscribe(BoundingBox bbox) {
+        if (bbox == null) {
+            throw new IllegalArgumentException("null is not a valid value for bbox");
+        }
+
+        return Flux.defer(() -> {
+            // vehicles the subscriber has seen, only touched by the subscriber's own updates
+            Map<String, VbbMovement> known = new HashMap<>();
+
+            return snapshotStore.getSnapshots()
+                // keep only the latest snapshot while the subscriber is busy
+                .onBackpressureLatest()
+                .map(snapshot -> diff(known, snapshot, bbox))
+                .filter(update -> !update.isEmpty())
+                .doOnNext(update -> fanOutLatency.record(
+                    Duration.between(update.getSnapshotAt(), Instant.now())
+                ))
+                .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signal -> subscribers.decrementAndGet());
+        });
+    }
+
+    /**
+     * @return whether snapshots are published that can be streamed
+     */
+    public boolean isAvailable() {
+        return pollerProperties.isEnabled();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+
+    private static VehicleUpdate diff(
+        Map<String, VbbMovement> known, VehicleSnapshot snapshot, BoundingBox bbox
+    ) {
+        List<TransitMovement> changed = new ArrayList<>();
+        Map<String, VbbMovement> current = new HashMap<>();
+        for (VbbMovement movement : snapshot.getMovementsInBoundingBox(bbox)) {
+            current.put(movement.getTripId(), movement);
+            if (hasChanged(known.get(movement.getTripId()), movement)) {
+                changed.add(movement);
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (String tripId : known.keySet()) {
+            if (!current.containsKey(tripId)) {
+                removed.add(tripId);
+            }
+        }
+
+        known.clear();
+        known.putAll(current);
+        return new VehicleUpdate(snapshot.getCreatedAt(), changed, removed);
+    }
+
+    private static boolean hasChanged(VbbMovement previous, VbbMovement movement) {
+        return previous == null
+            || previous.getLatitude() != movement.getLatitude()
+            || previous.getLongitude() != movement.getLongitude()
+            || !Objects.equals(previous.getDirection(), movement.getDirection())
+            || !Objects.equals(previous.getLineName(), movement.getLineName());
+    }
+
+}
@@ -0,0 +1,205 @@
+package de.thb.ea.public_transport_tracker.service.cache;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import de.thb.ea.public_transport_tracker.config.property.TripCacheProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache of trips by their natural key (remote origin, remote id). Trips practically never change
+ * once created, so lookups of known trips don't need the database. The cache is split into
+ * stripes by key hash; each stripe evicts its least recently used trip once it exceeds its share
+ * of the maximum size. If a ttl is configured trips expire after it.
+ * 
+ * Trips are also indexed by id, so a changed trip can be invalidated even if its natural key
+ * changed. The metrics <code>trips.cache.requests</code> (tag <code>result</code>),
+ * <code>trips.cache.evictions</code> and <code>trips.cache.size</code> are exported.
+ */
+@Component
+public class TripIdentityCache {
+
+    private static final int STRIPES = 16;
+
+    private record Key(String remoteOrigin, String remoteId) {}
+
+    private record Entry(Trip trip, Instant expiresAt) {}
+
+    private final TripCacheProperties properties;
+    private final List<Map<Key, Entry>> stripes = new ArrayList<>(STRIPES);
+    private final Map<Long, Key> keysById = new ConcurrentHashMap<>();
+    // incremented on every change, used to detect whether the cache changed since a point in time
+    private final AtomicLong modifications = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+
+    public TripIdentityCache(TripCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.hits = Counter.builder("trips.cache.requests")
+            .tag("result", "hit")
+            .description("Trip lookups answered by the cache")
+            .register(meterRegistry);
+        this.misses = Counter.builder("trips.cache.requests")
+            .tag("result", "miss")
+            .description("Trip lookups not answered by the cache")
+            .register(meterRegistry);
+        this.evictions = Counter.builder("trips.cache.evictions")
+            .description("Trips evicted from the cache because it was full")
+            .register(meterRegistry);
+
+        int stripeSize = Math.max(1, properties.getMaxSize() / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                    if (size() <= stripeSize) {
+                        return false;
+                    }
+                    keysById.remove(eldest.getValue().trip().getId(), eldest.getKey());
+                    evictions.increment();
+                    return true;
+                }
+            });
+        }
+
+        Gauge.builder("trips.cache.size", keysById, Map::size)
+            .description("Number of cached trips")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Get a cached trip.
+     * 
+     * @param remoteOrigin
+     * @param remoteId
+     * @return the trip or an empty optional if it isn't cached or expired
+     */
+    public Optional<Trip> get(String remoteOrigin, String remoteId) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+
+        Key key = new Key(remoteOrigin, remoteId);
+        Map<Key, Entry> stripe = stripe(key);
+        Entry entry;
+        synchronized (stripe) {
+            entry = stripe.get(key);
+            if (entry != null && entry.expiresAt() != null
+                && entry.expiresAt().isBefore(Instant.now())
+            ) {
+                stripe.remove(key);
+                keysById.remove(entry.trip().getId(), key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.trip());
+    }
+
+    /**
+     * Cache a persisted trip, replacing the cached trip with the same id or natural key.
+     * 
+     * @param trip  trip with an id
+     */
+    public void put(Trip trip) {
+        if (trip == null) {
+            throw new IllegalArgumentException("null is not a valid value for trip");
+        }
+        if (!properties.isEnabled() || trip.getId() == null) {
+            return;
+        }
+
+        invalidate(trip.getId());
+        Key key = new Key(trip.getRemoteOrigin(), trip.getRemoteId());
+        Instant expiresAt = properties.getTtl().isZero() || properties.getTtl().isNegative()
+            ? null
+            : Instant.now().plus(properties.getTtl());
+        Map<Key, Entry> stripe = stripe(key);
+        synchronized (stripe) {
+            Entry previous = stripe.put(key, new Entry(trip, expiresAt));
+            if (previous != null) {
+                keysById.remove(previous.trip().getId(), key);
+            }
+            keysById.put(trip.getId(), key);
+        }
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * Remove the trip with an id from the cache.
+     * 
+     * @param id
+     */
+    public void invalidate(Long id) {
+        if (id == null) {
+            return;
+        }
+
+        Key key = keysById.remove(id);
+        if (key == null) {
+            return;
+        }
+        Map<Key, Entry> stripe = stripe(key);
+        synchronized (stripe) {
+            Entry entry = stripe.get(key);
+            if (entry != null && id.equals(entry.trip().getId())) {
+                stripe.remove(key);
+            }
+        }
+        modifications.incrementAndGet();
+    }
+
+    /**
+     * @return all cached trips that aren't expired
+     */
+    public List<Trip> getTrips() {
+        Instant now = Instant.now();
+        List<Trip> trips = new ArrayList<>();
+        for (Map<Key, Entry> stripe : stripes) {
+            synchronized (stripe) {
+                for (Entry entry : stripe.values()) {
+                    if (entry.expiresAt() == null || !entry.expiresAt().isBefore(now)) {
+                        trips.add(entry.trip());
+                    }
+                }
+            }
+        }
+        return trips;
+    }
+
+    /**
+     * @return a number that changes whenever the cached trips change
+     */
+    public long getModificationCount() {
+        return modifications.get();
+    }
+
+    public int size() {
+        return keysById.size();
+    }
+
+
+    private Map<Key, Entry> stripe(Key key) {
+        return stripes.get(Math.floorMod(key.hashCode(), STRIPES));
+    }
+
+}
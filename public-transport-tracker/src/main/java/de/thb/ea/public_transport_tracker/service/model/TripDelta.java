@@ -0,0 +1,47 @@
+package de.thb.ea.public_transport_tracker.service.model;
+
+import java.util.List;
+
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Difference between a list of trips and a previously registered version of it.
+ */
+@Getter
+@AllArgsConstructor
+public class TripDelta {
+
+    /**
+     * Version of the current list of trips.
+     */
+    private final String version;
+
+    /**
+     * <code>true</code> if the base version was unknown; then all trips are contained in
+     * {@link #upserted}.
+     */
+    private final boolean full;
+
+    /**
+     * Trips that were added or changed since the base version.
+     */
+    private final List<Trip> upserted;
+
+    /**
+     * Ids of the trips that were removed since the base version.
+     */
+    private final List<Long> removed;
+
+    /**
+     * Ids of all trips in the order of the current list if the order differs from the base
+     * version, otherwise <code>null</code>; then upserted trips keep their position.
+     */
+    private final List<Long> order;
+
+    public boolean isEmpty() {
+        return !full && upserted.isEmpty() && removed.isEmpty() && order == null;
+    }
+
+}
@@ -0,0 +1,36 @@
+package de.thb.ea.public_transport_tracker.service.model;
+
+import java.time.Instant;
+import java.util.List;
+
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Changes of the vehicles inside a subscribed area between two snapshots.
+ */
+@Getter
+@AllArgsConstructor
+public class VehicleUpdate {
+
+    /**
+     * Time the snapshot this update is based on was taken.
+     */
+    private final Instant snapshotAt;
+
+    /**
+     * Vehicles that entered the area, moved or changed their trip.
+     */
+    private final List<TransitMovement> changed;
+
+    /**
+     * Trip ids of the vehicles that left the area.
+     */
+    private final List<String> removed;
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+
+}
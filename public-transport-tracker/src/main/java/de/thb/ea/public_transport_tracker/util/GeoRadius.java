@@ -0,0 +1,175 @@
+package de.thb.ea.public_transport_tracker.util;
+
+import java.util.Arrays;
+
+/**
+ * A circle around a fixed center for testing and scoring many locations against it. Everything
+ * that only depends on the center is computed once.
+ * 
+ * Locations are first compared using an equirectangular projection around the center, which
+ * needs no trigonometric functions. Only locations whose projected distance is too close to the
+ * radius to decide are checked with the exact haversine distance. The projection error grows
+ * with the radius and the latitude; if it can't be bounded (large radius or near the poles) the
+ * exact distance is always used.
+ */
+public class GeoRadius {
+
+    private static final double EARTH_RADIUS_M = 6371000; // meters
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_M * Math.PI / 180.;
+    // above this relative projection error the exact distance is always used
+    private static final double MAX_TOLERANCE = 0.1;
+
+    private final double latitude;
+    private final double longitude;
+    private final double radius;
+
+    private final double cosLatitude;
+    private final double metersPerDegreeLon;
+    // squared projected distances below which a location is inside or above which it is outside
+    private final double inner;
+    private final double outer;
+
+
+    /**
+     * @param latitude  center lat
+     * @param longitude center lon
+     * @param radius    radius in meters
+     */
+    public GeoRadius(double latitude, double longitude, double radius) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.cosLatitude = Math.cos(Math.toRadians(latitude));
+        this.metersPerDegreeLon = METERS_PER_DEGREE * cosLatitude;
+
+        // the projection uses the cosine of the center latitude for all locations, its relative
+        // error is about tan(lat) * dLat; doubled to cover the curvature
+        double tolerance = 2. * Math.abs(Math.tan(Math.toRadians(latitude)))
+            * radius / EARTH_RADIUS_M + 1e-3;
+        if (tolerance > MAX_TOLERANCE) {
+            this.inner = -1.;
+            this.outer = Double.POSITIVE_INFINITY;
+        }
+        else {
+            this.inner = square(radius * (1. - tolerance));
+            this.outer = square(radius * (1. + tolerance));
+        }
+    }
+
+    /**
+     * Check if a location lies inside the circle (border included).
+     * 
+     * @param latitude
+     * @param longitude
+     * @return <code>true</code> if the location is inside; otherwise <code>false</code>
+     */
+    public boolean contains(double latitude, double longitude) {
+        return !Double.isNaN(distanceWithin(latitude, longitude));
+    }
+
+    /**
+     * Get the distance of a location to the center if it is inside the circle. Inside the
+     * radius minus the projection tolerance the projected distance is returned, so the distance
+     * is exact only near the border.
+     * 
+     * @param latitude
+     * @param longitude
+     * @return distance in meters or <code>NaN</code> if the location is outside
+     */
+    public double distanceWithin(double latitude, double longitude) {
+        double dLon = longitude - this.longitude;
+        // the shorter way, across the antimeridian if the longitudes lie on both sides of it
+        if (dLon > 180.) {
+            dLon -= 360.;
+        }
+        else if (dLon < -180.) {
+            dLon += 360.;
+        }
+        double dy = (latitude - this.latitude) * METERS_PER_DEGREE;
+        double dx = dLon * metersPerDegreeLon;
+        double projected = dx * dx + dy * dy;
+        if (projected > outer) {
+            return Double.NaN;
+        }
+        if (projected < inner) {
+            return Math.sqrt(projected);
+        }
+        double distance = distance(latitude, longitude);
+        return distance <= radius ? distance : Double.NaN;
+    }
+
+    /**
+     * Exact haversine distance of a location to the center.
+     * 
+     * @param latitude
+     * @param longitude
+     * @return distance in meters
+     */
+    public double distance(double latitude, double longitude) {
+        double sinLat = Math.sin(Math.toRadians(latitude - this.latitude) / 2.);
+        double sinLon = Math.sin(Math.toRadians(longitude - this.longitude) / 2.);
+        double a = sinLat * sinLat
+            + cosLatitude * Math.cos(Math.toRadians(latitude)) * sinLon * sinLon;
+        return 2. * EARTH_RADIUS_M * Math.asin(Math.min(1., Math.sqrt(a)));
+    }
+
+    /**
+     * Filter the locations inside the circle.
+     * 
+     * @param latitudes     lat of the locations
+     * @param longitudes    lon of the locations
+     * @param length        number of locations
+     * @param indices       receives the indices of the locations inside
+     * @param distances     receives the distances of the locations inside
+     *                      (see {@link #distanceWithin(double, double)})
+     * @return number of locations inside
+     */
+    public int filter(
+        double[] latitudes, double[] longitudes, int length, int[] indices, double[] distances
+    ) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            double distance = distanceWithin(latitudes[i], longitudes[i]);
+            if (!Double.isNaN(distance)) {
+                indices[count] = i;
+                distances[count] = distance;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the locations inside the circle ordered by distance.
+     * 
+     * @param latitudes     lat of the locations
+     * @param longitudes    lon of the locations
+     * @param length        number of locations
+     * @param n             maximum number of locations
+     * @return indices of the (at most n) nearest locations inside, nearest first
+     */
+    public int[] nearest(double[] latitudes, double[] longitudes, int length, int n) {
+        int[] indices = new int[length];
+        double[] distances = new double[length];
+        int count = filter(latitudes, longitudes, length, indices, distances);
+
+        // sort by distance and index in one primitive array: the bits of non-negative floats
+        // order like the floats themselves
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) Float.floatToRawIntBits((float) distances[i]) << 32 | indices[i];
+        }
+        Arrays.sort(keys);
+
+        int[] nearest = new int[Math.min(n, count)];
+        for (int i = 0; i < nearest.length; i++) {
+            nearest[i] = (int) keys[i];
+        }
+        return nearest;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+}
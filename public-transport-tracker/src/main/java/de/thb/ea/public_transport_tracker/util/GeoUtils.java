@@ -1,6 +1,10 @@
 package de.thb.ea.public_transport_tracker.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.GeoTile;
 import de.thb.ea.public_transport_tracker.util.model.Location;
 
 /**
@@ -48,7 +52,9 @@ public class GeoUtils {
 
 
     /**
-     * Calculate the distance between to locations in meter.
+     * Calculate the distance between to locations in meter. To compare many locations against
+     * the same location use {@link GeoRadius} or
+     * {@link #nearestWithinRadius(double, double, double, double[], double[], int, int)}.
      * 
      * @param lat1
      * @param lon1
@@ -68,4 +74,78 @@ public class GeoUtils {
         return EARTH_RADIUS_M * c;
     }
 
+
+    /**
+     * Get the locations within a radius around a center ordered by distance.
+     * 
+     * @param centerLat     center lat
+     * @param centerLon     center lon
+     * @param radius        radius in meters
+     * @param latitudes     lat of the locations
+     * @param longitudes    lon of the locations
+     * @param length        number of locations
+     * @param n             maximum number of locations
+     * @return indices of the (at most n) nearest locations in radius, nearest first
+     */
+    public static int[] nearestWithinRadius(
+        double centerLat, double centerLon, double radius,
+        double[] latitudes, double[] longitudes, int length, int n
+    ) {
+        return new GeoRadius(centerLat, centerLon, radius)
+            .nearest(latitudes, longitudes, length, n);
+    }
+
+
+
+    /**
+     * Get all tiles of a grid that intersect with a bounding box.
+     * 
+     * @param bbox      the bounding box to cover
+     * @param tileSize  tile size of the grid in degrees
+     * @return list of tiles covering the bounding box
+     */
+    public static List<GeoTile> getCoveringTiles(BoundingBox bbox, double tileSize) {
+        GeoTile northWest = GeoTile.of(
+            bbox.getNorthWest().getLatitude(), bbox.getNorthWest().getLongitude(), tileSize
+        );
+        GeoTile southEast = GeoTile.of(
+            bbox.getSouthEast().getLatitude(), bbox.getSouthEast().getLongitude(), tileSize
+        );
+
+        List<GeoTile> tiles = new ArrayList<>();
+        for (int y = southEast.getY(); y <= northWest.getY(); y++) {
+            for (int x = northWest.getX(); x <= southEast.getX(); x++) {
+                tiles.add(new GeoTile(x, y, tileSize));
+            }
+        }
+        return tiles;
+    }
+
+
+    /**
+     * Split a bounding box into a grid of equally sized bounding boxes.
+     * 
+     * @param bbox      the bounding box to split
+     * @param rows      number of rows (north to south)
+     * @param columns   number of columns (west to east)
+     * @return list of the sub boxes
+     */
+    public static List<BoundingBox> splitBbox(BoundingBox bbox, int rows, int columns) {
+        double north = bbox.getNorthWest().getLatitude();
+        double west = bbox.getNorthWest().getLongitude();
+        double latStep = (north - bbox.getSouthEast().getLatitude()) / rows;
+        double lonStep = (bbox.getSouthEast().getLongitude() - west) / columns;
+
+        List<BoundingBox> boxes = new ArrayList<>(rows * columns);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                boxes.add(new BoundingBox(
+                    new Location(north - row * latStep, west + column * lonStep),
+                    new Location(north - (row + 1) * latStep, west + (column + 1) * lonStep)
+                ));
+            }
+        }
+        return boxes;
+    }
+
 }
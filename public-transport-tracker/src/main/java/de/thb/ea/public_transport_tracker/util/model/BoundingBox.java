@@ -12,4 +12,18 @@ public class BoundingBox {
     Location northWest;
     Location southEast;
 
+    /**
+     * Check if a location lies inside the bounding box (borders included).
+     * 
+     * @param latitude
+     * @param longitude
+     * @return <code>true</code> if the location is inside; otherwise <code>false</code>
+     */
+    public boolean contains(double latitude, double longitude) {
+        return latitude <= northWest.getLatitude()
+            && latitude >= southEast.getLatitude()
+            && longitude >= northWest.getLongitude()
+            && longitude <= southEast.getLongitude();
+    }
+
 }
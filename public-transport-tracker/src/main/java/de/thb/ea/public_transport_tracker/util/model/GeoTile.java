@@ -0,0 +1,46 @@
+package de.thb.ea.public_transport_tracker.util.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * A cell of a fixed grid over latitude and longitude. The grid is defined by the tile size in
+ * degrees, a tile is identified by its column (x) and row (y) index in that grid.
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class GeoTile {
+
+    private final int x;
+    private final int y;
+    private final double size;
+
+    /**
+     * Get the tile of the grid that contains the location.
+     * 
+     * @param latitude
+     * @param longitude
+     * @param size      tile size in degrees
+     * @return the containing tile
+     */
+    public static GeoTile of(double latitude, double longitude, double size) {
+        return new GeoTile(
+            (int) Math.floor(longitude / size),
+            (int) Math.floor(latitude / size),
+            size
+        );
+    }
+
+    /**
+     * @return The top left and bottom right corner of the tile
+     */
+    public BoundingBox getBbox() {
+        return new BoundingBox(
+            new Location((y + 1) * size, x * size),
+            new Location(y * size, (x + 1) * size)
+        );
+    }
+
+}
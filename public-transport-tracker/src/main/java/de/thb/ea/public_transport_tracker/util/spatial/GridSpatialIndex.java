@@ -0,0 +1,164 @@
+package de.thb.ea.public_transport_tracker.util.spatial;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import de.thb.ea.public_transport_tracker.util.GeoRadius;
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.GeoTile;
+
+/**
+ * Spatial index that buckets items into the cells of a fixed grid. Inserts, updates and removals
+ * are O(1), queries only visit the cells intersecting the query area.
+ */
+public class GridSpatialIndex<T> implements SpatialIndex<T> {
+
+    public static final double DEFAULT_CELL_SIZE = 0.01; // degrees
+
+    private static final double METERS_PER_DEGREE = 111_195;
+
+    private record Entry<T>(T item, double latitude, double longitude, long cell) {}
+
+    private final double cellSize;
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+
+    /**
+     * @param cellSize side length of a grid cell in degrees
+     */
+    public GridSpatialIndex(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void insert(T item, double latitude, double longitude) {
+        remove(item);
+
+        GeoTile tile = GeoTile.of(latitude, longitude, cellSize);
+        Entry<T> entry = new Entry<>(item, latitude, longitude, key(tile.getX(), tile.getY()));
+        entries.put(item, entry);
+        cells.computeIfAbsent(entry.cell(), k -> new ArrayList<>()).add(entry);
+    }
+
+    @Override
+    public boolean remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) {
+            return false;
+        }
+
+        List<Entry<T>> cell = cells.get(entry.cell());
+        cell.remove(entry);
+        if (cell.isEmpty()) {
+            cells.remove(entry.cell());
+        }
+        return true;
+    }
+
+    @Override
+    public List<T> withinRadius(double latitude, double longitude, double radius) {
+        BoundingBox bbox = GeoUtils.getBbox(latitude, longitude, radius * 2.);
+
+        GeoRadius circle = new GeoRadius(latitude, longitude, radius);
+        List<Scored<T>> candidates = new ArrayList<>();
+        forEachCell(bbox, cell -> {
+            for (Entry<T> entry : cell) {
+                double distance = circle.distanceWithin(entry.latitude(), entry.longitude());
+                if (!Double.isNaN(distance)) {
+                    candidates.add(new Scored<>(entry.item(), distance));
+                }
+            }
+        });
+
+        return Scored.sorted(candidates);
+    }
+
+    @Override
+    public List<T> nearest(double latitude, double longitude, int k) {
+        if (k <= 0 || entries.isEmpty()) {
+            return List.of();
+        }
+
+        GeoTile center = GeoTile.of(latitude, longitude, cellSize);
+
+        List<Scored<T>> candidates = new ArrayList<>();
+        int visited = 0;
+        for (int ring = 0; ; ring++) {
+            for (int y = center.getY() - ring; y <= center.getY() + ring; y++) {
+                for (int x = center.getX() - ring; x <= center.getX() + ring; x++) {
+                    // only visit the border of the ring
+                    if (Math.abs(y - center.getY()) != ring && Math.abs(x - center.getX()) != ring) {
+                        continue;
+                    }
+                    List<Entry<T>> cell = cells.get(key(x, y));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Entry<T> entry : cell) {
+                        candidates.add(new Scored<>(entry.item(), GeoUtils.distanceInMeters(
+                            entry.latitude(), entry.longitude(), latitude, longitude
+                        )));
+                    }
+                    visited += cell.size();
+                }
+            }
+
+            if (visited == entries.size()) {
+                break;
+            }
+            if (candidates.size() >= k) {
+                candidates.sort(Comparator.comparingDouble(Scored::distance));
+                // all unvisited items are at least this far away (cells get narrower towards
+                // the poles, so the width at the outermost latitude of the ring is used)
+                double ringDistance = ring * cellSize * METERS_PER_DEGREE * Math.cos(
+                    Math.toRadians(Math.min(90., Math.abs(latitude) + ring * cellSize))
+                );
+                if (candidates.get(k - 1).distance() <= ringDistance) {
+                    break;
+                }
+            }
+        }
+
+        List<T> sorted = Scored.sorted(candidates);
+        return sorted.subList(0, Math.min(k, sorted.size()));
+    }
+
+    @Override
+    public List<T> withinBoundingBox(BoundingBox bbox) {
+        List<T> items = new ArrayList<>();
+        forEachCell(bbox, cell -> {
+            for (Entry<T> entry : cell) {
+                if (bbox.contains(entry.latitude(), entry.longitude())) {
+                    items.add(entry.item());
+                }
+            }
+        });
+        return items;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+
+    private void forEachCell(BoundingBox bbox, Consumer<List<Entry<T>>> action) {
+        for (GeoTile tile : GeoUtils.getCoveringTiles(bbox, cellSize)) {
+            List<Entry<T>> cell = cells.get(key(tile.getX(), tile.getY()));
+            if (cell != null) {
+                action.accept(cell);
+            }
+        }
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+}
@@ -0,0 +1,296 @@
+package de.thb.ea.public_transport_tracker.util.spatial;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import de.thb.ea.public_transport_tracker.util.GeoRadius;
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+
+/**
+ * Spatial index backed by a balanced 2d-tree. The tree is stored in flat arrays and is rebuilt
+ * lazily by the first query after a modification, so it suits data that is bulk loaded and
+ * queried often.
+ * 
+ * The tree works on an equirectangular projection around the mean latitude of the indexed
+ * items. Results of nearest queries are ordered by the exact haversine distance, results of
+ * radius queries by the distance of {@link GeoRadius#distanceWithin(double, double)}.
+ */
+public class KdTreeSpatialIndex<T> implements SpatialIndex<T> {
+
+    private static final double METERS_PER_DEGREE = 111_195;
+
+    private record Point(double latitude, double longitude) {}
+
+    /**
+     * Immutable tree. Node i of the range [lo, hi) is stored at the median (lo + hi) / 2 and
+     * splits by x on even and by y on odd depth.
+     */
+    private record Tree<T>(Object[] items, double[] xs, double[] ys, double lonScale) {}
+
+    private final Map<T, Point> points = new HashMap<>();
+    private volatile Tree<T> tree;
+
+
+    @Override
+    public void insert(T item, double latitude, double longitude) {
+        points.put(item, new Point(latitude, longitude));
+        tree = null;
+    }
+
+    @Override
+    public boolean remove(T item) {
+        if (points.remove(item) == null) {
+            return false;
+        }
+        tree = null;
+        return true;
+    }
+
+    @Override
+    public List<T> withinRadius(double latitude, double longitude, double radius) {
+        Tree<T> tree = getTree();
+        BoundingBox bbox = GeoUtils.getBbox(latitude, longitude, radius * 2.);
+
+        GeoRadius circle = new GeoRadius(latitude, longitude, radius);
+        List<Scored<T>> scored = new ArrayList<>();
+        for (int i : rangeSearch(tree, bbox)) {
+            double distance = circle.distanceWithin(latitude(tree, i), longitude(tree, i));
+            if (!Double.isNaN(distance)) {
+                scored.add(new Scored<>(item(tree, i), distance));
+            }
+        }
+        return Scored.sorted(scored);
+    }
+
+    @Override
+    public List<T> nearest(double latitude, double longitude, int k) {
+        Tree<T> tree = getTree();
+        if (k <= 0 || tree.items().length == 0) {
+            return List.of();
+        }
+
+        double x = longitude * tree.lonScale();
+        double y = latitude * METERS_PER_DEGREE;
+
+        // max heap of the k best nodes by squared projected distance
+        PriorityQueue<double[]> best = new PriorityQueue<>(
+            Comparator.comparingDouble((double[] e) -> e[1]).reversed()
+        );
+        nearest(tree, 0, tree.items().length, 0, x, y, k, best);
+
+        List<Scored<T>> scored = new ArrayList<>(best.size());
+        for (double[] e : best) {
+            int i = (int) e[0];
+            scored.add(new Scored<>(item(tree, i), GeoUtils.distanceInMeters(
+                latitude(tree, i), longitude(tree, i), latitude, longitude
+            )));
+        }
+        return Scored.sorted(scored);
+    }
+
+    @Override
+    public List<T> withinBoundingBox(BoundingBox bbox) {
+        Tree<T> tree = getTree();
+        List<T> items = new ArrayList<>();
+        for (int i : rangeSearch(tree, bbox)) {
+            items.add(item(tree, i));
+        }
+        return items;
+    }
+
+    @Override
+    public int size() {
+        return points.size();
+    }
+
+
+    private synchronized Tree<T> getTree() {
+        Tree<T> current = tree;
+        if (current == null) {
+            current = build();
+            tree = current;
+        }
+        return current;
+    }
+
+    private Tree<T> build() {
+        int n = points.size();
+        double meanLat = points.values().stream()
+            .mapToDouble(Point::latitude).average().orElse(0.);
+        double lonScale = METERS_PER_DEGREE * Math.cos(Math.toRadians(meanLat));
+
+        Object[] items = new Object[n];
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int i = 0;
+        for (Map.Entry<T, Point> entry : points.entrySet()) {
+            items[i] = entry.getKey();
+            xs[i] = entry.getValue().longitude() * lonScale;
+            ys[i] = entry.getValue().latitude() * METERS_PER_DEGREE;
+            i++;
+        }
+
+        int[] order = new int[n];
+        for (i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        arrange(order, 0, n, 0, xs, ys);
+
+        Object[] sortedItems = new Object[n];
+        double[] sortedXs = new double[n];
+        double[] sortedYs = new double[n];
+        for (i = 0; i < n; i++) {
+            sortedItems[i] = items[order[i]];
+            sortedXs[i] = xs[order[i]];
+            sortedYs[i] = ys[order[i]];
+        }
+        return new Tree<>(sortedItems, sortedXs, sortedYs, lonScale);
+    }
+
+    /**
+     * Order the range so that its median splits it by the axis of the depth, then recurse.
+     */
+    private static void arrange(
+        int[] order, int lo, int hi, int depth, double[] xs, double[] ys
+    ) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(order, lo, hi - 1, mid, depth % 2 == 0 ? xs : ys);
+
+        arrange(order, lo, mid, depth + 1, xs, ys);
+        arrange(order, mid + 1, hi, depth + 1, xs, ys);
+    }
+
+    /**
+     * Move the k-th smallest of the range [lo, hi] to k, with no greater value before and no
+     * smaller value after it (quickselect). Unlike sorting the range this is linear on average,
+     * so the tree is built in O(n log n).
+     */
+    private static void select(int[] order, int lo, int hi, int k, double[] axis) {
+        while (lo < hi) {
+            double pivot = axis[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (axis[order[i]] < pivot) {
+                    i++;
+                }
+                while (axis[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            // [lo, j] <= pivot, (j, i) == pivot, [i, hi] >= pivot
+            if (k <= j) {
+                hi = j;
+            }
+            else if (k >= i) {
+                lo = i;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    private List<Integer> rangeSearch(Tree<T> tree, BoundingBox bbox) {
+        List<Integer> result = new ArrayList<>();
+        rangeSearch(
+            tree, 0, tree.items().length, 0,
+            bbox.getNorthWest().getLongitude() * tree.lonScale(),
+            bbox.getSouthEast().getLongitude() * tree.lonScale(),
+            bbox.getSouthEast().getLatitude() * METERS_PER_DEGREE,
+            bbox.getNorthWest().getLatitude() * METERS_PER_DEGREE,
+            result
+        );
+        return result;
+    }
+
+    private static void rangeSearch(
+        Tree<?> tree, int lo, int hi, int depth,
+        double minX, double maxX, double minY, double maxY, List<Integer> result
+    ) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double x = tree.xs()[mid];
+        double y = tree.ys()[mid];
+        if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+            result.add(mid);
+        }
+
+        double value = depth % 2 == 0 ? x : y;
+        double min = depth % 2 == 0 ? minX : minY;
+        double max = depth % 2 == 0 ? maxX : maxY;
+        if (min <= value) {
+            rangeSearch(tree, lo, mid, depth + 1, minX, maxX, minY, maxY, result);
+        }
+        if (max >= value) {
+            rangeSearch(tree, mid + 1, hi, depth + 1, minX, maxX, minY, maxY, result);
+        }
+    }
+
+    private static void nearest(
+        Tree<?> tree, int lo, int hi, int depth, double x, double y, int k,
+        PriorityQueue<double[]> best
+    ) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double dx = tree.xs()[mid] - x;
+        double dy = tree.ys()[mid] - y;
+        double distance = dx * dx + dy * dy;
+        if (best.size() < k) {
+            best.add(new double[] { mid, distance });
+        }
+        else if (distance < best.peek()[1]) {
+            best.poll();
+            best.add(new double[] { mid, distance });
+        }
+
+        double delta = depth % 2 == 0 ? dx : dy;
+        // search the side of the query point first
+        boolean lowerFirst = delta > 0;
+        if (lowerFirst) {
+            nearest(tree, lo, mid, depth + 1, x, y, k, best);
+        }
+        else {
+            nearest(tree, mid + 1, hi, depth + 1, x, y, k, best);
+        }
+        if (best.size() < k || delta * delta < best.peek()[1]) {
+            if (lowerFirst) {
+                nearest(tree, mid + 1, hi, depth + 1, x, y, k, best);
+            }
+            else {
+                nearest(tree, lo, mid, depth + 1, x, y, k, best);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(Tree<T> tree, int i) {
+        return (T) tree.items()[i];
+    }
+
+    private double latitude(Tree<T> tree, int i) {
+        return tree.ys()[i] / METERS_PER_DEGREE;
+    }
+
+    private double longitude(Tree<T> tree, int i) {
+        return tree.xs()[i] / tree.lonScale();
+    }
+
+}
@@ -0,0 +1,19 @@
+package de.thb.ea.public_transport_tracker.util.spatial;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * An item together with its distance to a query location.
+ */
+record Scored<T>(T item, double distance) {
+
+    static <T> List<T> sorted(List<Scored<T>> scored) {
+        return scored.stream()
+            .sorted(Comparator.comparingDouble(Scored::distance))
+            .map(Scored::item)
+            .collect(Collectors.toList());
+    }
+
+}
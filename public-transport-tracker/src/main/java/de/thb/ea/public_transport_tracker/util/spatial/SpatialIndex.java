@@ -0,0 +1,73 @@
+package de.thb.ea.public_transport_tracker.util.spatial;
+
+import java.util.List;
+
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+
+/**
+ * Index of items by their geo location.
+ * 
+ * Queries may be executed concurrently, modifications must not run concurrently with other
+ * modifications or queries.
+ */
+public interface SpatialIndex<T> {
+
+    /**
+     * Add an item to the index. If the item is already indexed its location is updated.
+     * 
+     * @param item
+     * @param latitude
+     * @param longitude
+     */
+    void insert(T item, double latitude, double longitude);
+
+    /**
+     * Remove an item from the index.
+     * 
+     * @param item
+     * @return <code>true</code> if the item was indexed; otherwise <code>false</code>
+     */
+    boolean remove(T item);
+
+    /**
+     * Update the location of an item.
+     * 
+     * @param item
+     * @param latitude
+     * @param longitude
+     */
+    default void update(T item, double latitude, double longitude) {
+        insert(item, latitude, longitude);
+    }
+
+    /**
+     * Get all items within a radius around a location.
+     * 
+     * @param latitude  center lat
+     * @param longitude center lon
+     * @param radius    radius in meters
+     * @return the items in radius, nearest first
+     */
+    List<T> withinRadius(double latitude, double longitude, double radius);
+
+    /**
+     * Get the k items nearest to a location.
+     * 
+     * @param latitude
+     * @param longitude
+     * @param k         maximum number of items
+     * @return the nearest items, nearest first
+     */
+    List<T> nearest(double latitude, double longitude, int k);
+
+    /**
+     * Get all items inside a bounding box.
+     * 
+     * @param bbox
+     * @return the items inside the bounding box in no particular order
+     */
+    List<T> withinBoundingBox(BoundingBox bbox);
+
+    int size();
+
+}
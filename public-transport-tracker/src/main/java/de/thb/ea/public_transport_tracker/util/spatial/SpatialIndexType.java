@@ -0,0 +1,15 @@
+package de.thb.ea.public_transport_tracker.util.spatial;
+
+public enum SpatialIndexType {
+
+    GRID,
+    KD_TREE;
+
+    public <T> SpatialIndex<T> create() {
+        return switch (this) {
+            case GRID -> new GridSpatialIndex<>(GridSpatialIndex.DEFAULT_CELL_SIZE);
+            case KD_TREE -> new KdTreeSpatialIndex<>();
+        };
+    }
+
+}
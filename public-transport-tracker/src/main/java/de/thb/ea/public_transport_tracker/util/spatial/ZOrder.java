@@ -0,0 +1,131 @@
+package de.thb.ea.public_transport_tracker.util.spatial;
+
+/**
+ * Z-order (Morton) curve over geo locations. Latitude and longitude are quantized to 31 bits
+ * each and interleaved into a non-negative long, longitude on the even and latitude on the odd
+ * bits. Locations close to each other mostly have close codes, so data sorted by its code is
+ * stored with good locality.
+ */
+public final class ZOrder {
+
+    private static final long EVEN_BITS = 0x5555555555555555L;
+    private static final long ODD_BITS = 0xAAAAAAAAAAAAAAAAL;
+    private static final int BITS = 31;
+    private static final double CELLS = (1L << BITS) - 1;
+
+    private ZOrder() {}
+
+    public static int quantizeLongitude(double longitude) {
+        return (int) ((longitude + 180.) / 360. * CELLS);
+    }
+
+    public static int quantizeLatitude(double latitude) {
+        return (int) ((latitude + 90.) / 180. * CELLS);
+    }
+
+    public static long encode(double latitude, double longitude) {
+        return interleave(quantizeLongitude(longitude), quantizeLatitude(latitude));
+    }
+
+    /**
+     * Interleave the bits of two quantized coordinates.
+     * 
+     * @param x quantized longitude
+     * @param y quantized latitude
+     * @return the z-order code
+     */
+    public static long interleave(int x, int y) {
+        return spread(x) | spread(y) << 1;
+    }
+
+    public static int x(long code) {
+        return compact(code);
+    }
+
+    public static int y(long code) {
+        return compact(code >>> 1);
+    }
+
+    /**
+     * Check if a code lies inside the box spanned by two codes.
+     * 
+     * @param code
+     * @param min   code of the lower corner
+     * @param max   code of the upper corner
+     * @return <code>true</code> if the code is inside; otherwise <code>false</code>
+     */
+    public static boolean inside(long code, long min, long max) {
+        int x = x(code);
+        int y = y(code);
+        return x >= x(min) && x <= x(max) && y >= y(min) && y <= y(max);
+    }
+
+    /**
+     * Get the smallest code greater than the given code that lies inside the box spanned by two
+     * codes (BIGMIN of Tropf and Herzog). Used to skip the parts of the curve that leave the box.
+     * 
+     * @param code  a code outside the box, between min and max
+     * @param min   code of the lower corner
+     * @param max   code of the upper corner
+     * @return the next code inside the box or <code>-1</code> if there is none
+     */
+    public static long nextInside(long code, long min, long max) {
+        long bigMin = -1;
+        for (int bit = 2 * BITS - 1; bit >= 0; bit--) {
+            long mask = 1L << bit;
+            boolean value = (code & mask) != 0;
+            boolean low = (min & mask) != 0;
+            boolean high = (max & mask) != 0;
+
+            if (!value && !low && high) {
+                bigMin = load(min, bit, true);
+                max = load(max, bit, false);
+            }
+            else if (!value && low && high) {
+                return min;
+            }
+            else if (value && !low && !high) {
+                return bigMin;
+            }
+            else if (value && !low && high) {
+                min = load(min, bit, true);
+            }
+            // 000 and 111 continue, 010 and 110 can't occur for min <= max
+        }
+        return bigMin;
+    }
+
+
+    /**
+     * Set the bit and clear the lower bits of the same dimension (<code>true</code>) or clear
+     * the bit and set the lower bits of the same dimension (<code>false</code>).
+     */
+    private static long load(long code, int bit, boolean one) {
+        long dimension = (bit % 2 == 0 ? EVEN_BITS : ODD_BITS) & ((1L << bit) - 1);
+        long mask = 1L << bit;
+        return one
+            ? (code | mask) & ~dimension
+            : (code & ~mask) | dimension;
+    }
+
+    private static long spread(int value) {
+        long x = value & 0xFFFFFFFFL;
+        x = (x | x << 16) & 0x0000FFFF0000FFFFL;
+        x = (x | x << 8) & 0x00FF00FF00FF00FFL;
+        x = (x | x << 4) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x << 2) & 0x3333333333333333L;
+        x = (x | x << 1) & 0x5555555555555555L;
+        return x;
+    }
+
+    private static int compact(long code) {
+        long x = code & 0x5555555555555555L;
+        x = (x | x >>> 1) & 0x3333333333333333L;
+        x = (x | x >>> 2) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | x >>> 4) & 0x00FF00FF00FF00FFL;
+        x = (x | x >>> 8) & 0x0000FFFF0000FFFFL;
+        x = (x | x >>> 16) & 0x00000000FFFFFFFFL;
+        return (int) x;
+    }
+
+}
@@ -0,0 +1,25 @@
+-- Moves the ids of trips, users and permissions from identity columns to sequences with an
+-- increment of 50, as expected by the pooled optimizer of the entities' @SequenceGenerator.
+-- Run once by hand on a database created by an earlier version, existing ids are kept; the
+-- application doesn't run migrations (see doc/database.md). New databases get the sequences
+-- from Hibernate.
+--
+--   psql -h <DB_DOMAIN> -U <DB_USER> -d <DB_NAME> -f 001-sequence-ids.sql
+
+BEGIN;
+
+ALTER TABLE trips ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE users ALTER COLUMN id DROP IDENTITY IF EXISTS;
+ALTER TABLE permissions ALTER COLUMN id DROP IDENTITY IF EXISTS;
+
+CREATE SEQUENCE IF NOT EXISTS trips_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS users_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS permissions_seq INCREMENT BY 50;
+
+-- a sequence value is the last id of a block of 50, so the first block starts after the
+-- largest existing id
+SELECT setval('trips_seq', COALESCE((SELECT max(id) FROM trips), 0) + 50, false);
+SELECT setval('users_seq', COALESCE((SELECT max(id) FROM users), 0) + 50, false);
+SELECT setval('permissions_seq', COALESCE((SELECT max(id) FROM permissions), 0) + 50, false);
+
+COMMIT;
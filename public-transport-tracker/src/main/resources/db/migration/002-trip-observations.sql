@@ -0,0 +1,36 @@
+-- Creates the table of trip observations, partitioned by day (UTC). The application creates
+-- the table and its partitions itself if application.trips.observations.enabled is set; this
+-- script is for setting up the schema without the application, e.g. for a restricted user.
+-- The trips table has to exist. Observations are deleted along with their trip; if the trips
+-- table is recreated the foreign key is dropped with it and the application truncates the
+-- observations before adding it again.
+--
+--   psql -h <DB_DOMAIN> -U <DB_USER> -d <DB_NAME> -f 002-trip-observations.sql
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS trip_observations (
+    trip_id bigint NOT NULL
+        CONSTRAINT trip_observations_trip_id_fkey REFERENCES trips (id) ON DELETE CASCADE,
+    observed_at timestamptz NOT NULL,
+    latitude double precision NOT NULL,
+    longitude double precision NOT NULL
+) PARTITION BY RANGE (observed_at);
+
+CREATE INDEX IF NOT EXISTS trip_observations_trip_id_observed_at_idx
+ON trip_observations (trip_id, observed_at);
+
+-- partition of the current day, named trip_observations_yyyyMMdd like the ones the application
+-- creates in advance
+DO $$
+DECLARE
+    day date := (now() AT TIME ZONE 'UTC')::date;
+BEGIN
+    EXECUTE format(
+        'CREATE TABLE IF NOT EXISTS %I PARTITION OF trip_observations FOR VALUES FROM (%L) TO (%L)',
+        'trip_observations_' || to_char(day, 'YYYYMMDD'),
+        day::timestamp AT TIME ZONE 'UTC', (day + 1)::timestamp AT TIME ZONE 'UTC'
+    );
+END $$;
+
+COMMIT;
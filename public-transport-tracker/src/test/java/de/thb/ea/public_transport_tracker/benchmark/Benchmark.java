@@ -0,0 +1,113 @@
+package de.thb.ea.public_transport_tracker.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal benchmark runner for the benchmark main classes of this package. An operation is
+ * called repeatedly for the warmup time and then for a number of measured iterations; the median
+ * time per call over the iterations and the bytes allocated per call are reported. The result of
+ * every call is accumulated, so the JIT can't drop the work.
+ * 
+ * This is no replacement for JMH (no forks, no control over inlining), but it is good enough to
+ * compare implementations that differ by more than a few percent when run on the same machine.
+ */
+public class Benchmark {
+
+    private final Logger logger = LoggerFactory.getLogger(Benchmark.class);
+
+    private final Duration warmup;
+    private final Duration iteration;
+    private final int iterations;
+    private long sink = 0;
+
+
+    public Benchmark() {
+        this(Duration.ofSeconds(2), Duration.ofMillis(500), 10);
+    }
+
+    public Benchmark(Duration warmup, Duration iteration, int iterations) {
+        this.warmup = warmup;
+        this.iteration = iteration;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Result of a benchmark.
+     * 
+     * @param name
+     * @param nanosPerOp    median time per call
+     * @param bytesPerOp    allocated bytes per call
+     */
+    public record Result(String name, double nanosPerOp, double bytesPerOp) {
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %12.1f ns/op %12.0f B/op", name, nanosPerOp, bytesPerOp);
+        }
+
+    }
+
+    /**
+     * Run a benchmark and log the result.
+     * 
+     * @param name
+     * @param operation the measured operation, returns any value that depends on its work
+     * @return the result
+     */
+    public Result run(String name, LongSupplier operation) {
+        measure(operation, warmup.toNanos());
+
+        double[] nanosPerOp = new double[iterations];
+        long allocated = 0;
+        long calls = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long n = measure(operation, iteration.toNanos());
+            nanosPerOp[i] = (double) (System.nanoTime() - start) / n;
+            allocated += allocatedBytes() - allocatedBefore;
+            calls += n;
+        }
+        Arrays.sort(nanosPerOp);
+
+        Result result = new Result(
+            name, nanosPerOp[iterations / 2], calls > 0 ? (double) allocated / calls : 0.
+        );
+        logger.info(result.toString());
+        return result;
+    }
+
+    /**
+     * @return the accumulated results of all calls, log it so it can't be optimized away
+     */
+    public long getSink() {
+        return sink;
+    }
+
+
+    /**
+     * @return number of calls
+     */
+    private long measure(LongSupplier operation, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long n = 0;
+        do {
+            sink += operation.getAsLong();
+            n++;
+        }
+        while (System.nanoTime() < end);
+        return n;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getCurrentThreadAllocatedBytes();
+    }
+
+}
@@ -0,0 +1,172 @@
+package de.thb.ea.public_transport_tracker.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import de.thb.ea.public_transport_tracker.PublicTransportTrackerApplication;
+
+/**
+ * Runner for benchmarks that need a database. The application is started with its configuration
+ * but without a web server, so the benchmarks use its beans (repositories, transactions, the
+ * configured datasource). The arguments are passed to the application like on the command line,
+ * e.g. <code>--spring.datasource.url=jdbc:postgresql://localhost:5432/benchmark</code>. Use a
+ * database of its own, the benchmarks write to it (with
+ * <code>spring.jpa.hibernate.ddl-auto=create-drop</code> the schema is dropped afterwards).
+ * 
+ * Every operation runs once and its wall time and JDBC round trips are reported. A round trip is
+ * an executed statement (a batch counts once) or a commit or rollback; statements the driver
+ * sends implicitly (e.g. <code>BEGIN</code> along with the first statement) and <code>COPY</code>
+ * through the driver's own connection aren't counted.
+ */
+public class DatabaseBenchmark implements AutoCloseable {
+
+    private static final Set<String> ROUND_TRIPS = Set.of(
+        "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch",
+        "executeLargeBatch", "commit", "rollback"
+    );
+
+    private final Logger logger = LoggerFactory.getLogger(DatabaseBenchmark.class);
+
+    private final ConfigurableApplicationContext context;
+    private final AtomicLong roundTrips = new AtomicLong();
+
+
+    public DatabaseBenchmark(String[] args) {
+        this.context = new SpringApplicationBuilder(PublicTransportTrackerApplication.class)
+            .web(WebApplicationType.NONE)
+            // nothing else writes to the database
+            .properties(
+                "application.vbb.poller.enabled=false",
+                "application.trips.observations.enabled=false"
+            )
+            .initializers(context -> context.getBeanFactory().addBeanPostProcessor(
+                new BeanPostProcessor() {
+                    @Override
+                    public Object postProcessAfterInitialization(Object bean, String name) {
+                        return bean instanceof DataSource dataSource ? counting(dataSource) : bean;
+                    }
+                }
+            ))
+            .run(args);
+    }
+
+    /**
+     * Result of a benchmark.
+     * 
+     * @param name
+     * @param rows          rows written by the operation
+     * @param nanos         wall time of the operation
+     * @param roundTrips    JDBC round trips of the operation
+     */
+    public record Result(String name, long rows, long nanos, long roundTrips) {
+
+        public double rowsPerSecond() {
+            return rows / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%-40s %8d rows %10.1f ms %8d round trips %10.0f rows/s",
+                name, rows, nanos / 1e6, roundTrips, rowsPerSecond()
+            );
+        }
+
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * Run an operation once and log the result.
+     * 
+     * @param name
+     * @param rows      rows written by the operation
+     * @param operation
+     * @return the result
+     */
+    public Result run(String name, long rows, Runnable operation) {
+        long roundTripsBefore = roundTrips.get();
+        long start = System.nanoTime();
+        operation.run();
+        Result result = new Result(
+            name, rows, System.nanoTime() - start, roundTrips.get() - roundTripsBefore
+        );
+        logger.info(result.toString());
+        return result;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+
+    private DataSource counting(DataSource dataSource) {
+        return proxy(DataSource.class, dataSource, (method, result) ->
+            result instanceof Connection && !method.getName().equals("unwrap")
+                ? proxy(Connection.class, result, this::count)
+                : result
+        );
+    }
+
+    private Object count(Method method, Object result) {
+        if (ROUND_TRIPS.contains(method.getName())) {
+            roundTrips.incrementAndGet();
+        }
+        if (method.getName().equals("unwrap")) {
+            // e.g. the driver's connection for COPY
+            return result;
+        }
+        if (result instanceof CallableStatement statement) {
+            return proxy(CallableStatement.class, statement, this::count);
+        }
+        if (result instanceof PreparedStatement statement) {
+            return proxy(PreparedStatement.class, statement, this::count);
+        }
+        if (result instanceof Statement statement) {
+            return proxy(Statement.class, statement, this::count);
+        }
+        return result;
+    }
+
+    private static <T> T proxy(Class<T> type, Object target, Interceptor interceptor) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            try {
+                return interceptor.intercept(method, method.invoke(target, args));
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(
+            DatabaseBenchmark.class.getClassLoader(), new Class<?>[] { type }, handler
+        ));
+    }
+
+    @FunctionalInterface
+    private interface Interceptor {
+
+        Object intercept(Method method, Object result);
+
+    }
+
+}
@@ -0,0 +1,121 @@
+package de.thb.ea.public_transport_tracker.benchmark;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLocation;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.util.GeoRadius;
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+
+/**
+ * Compares {@link GeoUtils#nearestWithinRadius} with the stream that filtered and sorted the
+ * movements of the covering tiles by their haversine distance before, and the radius check of
+ * {@link GeoRadius} with a haversine distance per location. The movements are spread over the
+ * covering tiles of a 2 km radius around Berlin.
+ */
+public class GeoRadiusBenchmark {
+
+    private static final int[] SIZES = { 1024, 4096 };
+    private static final double LATITUDE = 52.52;
+    private static final double LONGITUDE = 13.405;
+    private static final double RADIUS = 2000.;
+    private static final int N = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(GeoRadiusBenchmark.class);
+
+    private final Benchmark benchmark = new Benchmark();
+    private final Random random = new Random(42);
+
+
+    public static void main(String[] args) {
+        new GeoRadiusBenchmark().run();
+    }
+
+    public void run() {
+        for (int size : SIZES) {
+            List<VbbMovement> movements = randomMovements(size);
+
+            benchmark.run(String.format("nearby stream %d", size), () -> movements
+                .stream()
+                .filter(e -> GeoUtils.distanceInMeters(
+                    e.getLocation().getLatitude(), e.getLocation().getLongitude(),
+                    LATITUDE, LONGITUDE
+                ) <= RADIUS)
+                .sorted(Comparator.comparingDouble(e -> GeoUtils.distanceInMeters(
+                    e.getLocation().getLatitude(), e.getLocation().getLongitude(),
+                    LATITUDE, LONGITUDE
+                )))
+                .limit(N)
+                .toList()
+                .size()
+            );
+            benchmark.run(String.format("nearby kernel %d", size), () -> {
+                // as filterNearby does, including copying the locations into arrays
+                double[] latitudes = new double[size];
+                double[] longitudes = new double[size];
+                for (int i = 0; i < size; i++) {
+                    latitudes[i] = movements.get(i).getLatitude();
+                    longitudes[i] = movements.get(i).getLongitude();
+                }
+                int[] nearby = GeoUtils.nearestWithinRadius(
+                    LATITUDE, LONGITUDE, RADIUS, latitudes, longitudes, size, N
+                );
+                List<VbbMovement> result = new ArrayList<>(nearby.length);
+                for (int i : nearby) {
+                    result.add(movements.get(i));
+                }
+                return result.size();
+            });
+
+            benchmark.run(String.format("contains haversine %d", size), () -> {
+                long count = 0;
+                for (VbbMovement movement : movements) {
+                    if (GeoUtils.distanceInMeters(
+                        movement.getLatitude(), movement.getLongitude(), LATITUDE, LONGITUDE
+                    ) <= RADIUS) {
+                        count++;
+                    }
+                }
+                return count;
+            });
+            benchmark.run(String.format("contains GeoRadius %d", size), () -> {
+                GeoRadius circle = new GeoRadius(LATITUDE, LONGITUDE, RADIUS);
+                long count = 0;
+                for (VbbMovement movement : movements) {
+                    if (circle.contains(movement.getLatitude(), movement.getLongitude())) {
+                        count++;
+                    }
+                }
+                return count;
+            });
+        }
+        logger.debug(String.format("sink %d", benchmark.getSink()));
+    }
+
+
+    /**
+     * @return movements in the bounding box of the radius padded by half its size, as the
+     *         covering tiles return them
+     */
+    private List<VbbMovement> randomMovements(int n) {
+        double latitudeSpan = RADIUS * 1.5 / 111_195.;
+        double longitudeSpan = latitudeSpan / Math.cos(Math.toRadians(LATITUDE));
+        List<VbbMovement> movements = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            VbbLocation location = new VbbLocation();
+            location.setLatitude(LATITUDE + random.nextDouble(-latitudeSpan, latitudeSpan));
+            location.setLongitude(LONGITUDE + random.nextDouble(-longitudeSpan, longitudeSpan));
+            VbbMovement movement = new VbbMovement();
+            movement.setLocation(location);
+            movements.add(movement);
+        }
+        return movements;
+    }
+
+}
@@ -0,0 +1,102 @@
+package de.thb.ea.public_transport_tracker.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.thb.ea.public_transport_tracker.config.property.RadarFramesProperties;
+import de.thb.ea.public_transport_tracker.config.property.VbbDictionaryProperties;
+import de.thb.ea.public_transport_tracker.config.property.VbbStubProperties;
+import de.thb.ea.public_transport_tracker.controller.stub.VbbStubController;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder.LocationFilter;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder.VbbDictionary;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder.VbbRadarDecoder;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbRadarResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Compares the streaming {@link VbbRadarDecoder} with mapping the whole body as String to a
+ * {@link VbbRadarResponse}, as radar responses were decoded before. The responses are rendered
+ * by the VBB stub with 256 and 1000 movements, 3 stopovers per movement and without frames (the
+ * default, frames are only requested if enabled).
+ */
+public class RadarDecoderBenchmark {
+
+    private static final int[] RESULTS = { 256, 1000 };
+
+    private final Logger logger = LoggerFactory.getLogger(RadarDecoderBenchmark.class);
+
+    private final Benchmark benchmark = new Benchmark();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+
+    public static void main(String[] args) {
+        new RadarDecoderBenchmark().run();
+    }
+
+    public void run() {
+        VbbStubProperties stubProperties = new VbbStubProperties();
+        stubProperties.setLatency(Duration.ZERO);
+        stubProperties.setLatencyJitter(Duration.ZERO);
+        VbbStubController stub = new VbbStubController(stubProperties, objectMapper);
+
+        VbbRadarDecoder decoder = new VbbRadarDecoder(
+            objectMapper,
+            new VbbDictionary(new VbbDictionaryProperties(), new SimpleMeterRegistry()),
+            new RadarFramesProperties()
+        );
+        // drops the northern half of the response, like a filter that drops the movements
+        // outside of a radius or tile
+        double middle = (stubProperties.getNorth() + stubProperties.getSouth()) / 2.;
+        LocationFilter southern = (latitude, longitude) -> latitude < middle;
+
+        for (int results : RESULTS) {
+            byte[] body = stub.radar(
+                stubProperties.getNorth(), stubProperties.getWest(),
+                stubProperties.getSouth(), stubProperties.getEast(), results, 0, 0
+            ).block().getBody();
+            logger.info(String.format(
+                "%d movements, %d accepted by the filter, %d bytes", results,
+                decode(decoder, body, southern), body.length
+            ));
+
+            benchmark.run(String.format("readValue %d", results), () -> {
+                try {
+                    return objectMapper.readValue(
+                        new String(body, StandardCharsets.UTF_8), VbbRadarResponse.class
+                    ).getMovements().size();
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            benchmark.run(
+                String.format("decode %d", results),
+                () -> decode(decoder, body, LocationFilter.ALL)
+            );
+            benchmark.run(
+                String.format("decode filtered %d", results),
+                () -> decode(decoder, body, southern)
+            );
+        }
+        logger.debug(String.format("sink %d", benchmark.getSink()));
+    }
+
+
+    private static int decode(VbbRadarDecoder decoder, byte[] body, LocationFilter filter) {
+        try {
+            return decoder.decode(new ByteArrayInputStream(body), filter).size();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package de.thb.ea.public_transport_tracker.benchmark;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+import de.thb.ea.public_transport_tracker.util.spatial.SpatialIndex;
+import de.thb.ea.public_transport_tracker.util.spatial.SpatialIndexType;
+
+/**
+ * Compares radius and k-nearest queries of every {@link SpatialIndexType} with the linear scan
+ * the snapshot used before, for 1k, 10k and 100k random points around Berlin.
+ */
+public class SpatialIndexBenchmark {
+
+    private static final int[] SIZES = { 1_000, 10_000, 100_000 };
+    private static final int CENTERS = 1024;
+    private static final double RADIUS = 1000.;
+    private static final int K = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(SpatialIndexBenchmark.class);
+
+    private final Benchmark benchmark = new Benchmark();
+    private final Random random = new Random(42);
+
+    private record Point(double latitude, double longitude) {}
+
+
+    public static void main(String[] args) {
+        new SpatialIndexBenchmark().run();
+    }
+
+    public void run() {
+        List<Point> centers = randomPoints(CENTERS);
+
+        for (int size : SIZES) {
+            List<Point> points = randomPoints(size);
+            int[] next = { 0 };
+
+            benchmark.run(String.format("radius linear %d", size), () -> {
+                Point center = centers.get(next[0]++ & (CENTERS - 1));
+                return points.stream()
+                    .filter(e -> distance(center, e) <= RADIUS)
+                    .sorted(Comparator.comparingDouble(e -> distance(center, e)))
+                    .toList()
+                    .size();
+            });
+            benchmark.run(String.format("nearest linear %d", size), () -> {
+                Point center = centers.get(next[0]++ & (CENTERS - 1));
+                return points.stream()
+                    .sorted(Comparator.comparingDouble(e -> distance(center, e)))
+                    .limit(K)
+                    .toList()
+                    .size();
+            });
+
+            for (SpatialIndexType type : SpatialIndexType.values()) {
+                benchmark.run(String.format("build %s %d", type, size), () -> {
+                    SpatialIndex<Point> index = index(type, points);
+                    // the kd-tree is built on the first query
+                    return index.nearest(52.5, 13.4, 1).size();
+                });
+
+                SpatialIndex<Point> index = index(type, points);
+                benchmark.run(String.format("radius %s %d", type, size), () -> {
+                    Point center = centers.get(next[0]++ & (CENTERS - 1));
+                    return index.withinRadius(center.latitude(), center.longitude(), RADIUS)
+                        .size();
+                });
+                benchmark.run(String.format("nearest %s %d", type, size), () -> {
+                    Point center = centers.get(next[0]++ & (CENTERS - 1));
+                    return index.nearest(center.latitude(), center.longitude(), K).size();
+                });
+            }
+        }
+        logger.debug(String.format("sink %d", benchmark.getSink()));
+    }
+
+
+    private static SpatialIndex<Point> index(SpatialIndexType type, List<Point> points) {
+        SpatialIndex<Point> index = type.create();
+        for (Point point : points) {
+            index.insert(point, point.latitude(), point.longitude());
+        }
+        return index;
+    }
+
+    private List<Point> randomPoints(int n) {
+        List<Point> points = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            points.add(new Point(random.nextDouble(52.3, 52.7), random.nextDouble(13.1, 13.7)));
+        }
+        return points;
+    }
+
+    private static double distance(Point a, Point b) {
+        return GeoUtils.distanceInMeters(a.latitude(), a.longitude(), b.latitude(), b.longitude());
+    }
+
+}
@@ -0,0 +1,149 @@
+package de.thb.ea.public_transport_tracker.benchmark;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.repository.TripRepository;
+import de.thb.ea.public_transport_tracker.service.TripIdAllocator;
+
+/**
+ * Inserts 10k new trips through the id generation strategies trips had and have:
+ * <ul>
+ * <li><code>identity save</code>: one transaction per trip whose insert returns the id of an
+ * identity column, the statements Hibernate executed for <code>save</code> with
+ * <code>GenerationType.IDENTITY</code> (into a copy of the former table)</li>
+ * <li><code>sequence saveAll</code>: Hibernate inserts with pooled sequence ids, batched by
+ * <code>hibernate.jdbc.batch_size</code></li>
+ * <li><code>allocator insertTripsWithIds</code>: ids from the {@link TripIdAllocator} and one
+ * multi-row insert per batch of 500 trips, as the write-behind queue inserts them</li>
+ * </ul>
+ * Each strategy inserts 1000 trips before it is measured. Runs with a {@link DatabaseBenchmark},
+ * the arguments are passed to the application.
+ */
+public class TripInsertBenchmark {
+
+    private static final int TRIPS = 10000;
+    private static final int WARMUP_TRIPS = 1000;
+    private static final int BATCH_SIZE = 500;
+
+    private final DatabaseBenchmark benchmark;
+    private final TripRepository tripRepository;
+    private final TripIdAllocator tripIdAllocator;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+
+    public TripInsertBenchmark(DatabaseBenchmark benchmark) {
+        this.benchmark = benchmark;
+        this.tripRepository = benchmark.getBean(TripRepository.class);
+        this.tripIdAllocator = benchmark.getBean(TripIdAllocator.class);
+        this.transactionTemplate = benchmark.getBean(TransactionTemplate.class);
+        this.jdbcTemplate = benchmark.getBean(JdbcTemplate.class);
+    }
+
+    public static void main(String[] args) {
+        try (DatabaseBenchmark benchmark = new DatabaseBenchmark(args)) {
+            new TripInsertBenchmark(benchmark).run();
+        }
+    }
+
+    public void run() {
+        // the trips table as it was created with identity ids
+        jdbcTemplate.execute("DROP TABLE IF EXISTS benchmark_identity_trips");
+        jdbcTemplate.execute("""
+            CREATE TABLE benchmark_identity_trips (
+                id bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                remote_id varchar(32) NOT NULL,
+                remote_origin varchar(16) NOT NULL,
+                direction varchar(64),
+                line_name varchar(16),
+                type varchar(32),
+                created_at timestamp(6) with time zone,
+                updated_at timestamp(6) with time zone,
+                UNIQUE (remote_id, remote_origin)
+            )
+            """);
+
+        try {
+            insertIdentity(trips("identity-warmup", WARMUP_TRIPS));
+            List<Trip> identity = trips("identity", TRIPS);
+            benchmark.run("identity save", TRIPS, () -> insertIdentity(identity));
+
+            saveAll(trips("sequence-warmup", WARMUP_TRIPS));
+            List<Trip> sequence = trips("sequence", TRIPS);
+            benchmark.run("sequence saveAll", TRIPS, () -> saveAll(sequence));
+
+            insertWithIds(trips("allocator-warmup", WARMUP_TRIPS));
+            List<Trip> allocator = trips("allocator", TRIPS);
+            benchmark.run(
+                "allocator insertTripsWithIds", TRIPS, () -> insertWithIds(allocator)
+            );
+        }
+        finally {
+            jdbcTemplate.execute("DROP TABLE benchmark_identity_trips");
+        }
+    }
+
+
+    private void insertIdentity(List<Trip> trips) {
+        for (Trip trip : trips) {
+            Instant now = Instant.now();
+            transactionTemplate.execute(status -> jdbcTemplate.queryForObject("""
+                INSERT INTO benchmark_identity_trips (
+                    remote_id, remote_origin, direction, line_name, type, created_at, updated_at
+                )
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                RETURNING id
+                """, Long.class, trip.getRemoteId(), trip.getRemoteOrigin(), trip.getDirection(),
+                trip.getLineName(), trip.getType(), Timestamp.from(now), Timestamp.from(now)
+            ));
+        }
+    }
+
+    private void saveAll(List<Trip> trips) {
+        transactionTemplate.execute(status -> tripRepository.saveAll(trips));
+    }
+
+    private void insertWithIds(List<Trip> trips) {
+        for (int i = 0; i < trips.size(); i += BATCH_SIZE) {
+            List<Trip> batch = trips.subList(i, Math.min(i + BATCH_SIZE, trips.size()));
+            long createdAt = Instant.now().truncatedTo(ChronoUnit.MILLIS).toEpochMilli();
+            Long[] ids = new Long[batch.size()];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = tripIdAllocator.next();
+            }
+            transactionTemplate.execute(status -> tripRepository.insertTripsWithIds(
+                ids,
+                batch.stream().map(Trip::getRemoteId).toArray(String[]::new),
+                batch.stream().map(Trip::getRemoteOrigin).toArray(String[]::new),
+                batch.stream().map(Trip::getDirection).toArray(String[]::new),
+                batch.stream().map(Trip::getLineName).toArray(String[]::new),
+                batch.stream().map(Trip::getType).toArray(String[]::new),
+                batch.stream().map(e -> createdAt).toArray(Long[]::new)
+            ));
+        }
+    }
+
+    private static List<Trip> trips(String prefix, int n) {
+        List<Trip> trips = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            trips.add(Trip.builder()
+                .remoteId(prefix + "-" + i)
+                .remoteOrigin("vbb")
+                .direction("S+U Hauptbahnhof")
+                .lineName("M" + (i % 100))
+                .type("bus")
+                .build()
+            );
+        }
+        return trips;
+    }
+
+}
@@ -0,0 +1,172 @@
+package de.thb.ea.public_transport_tracker.benchmark;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.thb.ea.public_transport_tracker.repository.TripRepository;
+import de.thb.ea.public_transport_tracker.repository.observation.TripObservationRepository;
+import de.thb.ea.public_transport_tracker.repository.observation.model.TripObservation;
+import de.thb.ea.public_transport_tracker.service.TripIdAllocator;
+
+/**
+ * Loads 100k trip observations of 1000 trips into the partition of the current day:
+ * <ul>
+ * <li><code>jdbc row by row</code>: one insert per observation within one transaction</li>
+ * <li><code>jdbc batch</code>: inserts batched by 1000 observations</li>
+ * <li><code>copy</code>: {@link TripObservationRepository#copy}, as the observations are
+ * recorded</li>
+ * </ul>
+ * The table is truncated before every run, so all of them start with an empty partition and
+ * index. Each way loads 10k observations before it is measured. Runs with a
+ * {@link DatabaseBenchmark}, the arguments are passed to the application.
+ */
+public class TripObservationBenchmark {
+
+    private static final int OBSERVATIONS = 100000;
+    private static final int WARMUP_OBSERVATIONS = 10000;
+    private static final int TRIPS = 1000;
+    private static final int BATCH_SIZE = 1000;
+    private static final String INSERT = """
+        INSERT INTO trip_observations (trip_id, observed_at, latitude, longitude)
+        VALUES (?, ?, ?, ?)
+        """;
+
+    private final DatabaseBenchmark benchmark;
+    private final TripObservationRepository observationRepository;
+    private final TripRepository tripRepository;
+    private final TripIdAllocator tripIdAllocator;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+
+
+    public TripObservationBenchmark(DatabaseBenchmark benchmark) {
+        this.benchmark = benchmark;
+        this.observationRepository = benchmark.getBean(TripObservationRepository.class);
+        this.tripRepository = benchmark.getBean(TripRepository.class);
+        this.tripIdAllocator = benchmark.getBean(TripIdAllocator.class);
+        this.transactionTemplate = benchmark.getBean(TransactionTemplate.class);
+        this.jdbcTemplate = benchmark.getBean(JdbcTemplate.class);
+    }
+
+    public static void main(String[] args) {
+        try (DatabaseBenchmark benchmark = new DatabaseBenchmark(args)) {
+            new TripObservationBenchmark(benchmark).run();
+        }
+    }
+
+    public void run() {
+        observationRepository.createPartition(LocalDate.now(ZoneOffset.UTC));
+        long[] tripIds = insertTrips();
+
+        insertRowByRow(observations(tripIds, WARMUP_OBSERVATIONS, 1));
+        List<TripObservation> rowByRow = observations(tripIds, OBSERVATIONS, 2);
+        truncate();
+        benchmark.run("jdbc row by row", OBSERVATIONS, () -> insertRowByRow(rowByRow));
+
+        insertBatched(observations(tripIds, WARMUP_OBSERVATIONS, 3));
+        List<TripObservation> batched = observations(tripIds, OBSERVATIONS, 4);
+        truncate();
+        benchmark.run("jdbc batch", OBSERVATIONS, () -> insertBatched(batched));
+
+        copy(observations(tripIds, WARMUP_OBSERVATIONS, 5));
+        List<TripObservation> copied = observations(tripIds, OBSERVATIONS, 6);
+        truncate();
+        benchmark.run("copy", OBSERVATIONS, () -> copy(copied));
+
+        truncate();
+    }
+
+
+    private void insertRowByRow(List<TripObservation> observations) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (TripObservation observation : observations) {
+                jdbcTemplate.update(
+                    INSERT, observation.getTripId(), Timestamp.from(observation.getObservedAt()),
+                    observation.getLatitude(), observation.getLongitude()
+                );
+            }
+        });
+    }
+
+    private void insertBatched(List<TripObservation> observations) {
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+            INSERT, observations, BATCH_SIZE, (statement, observation) -> {
+                statement.setLong(1, observation.getTripId());
+                statement.setTimestamp(2, Timestamp.from(observation.getObservedAt()));
+                statement.setDouble(3, observation.getLatitude());
+                statement.setDouble(4, observation.getLongitude());
+            }
+        ));
+    }
+
+    private void copy(List<TripObservation> observations) {
+        try {
+            observationRepository.copy(observations);
+        }
+        catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void truncate() {
+        jdbcTemplate.execute("TRUNCATE trip_observations");
+    }
+
+    /**
+     * @return the ids of the inserted trips
+     */
+    private long[] insertTrips() {
+        Long[] ids = new Long[TRIPS];
+        String[] remoteIds = new String[TRIPS];
+        String[] remoteOrigins = new String[TRIPS];
+        String[] lineNames = new String[TRIPS];
+        Long[] createdAts = new Long[TRIPS];
+        for (int i = 0; i < TRIPS; i++) {
+            ids[i] = tripIdAllocator.next();
+            remoteIds[i] = "observation-" + ids[i];
+            remoteOrigins[i] = "vbb";
+            lineNames[i] = "M" + (i % 100);
+            createdAts[i] = System.currentTimeMillis();
+        }
+        transactionTemplate.execute(status -> tripRepository.insertTripsWithIds(
+            ids, remoteIds, remoteOrigins, new String[TRIPS], lineNames, new String[TRIPS],
+            createdAts
+        ));
+        long[] tripIds = new long[TRIPS];
+        for (int i = 0; i < TRIPS; i++) {
+            tripIds[i] = ids[i];
+        }
+        return tripIds;
+    }
+
+    /**
+     * Observations of random trips around Berlin, spread over the current day (UTC) until now.
+     */
+    private static List<TripObservation> observations(long[] tripIds, int n, long seed) {
+        Random random = new Random(seed);
+        Instant now = Instant.now();
+        Instant start = LocalDate.ofInstant(now, ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC)
+            .toInstant();
+        long span = Math.max(now.toEpochMilli() - start.toEpochMilli(), 1);
+
+        List<TripObservation> observations = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            observations.add(new TripObservation(
+                tripIds[random.nextInt(tripIds.length)],
+                start.plusMillis((long) (random.nextDouble() * span)),
+                52.3 + random.nextDouble() * 0.4, 13.1 + random.nextDouble() * 0.6
+            ));
+        }
+        return observations;
+    }
+
+}
@@ -0,0 +1,29 @@
+package de.thb.ea.public_transport_tracker.loadtest;
+
+import java.time.Duration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Settings of the {@link NearbyLoadGenerator}, bound from its arguments with the prefix
+ * <code>application.loadtest</code>.
+ */
+@Getter
+@Setter
+public class LoadTestProperties {
+
+    String targetUrl = "http://localhost:8080";
+    int concurrency = 64;
+    // requests per second; 0 sends the next request as soon as one completes
+    double rate = 0.;
+    Duration warmup = Duration.ofSeconds(10);
+    Duration duration = Duration.ofSeconds(60);
+
+    // area the request locations are drawn from
+    double north = 52.60;
+    double west = 13.20;
+    double south = 52.42;
+    double east = 13.60;
+
+}
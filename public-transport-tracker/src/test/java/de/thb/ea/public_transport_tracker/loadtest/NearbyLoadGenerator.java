@@ -0,0 +1,190 @@
+package de.thb.ea.public_transport_tracker.loadtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Load test of the nearby trips endpoint. Sends requests for random locations in the configured
+ * area to the target and reports throughput and latency percentiles when done.
+ * 
+ * Without a rate the test runs closed loop: each of the concurrent workers sends its next
+ * request as soon as the previous one completed. With a rate the requests are sent on a fixed
+ * schedule and the latency is measured from the scheduled start, so a stalled server can't
+ * hide its queueing delay (coordinated omission).
+ * 
+ * Runs as its own process outside of the application; the settings are passed as arguments,
+ * e.g. <code>--application.loadtest.rate=500</code>. The exit code is 0 if all measured requests
+ * succeeded, 1 if a request failed and 2 if no request was measured.
+ */
+public class NearbyLoadGenerator {
+
+    private final Logger logger = LoggerFactory.getLogger(NearbyLoadGenerator.class);
+
+    private final LoadTestProperties properties;
+
+
+    public NearbyLoadGenerator(LoadTestProperties properties) {
+        this.properties = properties;
+    }
+
+    public static void main(String[] args) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        LoadTestProperties properties = Binder.get(environment)
+            .bindOrCreate("application.loadtest", LoadTestProperties.class);
+
+        System.exit(new NearbyLoadGenerator(properties).run());
+    }
+
+    /**
+     * Run the load test and log the result.
+     * 
+     * @return the exit code
+     */
+    public int run() {
+        ConnectionProvider connections = ConnectionProvider
+            .builder("loadtest")
+            .maxConnections(properties.getConcurrency())
+            .pendingAcquireMaxCount(-1)
+            .build();
+        WebClient client = WebClient.builder()
+            .baseUrl(properties.getTargetUrl())
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+            .build();
+
+        try {
+            String rate = properties.getRate() > 0
+                ? String.format(" at %.1f req/s", properties.getRate())
+                : "";
+            logger.info(String.format(
+                "Load testing %s with %d concurrent requests%s for %s (warmup %s)",
+                properties.getTargetUrl(), properties.getConcurrency(), rate,
+                properties.getDuration(), properties.getWarmup()
+            ));
+            Result result = run(client);
+            logger.info(result.toString());
+            return result.requests() == 0 ? 2 : result.errors() > 0 ? 1 : 0;
+        }
+        finally {
+            connections.dispose();
+        }
+    }
+
+
+    private Result run(WebClient client) {
+        long start = System.nanoTime();
+        long measureFrom = start + properties.getWarmup().toNanos();
+        long end = measureFrom + properties.getDuration().toNanos();
+
+        Flux<Long> starts;
+        if (properties.getRate() > 0) {
+            long period = (long) (TimeUnit.SECONDS.toNanos(1) / properties.getRate());
+            starts = Flux.interval(Duration.ofNanos(period))
+                .map(i -> start + i * period)
+                // requests that can't be sent yet wait here; their latency includes the wait
+                .onBackpressureBuffer();
+        }
+        else {
+            starts = Flux.<Long>generate(sink -> sink.next(System.nanoTime()));
+        }
+
+        Recorder recorder = new Recorder();
+        starts
+            .takeWhile(scheduled -> scheduled < end)
+            .flatMap(scheduled -> request(client)
+                .doOnNext(success -> {
+                    if (scheduled >= measureFrom) {
+                        recorder.record(System.nanoTime() - scheduled, success);
+                    }
+                }),
+                properties.getConcurrency()
+            )
+            .blockLast();
+
+        return recorder.result(properties.getDuration());
+    }
+
+    /**
+     * @return mono with <code>true</code> if the request was successful
+     */
+    private Mono<Boolean> request(WebClient client) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double latitude = random.nextDouble(properties.getSouth(), properties.getNorth());
+        double longitude = random.nextDouble(properties.getWest(), properties.getEast());
+
+        return client.get()
+            .uri(uri -> uri
+                .path("/api/v1/trips/nearby")
+                .queryParam("latitude", latitude)
+                .queryParam("longitude", longitude)
+                .build()
+            )
+            .exchangeToMono(response -> response.releaseBody()
+                .thenReturn(response.statusCode().is2xxSuccessful())
+            )
+            .onErrorReturn(false);
+    }
+
+
+    private static class Recorder {
+
+        private long[] latencies = new long[1 << 16];
+        private int count = 0;
+        private long errors = 0;
+
+        synchronized void record(long latency, boolean success) {
+            if (!success) {
+                errors++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+
+        synchronized Result result(Duration duration) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return new Result(count, errors, duration, sorted);
+        }
+
+    }
+
+    private record Result(long requests, long errors, Duration duration, long[] latencies) {
+
+        double percentile(double p) {
+            if (latencies.length == 0) {
+                return Double.NaN;
+            }
+            int i = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(i, latencies.length - 1))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%d requests (%d errors), %.1f req/s, latency p50 %.2f ms, p99 %.2f ms, "
+                    + "p999 %.2f ms, max %.2f ms",
+                requests, errors, requests / (duration.toNanos() / 1e9),
+                percentile(.5), percentile(.99), percentile(.999), percentile(1.)
+            );
+        }
+
+    }
+
+}
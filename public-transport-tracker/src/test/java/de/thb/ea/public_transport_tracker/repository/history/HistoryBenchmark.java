@@ -0,0 +1,182 @@
+package de.thb.ea.public_transport_tracker.repository.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.thb.ea.public_transport_tracker.benchmark.Benchmark;
+import de.thb.ea.public_transport_tracker.repository.history.model.VehicleObservation;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.Location;
+
+/**
+ * Measures the size and coding speed of history blocks and the query time of a segment with and
+ * without skipping blocks by their headers. An hour of 2000 vehicles observed every 30 seconds is
+ * simulated, flushed as one block per 30 seconds like the recorder does.
+ * 
+ * Lives in the package of the history, since the blocks and segments aren't public.
+ */
+public class HistoryBenchmark {
+
+    private static final Instant START = Instant.parse("2026-01-01T12:00:00Z");
+    private static final Duration DURATION = Duration.ofHours(1);
+    private static final Duration INTERVAL = Duration.ofSeconds(30);
+    private static final int VEHICLES = 2000;
+    // vehicles move about 10 m/s
+    private static final double STEP = 300. / 111_195.;
+
+    private final Logger logger = LoggerFactory.getLogger(HistoryBenchmark.class);
+
+    private final Benchmark benchmark = new Benchmark();
+    private final Random random = new Random(42);
+
+
+    public static void main(String[] args) throws IOException {
+        new HistoryBenchmark().run();
+    }
+
+    public void run() throws IOException {
+        List<List<VehicleObservation>> flushes = simulate();
+        List<VehicleObservation> block = flushes.get(0);
+        byte[] encoded = HistoryBlock.encode(block);
+        HistoryBlock.Header header = HistoryBlock.Header.read(ByteBuffer.wrap(encoded));
+        byte[] compressed = new byte[header.compressedLength()];
+        System.arraycopy(encoded, HistoryBlock.HEADER_BYTES, compressed, 0, compressed.length);
+
+        // time, latitude and longitude as long and doubles, trip id and line name as UTF-8
+        long plain = block.stream()
+            .mapToLong(e -> Long.BYTES + Double.BYTES * 2
+                + e.getTripId().getBytes(StandardCharsets.UTF_8).length
+                + e.getLineName().getBytes(StandardCharsets.UTF_8).length
+            )
+            .sum();
+        logger.info(String.format(
+            "%d rows per block: plain %.1f B/row, varint %.1f B/row, deflated %.1f B/row",
+            block.size(), (double) plain / block.size(), (double) header.rawLength() / block.size(),
+            (double) encoded.length / block.size()
+        ));
+
+        benchmark.run(String.format("encode %d rows", block.size()),
+            () -> HistoryBlock.encode(block).length
+        );
+        benchmark.run(String.format("decode %d rows", block.size()),
+            () -> HistoryBlock.decode(header, compressed).size()
+        );
+
+        Path directory = Files.createTempDirectory("history-benchmark");
+        Path path = directory.resolve("segment");
+        try {
+            HistorySegment segment = HistorySegment.create(path, START, DURATION);
+            try {
+                for (List<VehicleObservation> flush : flushes) {
+                    segment.append(HistoryBlock.encode(flush));
+                }
+                logger.info(String.format(
+                    "segment: %d rows in %d blocks, %d bytes", segment.getRowCount(),
+                    segment.getBlockCount(), segment.getSize()
+                ));
+                query(segment, "flushed");
+
+                segment.compact(20000);
+                logger.info(String.format(
+                    "compacted: %d blocks, %d bytes", segment.getBlockCount(), segment.getSize()
+                ));
+                query(segment, "compacted");
+            }
+            finally {
+                segment.close();
+            }
+        }
+        finally {
+            Files.deleteIfExists(path);
+            Files.delete(directory);
+        }
+        logger.debug(String.format("sink %d", benchmark.getSink()));
+    }
+
+
+    /**
+     * Query 5 minutes of a 2 km box around the center, once reading only the blocks whose header
+     * overlaps the query and once reading all blocks.
+     */
+    private void query(HistorySegment segment, String name) {
+        Instant from = START.plus(Duration.ofMinutes(30));
+        Instant to = from.plus(Duration.ofMinutes(5));
+        BoundingBox bbox = new BoundingBox(
+            new Location(52.529, 13.39), new Location(52.511, 13.42)
+        );
+
+        benchmark.run(String.format("query %s", name), () -> read(segment, from, to, bbox, bbox));
+        benchmark.run(String.format("scan %s", name), () -> read(
+            segment, segment.getStart(), segment.getEnd(), null, bbox
+        ));
+    }
+
+    /**
+     * @return number of observations in the time range and bounding box
+     */
+    private static long read(
+        HistorySegment segment, Instant from, Instant to, BoundingBox blocks, BoundingBox bbox
+    ) {
+        long count = 0;
+        try (HistorySegment.Reader reader = segment.reader(from, to, blocks)) {
+            for (HistorySegment.Block block : reader.getBlocks()) {
+                for (VehicleObservation observation : reader.read(block)) {
+                    if (!observation.getTime().isBefore(from) && !observation.getTime().isAfter(to)
+                        && bbox.contains(observation.getLatitude(), observation.getLongitude())
+                    ) {
+                        count++;
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    /**
+     * @return the observations of each flush
+     */
+    private List<List<VehicleObservation>> simulate() {
+        double[] latitudes = new double[VEHICLES];
+        double[] longitudes = new double[VEHICLES];
+        String[] trips = new String[VEHICLES];
+        String[] lines = new String[VEHICLES];
+        for (int i = 0; i < VEHICLES; i++) {
+            latitudes[i] = random.nextDouble(52.3, 52.7);
+            longitudes[i] = random.nextDouble(13.1, 13.7);
+            trips[i] = String.format("1|%d|%d|86|1012026", 100000 + random.nextInt(900000), i);
+            lines[i] = String.format("%s%d", "SMUB".charAt(i % 4), i % 100);
+        }
+
+        List<List<VehicleObservation>> flushes = new ArrayList<>();
+        Instant end = START.plus(DURATION);
+        for (Instant time = START; time.isBefore(end); time = time.plus(INTERVAL)) {
+            List<VehicleObservation> flush = new ArrayList<>(VEHICLES);
+            for (int i = 0; i < VEHICLES; i++) {
+                latitudes[i] += random.nextDouble(-STEP, STEP);
+                longitudes[i] += random.nextDouble(-STEP, STEP);
+                flush.add(new VehicleObservation(
+                    time.plusMillis(random.nextInt(20000)), trips[i], lines[i],
+                    latitudes[i], longitudes[i]
+                ));
+            }
+            flushes.add(flush);
+        }
+        return flushes;
+    }
+
+}
@@ -0,0 +1,272 @@
+package de.thb.ea.public_transport_tracker.repository.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.thb.ea.public_transport_tracker.repository.history.model.VehicleObservation;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.Location;
+
+class HistorySegmentTest {
+
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Duration DURATION = Duration.ofHours(1);
+
+    private final Random random = new Random(42);
+    private Path directory;
+    private Path path;
+
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("history");
+        path = directory.resolve("segment");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void blockRoundTrips() {
+        List<VehicleObservation> observations = randomObservations(500);
+        observations.add(new VehicleObservation(START, null, null, -33.868820, -151.209296));
+        observations.add(new VehicleObservation(START, "Straße ß", "S5", 0., 0.));
+
+        byte[] block = HistoryBlock.encode(observations);
+        HistoryBlock.Header header = HistoryBlock.Header.read(ByteBuffer.wrap(block));
+
+        assertThat(header.rows()).isEqualTo(observations.size());
+        assertThat(header.compressedLength()).isEqualTo(block.length - HistoryBlock.HEADER_BYTES);
+        assertThat(header.minTime()).isEqualTo(START.toEpochMilli());
+        assertThat(header.minLatitude()).isEqualTo(HistoryBlock.scale(-33.868820));
+        List<VehicleObservation> decoded = HistoryBlock.decode(header, payload(block));
+        assertThat(rows(decoded)).containsExactlyElementsOf(rows(sorted(observations)));
+    }
+
+    @Test
+    void corruptedBlockIsRejected() {
+        byte[] block = HistoryBlock.encode(randomObservations(10));
+        HistoryBlock.Header header = HistoryBlock.Header.read(ByteBuffer.wrap(block));
+        byte[] payload = payload(block);
+        payload[payload.length / 2] ^= 1;
+
+        assertThatThrownBy(() -> HistoryBlock.decode(header, payload))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void segmentRoundTrips() throws IOException {
+        List<List<VehicleObservation>> written = List.of(
+            randomObservations(100), randomObservations(1), randomObservations(300)
+        );
+        HistorySegment segment = HistorySegment.create(path, START, DURATION);
+        for (List<VehicleObservation> observations : written) {
+            segment.append(HistoryBlock.encode(observations));
+        }
+        long size = segment.getSize();
+        segment.close();
+
+        HistorySegment reopened = HistorySegment.open(path);
+        try {
+            assertThat(reopened.getStart()).isEqualTo(START);
+            assertThat(reopened.getEnd()).isEqualTo(START.plus(DURATION));
+            assertThat(reopened.getSize()).isEqualTo(size).isEqualTo(Files.size(path));
+            assertThat(reopened.getBlockCount()).isEqualTo(written.size());
+            assertThat(reopened.getRowCount()).isEqualTo(401);
+            assertThat(rows(readAll(reopened)))
+                .containsExactlyInAnyOrderElementsOf(rows(written.stream()
+                    .flatMap(List::stream)
+                    .toList()
+                ));
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void partiallyWrittenBlockIsCutOff() throws IOException {
+        List<VehicleObservation> observations = randomObservations(100);
+        HistorySegment segment = HistorySegment.create(path, START, DURATION);
+        segment.append(HistoryBlock.encode(observations));
+        long size = segment.getSize();
+        segment.close();
+        byte[] next = HistoryBlock.encode(randomObservations(100));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(next, 0, next.length - 1));
+        }
+
+        HistorySegment reopened = HistorySegment.open(path);
+        try {
+            assertThat(reopened.getBlockCount()).isEqualTo(1);
+            assertThat(Files.size(path)).isEqualTo(size);
+            assertThat(rows(readAll(reopened)))
+                .containsExactlyInAnyOrderElementsOf(rows(observations));
+
+            // appending continues after the last complete block
+            reopened.append(next);
+            assertThat(reopened.getRowCount()).isEqualTo(200);
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void readerSkipsBlocksOutsideRange() throws IOException {
+        HistorySegment segment = HistorySegment.create(path, START, DURATION);
+        try {
+            segment.append(HistoryBlock.encode(List.of(
+                new VehicleObservation(START, "a", "S5", 52.5, 13.4)
+            )));
+            segment.append(HistoryBlock.encode(List.of(
+                new VehicleObservation(START.plusSeconds(600), "b", "S5", 52.5, 13.4)
+            )));
+            segment.append(HistoryBlock.encode(List.of(
+                new VehicleObservation(START, "c", "S5", 48.1, 11.6)
+            )));
+            BoundingBox berlin = new BoundingBox(
+                new Location(52.7, 13.1), new Location(52.3, 13.7)
+            );
+
+            Instant to = START.plusSeconds(60);
+            try (HistorySegment.Reader reader = segment.reader(START, to, berlin)) {
+                assertThat(reader.getBlocks()).hasSize(1);
+                assertThat(reader.read(reader.getBlocks().get(0)))
+                    .extracting(VehicleObservation::getTripId)
+                    .containsExactly("a");
+            }
+            try (HistorySegment.Reader reader = segment.reader(START, START.plus(DURATION), null)) {
+                assertThat(reader.getBlocks()).hasSize(3);
+            }
+        }
+        finally {
+            segment.close();
+        }
+    }
+
+    @Test
+    void compactionKeepsObservations() throws IOException {
+        List<VehicleObservation> observations = new ArrayList<>();
+        HistorySegment segment = HistorySegment.create(path, START, DURATION);
+        try {
+            for (int i = 0; i < 10; i++) {
+                List<VehicleObservation> block = randomObservations(30);
+                observations.addAll(block);
+                segment.append(HistoryBlock.encode(block));
+            }
+
+            assertThat(segment.compact(100)).isTrue();
+            assertThat(segment.compact(100)).isFalse();
+
+            assertThat(segment.getBlockCount()).isEqualTo(3);
+            assertThat(segment.getRowCount()).isEqualTo(300);
+            assertThat(rows(readAll(segment)))
+                .containsExactlyInAnyOrderElementsOf(rows(observations));
+        }
+        finally {
+            segment.close();
+        }
+        // the compacted file can be opened again
+        HistorySegment reopened = HistorySegment.open(path);
+        try {
+            assertThat(reopened.getBlockCount()).isEqualTo(3);
+            assertThat(rows(readAll(reopened)))
+                .containsExactlyInAnyOrderElementsOf(rows(observations));
+        }
+        finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Files.write(path, new byte[100]);
+
+        assertThatThrownBy(() -> HistorySegment.open(path))
+            .isInstanceOf(IOException.class)
+            .hasMessage("Not a history segment");
+    }
+
+
+    private List<VehicleObservation> randomObservations(int n) {
+        List<VehicleObservation> observations = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            observations.add(new VehicleObservation(
+                START.plusMillis(random.nextLong(DURATION.toMillis())),
+                random.nextInt(10) == 0 ? null : "trip-" + random.nextInt(50),
+                random.nextInt(10) == 0 ? null : "line-" + random.nextInt(5),
+                random.nextDouble(52.3, 52.7),
+                random.nextDouble(13.1, 13.7)
+            ));
+        }
+        return observations;
+    }
+
+    private static List<VehicleObservation> readAll(HistorySegment segment)
+        throws IOException
+    {
+        List<VehicleObservation> observations = new ArrayList<>();
+        try (HistorySegment.Reader reader = segment.reader(
+            segment.getStart(), segment.getEnd(), null
+        )) {
+            for (HistorySegment.Block block : reader.getBlocks()) {
+                observations.addAll(reader.read(block));
+            }
+        }
+        return observations;
+    }
+
+    private static byte[] payload(byte[] block) {
+        byte[] payload = new byte[block.length - HistoryBlock.HEADER_BYTES];
+        System.arraycopy(block, HistoryBlock.HEADER_BYTES, payload, 0, payload.length);
+        return payload;
+    }
+
+    private static List<VehicleObservation> sorted(List<VehicleObservation> observations) {
+        return observations.stream()
+            .sorted(Comparator
+                .comparing(VehicleObservation::getTripId, Comparator.nullsFirst(String::compareTo))
+                .thenComparing(VehicleObservation::getTime)
+            )
+            .toList();
+    }
+
+    /**
+     * Observations don't implement equals, compare them as text with the stored precision.
+     */
+    private static List<String> rows(List<VehicleObservation> observations) {
+        return observations.stream()
+            .map(e -> String.format("%s %s %s %d %d", e.getTime(), e.getTripId(),
+                e.getLineName(), HistoryBlock.scale(e.getLatitude()),
+                HistoryBlock.scale(e.getLongitude())
+            ))
+            .toList();
+    }
+
+}
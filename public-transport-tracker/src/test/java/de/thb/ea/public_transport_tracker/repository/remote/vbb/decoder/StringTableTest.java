@@ -0,0 +1,94 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class StringTableTest {
+
+    @Test
+    void returnsSameInstanceForEqualContent() {
+        StringTable strings = new StringTable(16);
+        char[] chars = "xxS5 Ahrensfelde".toCharArray();
+
+        String first = strings.get(chars, 2, 2);
+        String second = strings.get("S5".toCharArray(), 0, 2);
+
+        assertThat(first).isEqualTo("S5");
+        assertThat(second).isSameAs(first);
+        assertThat(strings.get(chars, 5, 11)).isEqualTo("Ahrensfelde");
+        assertThat(strings.size()).isEqualTo(2);
+    }
+
+    @Test
+    void keepsCollidingStringsApart() {
+        StringTable strings = new StringTable(16);
+        // "Aa" and "BB" have the same hash code
+        String aa = strings.get("Aa".toCharArray(), 0, 2);
+        String bb = strings.get("BB".toCharArray(), 0, 2);
+
+        assertThat(aa).isEqualTo("Aa");
+        assertThat(bb).isEqualTo("BB");
+        assertThat(strings.get("Aa".toCharArray(), 0, 2)).isSameAs(aa);
+        assertThat(strings.get("BB".toCharArray(), 0, 2)).isSameAs(bb);
+        assertThat(strings.get(new char[0], 0, 0)).isEmpty();
+    }
+
+    @Test
+    void stopsAddingWhenFull() {
+        StringTable strings = new StringTable(2);
+        String first = strings.get("1".toCharArray(), 0, 1);
+        strings.get("2".toCharArray(), 0, 1);
+
+        String third = strings.get("3".toCharArray(), 0, 1);
+
+        assertThat(third).isEqualTo("3");
+        assertThat(strings.get("3".toCharArray(), 0, 1)).isNotSameAs(third);
+        assertThat(strings.get("1".toCharArray(), 0, 1)).isSameAs(first);
+        assertThat(strings.size()).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentLookupsShareOneInstance() throws Exception {
+        int threads = 8;
+        int values = 1000;
+        StringTable strings = new StringTable(values);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    String[] found = new String[values];
+                    start.await();
+                    for (int i = 0; i < values; i++) {
+                        char[] chars = ("trip-" + i).toCharArray();
+                        found[i] = strings.get(chars, 0, chars.length);
+                    }
+                    return found;
+                }));
+            }
+            start.countDown();
+
+            String[] expected = results.get(0).get();
+            for (Future<String[]> result : results) {
+                String[] found = result.get();
+                for (int i = 0; i < values; i++) {
+                    assertThat(found[i]).isEqualTo("trip-" + i).isSameAs(expected[i]);
+                }
+            }
+            assertThat(strings.size()).isEqualTo(values);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.replay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TrafficLogTest {
+
+    private Path directory;
+    private Path path;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("traffic-log");
+        path = directory.resolve("traffic.log");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void appendsToExistingLog() throws IOException {
+        append("/first", "first");
+        append("/second", "second");
+
+        try (TrafficLog.Reader reader = new TrafficLog.Reader(path)) {
+            assertThat(reader.getEntries())
+                .extracting(TrafficLog.Entry::uri)
+                .containsExactly("/first", "/second");
+            assertThat(body(reader, 1)).isEqualTo("second");
+        }
+    }
+
+    @Test
+    void cutsOffPartiallyWrittenEntryBeforeAppending() throws IOException {
+        append("/first", "first");
+        long complete = Files.size(path);
+        append("/torn", "torn");
+        // a crash while the last entry was written
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 3);
+        }
+
+        append("/second", "second");
+
+        try (TrafficLog.Reader reader = new TrafficLog.Reader(path)) {
+            assertThat(reader.getEntries())
+                .extracting(TrafficLog.Entry::uri)
+                .containsExactly("/first", "/second");
+            assertThat(reader.getEntries().get(1).offset()).isGreaterThan(complete);
+            assertThat(body(reader, 1)).isEqualTo("second");
+        }
+    }
+
+    @Test
+    void rewritesPartiallyWrittenHeader() throws IOException {
+        Files.write(path, new byte[] { 0x50, 0x54 });
+
+        append("/first", "first");
+
+        try (TrafficLog.Reader reader = new TrafficLog.Reader(path)) {
+            assertThat(reader.getEntries())
+                .extracting(TrafficLog.Entry::uri)
+                .containsExactly("/first");
+        }
+    }
+
+    @Test
+    void refusesToAppendToOtherFiles() throws IOException {
+        byte[] content = "not a traffic log".getBytes(StandardCharsets.UTF_8);
+        Files.write(path, content);
+
+        assertThatThrownBy(() -> new TrafficLog.Writer(path)).isInstanceOf(IOException.class);
+        assertThat(Files.readAllBytes(path)).isEqualTo(content);
+    }
+
+
+    private void append(String uri, String body) throws IOException {
+        try (TrafficLog.Writer writer = new TrafficLog.Writer(path)) {
+            writer.append(
+                0, 0, 200, uri, "application/json", body.getBytes(StandardCharsets.UTF_8)
+            );
+        }
+    }
+
+    private static String body(TrafficLog.Reader reader, int index) throws IOException {
+        return new String(reader.read(reader.getEntries().get(index)), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,176 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.replay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import de.thb.ea.public_transport_tracker.config.property.TrafficReplayProperties;
+import de.thb.ea.public_transport_tracker.config.property.UpstreamClientProperties;
+import de.thb.ea.public_transport_tracker.config.property.VbbProperties;
+import reactor.core.publisher.Mono;
+
+class TrafficReplayFilterTest {
+
+    private static final String BASE_URL = "http://vbb.test";
+    private static final String RECORDED =
+        "/radar?north=52.6&west=13.2&south=52.4&east=13.6&results=512&frames=3";
+
+    private Path directory;
+    private VbbProperties vbbProperties;
+    private UpstreamClientProperties clientProperties;
+    private final List<String> upstreamRequests = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("traffic-replay");
+        vbbProperties = new VbbProperties();
+        vbbProperties.setBaseUrl(BASE_URL);
+        clientProperties = new UpstreamClientProperties();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void replaysRecordedExchange() throws IOException {
+        record(RECORDED, "{\"movements\":[]}");
+
+        TrafficReplayFilter replay = filter(TrafficMode.REPLAY);
+        try {
+            ClientResponse response = exchange(replay, RECORDED);
+
+            assertThat(response.statusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(response.headers().contentType()).contains(MediaType.APPLICATION_JSON);
+            assertThat(response.bodyToMono(String.class).block()).isEqualTo("{\"movements\":[]}");
+            assertThat(upstreamRequests).isEmpty();
+        }
+        finally {
+            replay.destroy();
+        }
+    }
+
+    @Test
+    void replaysContainingBoundingBoxRegardlessOfParameterOrder() throws IOException {
+        record(RECORDED, "{\"movements\":[1]}");
+
+        TrafficReplayFilter replay = filter(TrafficMode.REPLAY);
+        try {
+            ClientResponse response = exchange(
+                replay, "/radar?frames=3&results=512&east=13.5&south=52.45&west=13.3&north=52.55"
+            );
+
+            assertThat(response.bodyToMono(String.class).block()).isEqualTo("{\"movements\":[1]}");
+            assertThat(upstreamRequests).isEmpty();
+        }
+        finally {
+            replay.destroy();
+        }
+    }
+
+    @Test
+    void passesMissesThrough() throws IOException {
+        record(RECORDED, "{\"movements\":[]}");
+
+        TrafficReplayFilter replay = filter(TrafficMode.REPLAY);
+        try {
+            // reaches beyond the recorded bounding box
+            String outside =
+                "/radar?north=52.7&west=13.2&south=52.4&east=13.6&results=512&frames=3";
+            ClientResponse response = exchange(replay, outside);
+            exchange(replay, "/trips/1");
+
+            assertThat(response.bodyToMono(String.class).block()).isEqualTo("upstream");
+            assertThat(upstreamRequests).containsExactly(outside, "/trips/1");
+        }
+        finally {
+            replay.destroy();
+        }
+    }
+
+    @Test
+    void doesNotRecordBodiesBeyondLimit() throws IOException {
+        clientProperties.setMaxInMemorySize(DataSize.ofBytes(16));
+        TrafficReplayFilter recorder = filter(TrafficMode.RECORD);
+        ExchangeFunction upstream = request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+            .body("{\"movements\":[1,2,3,4,5,6,7,8,9]}")
+            .build()
+        );
+        ClientResponse response = recorder.filter(request(RECORDED), upstream).block();
+
+        assertThatThrownBy(() -> response.bodyToMono(String.class).block())
+            .isInstanceOf(DataBufferLimitException.class);
+        recorder.destroy();
+
+        TrafficReplayFilter replay = filter(TrafficMode.REPLAY);
+        try {
+            exchange(replay, RECORDED);
+
+            assertThat(upstreamRequests).containsExactly(RECORDED);
+        }
+        finally {
+            replay.destroy();
+        }
+    }
+
+
+    private void record(String uri, String body) throws IOException {
+        TrafficReplayFilter recorder = filter(TrafficMode.RECORD);
+        ExchangeFunction upstream = request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .body(body)
+            .build()
+        );
+        ClientResponse response = recorder.filter(request(uri), upstream).block();
+        // the exchange is recorded once its body was consumed
+        assertThat(response.bodyToMono(String.class).block()).isEqualTo(body);
+        recorder.destroy();
+    }
+
+    private ClientResponse exchange(TrafficReplayFilter filter, String uri) {
+        ExchangeFunction upstream = request -> {
+            upstreamRequests.add(request.url().toString().substring(BASE_URL.length()));
+            return Mono.just(ClientResponse.create(HttpStatus.OK).body("upstream").build());
+        };
+        return filter.filter(request(uri), upstream).block();
+    }
+
+    private TrafficReplayFilter filter(TrafficMode mode) throws IOException {
+        TrafficReplayProperties properties = new TrafficReplayProperties();
+        properties.setMode(mode);
+        properties.setPath(directory.resolve("traffic.log").toString());
+        // answer without the recorded latency
+        properties.setSpeed(1000);
+        return new TrafficReplayFilter(properties, vbbProperties, clientProperties);
+    }
+
+    private static ClientRequest request(String uri) {
+        return ClientRequest.create(HttpMethod.GET, URI.create(BASE_URL + uri)).build();
+    }
+
+}
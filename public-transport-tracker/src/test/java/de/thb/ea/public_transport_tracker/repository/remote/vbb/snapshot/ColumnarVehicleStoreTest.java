@@ -0,0 +1,194 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.thb.ea.public_transport_tracker.repository.remote.model.TransitMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLine;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLocation;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.Location;
+
+/**
+ * Compares the queries of a columnar snapshot with the queries of an object snapshot of the same
+ * random movements around Berlin.
+ */
+class ColumnarVehicleStoreTest {
+
+    private static final int MOVEMENTS = 3000;
+    private static final int QUERIES = 100;
+    private static final double TOLERANCE = 1e-2;
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+
+    private final Random random = new Random(42);
+    private final List<VbbLine> lines = List.of(line("S5", "suburban"), line("M4", "tram"));
+    private final List<VbbMovement> movements = randomMovements();
+    private final VehicleSnapshot objects = new VehicleSnapshot(movements, NOW);
+
+    @Test
+    void withinBoundingBoxMatchesObjectSnapshot() {
+        for (boolean offHeap : new boolean[] { false, true }) {
+            VehicleSnapshot columns = VehicleSnapshot.columnar(movements, NOW, offHeap);
+            for (int i = 0; i < QUERIES; i++) {
+                double north = random.nextDouble(52.3, 52.7);
+                double south = north - random.nextDouble(0.2);
+                double west = random.nextDouble(13.1, 13.7);
+                double east = west + random.nextDouble(0.3);
+                BoundingBox bbox = new BoundingBox(
+                    new Location(north, west), new Location(south, east)
+                );
+
+                assertThat(tripIds(columns.getMovementsInBoundingBox(bbox)))
+                    .containsExactlyInAnyOrderElementsOf(
+                        tripIds(objects.getMovementsInBoundingBox(bbox))
+                    );
+            }
+        }
+    }
+
+    @Test
+    void withinRadiusMatchesObjectSnapshot() {
+        VehicleSnapshot columns = VehicleSnapshot.columnar(movements, NOW, false);
+        for (int i = 0; i < QUERIES; i++) {
+            double latitude = random.nextDouble(52.3, 52.7);
+            double longitude = random.nextDouble(13.1, 13.7);
+            double radius = random.nextDouble(10., 5000.);
+
+            assertThat(tripIds(columns.getNearbyMovements(latitude, longitude, radius, MOVEMENTS)))
+                .containsExactlyInAnyOrderElementsOf(tripIds(
+                    objects.getNearbyMovements(latitude, longitude, radius, MOVEMENTS)
+                ));
+            assertThat(columns.getNearbyMovements(latitude, longitude, radius, 3))
+                .hasSize(Math.min(3, objects.getNearbyMovements(latitude, longitude, radius, 3)
+                    .size()));
+        }
+    }
+
+    @Test
+    void nearestMatchesObjectSnapshot() {
+        VehicleSnapshot columns = VehicleSnapshot.columnar(movements, NOW, false);
+        for (int i = 0; i < QUERIES; i++) {
+            double latitude = random.nextDouble(52.3, 52.7);
+            double longitude = random.nextDouble(13.1, 13.7);
+            int k = random.nextInt(1, 50);
+
+            List<VbbMovement> result = columns.getNearestMovements(latitude, longitude, k);
+
+            List<VbbMovement> expected = objects.getNearestMovements(latitude, longitude, k);
+            assertThat(result).hasSize(k);
+            // the columns rank by projected distance, so the k-th may differ within the tolerance
+            double kth = distance(latitude, longitude, expected.get(k - 1));
+            assertThat(tripIds(result)).containsAll(tripIds(expected.stream()
+                .filter(e -> distance(latitude, longitude, e) < kth * (1. - TOLERANCE))
+                .toList()
+            ));
+            assertThat(distance(latitude, longitude, result.get(k - 1)))
+                .isLessThanOrEqualTo(kth * (1. + TOLERANCE));
+        }
+        // far away from every movement
+        assertThat(columns.getNearestMovements(0., 0., 5)).hasSize(5);
+        assertThat(columns.getNearestMovements(52.5, 13.4, 0)).isEmpty();
+    }
+
+    @Test
+    void vehiclesReadTheColumns() {
+        ColumnarVehicleStore store = new ColumnarVehicleStore(movements, true);
+
+        List<TransitMovement> vehicles = store.getVehicles();
+
+        assertThat(vehicles).hasSize(MOVEMENTS);
+        List<VbbMovement> materialized = store.getMovements();
+        for (int i = 0; i < MOVEMENTS; i++) {
+            TransitMovement vehicle = vehicles.get(i);
+            VbbMovement movement = materialized.get(i);
+            assertThat(vehicle.getTripId()).isEqualTo(movement.getTripId());
+            assertThat(vehicle.getDirection()).isEqualTo(movement.getDirection());
+            assertThat(vehicle.getLineName()).isEqualTo(movement.getLineName());
+            assertThat(vehicle.getProduct()).isEqualTo(movement.getProduct());
+            assertThat(vehicle.getLatitude()).isEqualTo(movement.getLatitude());
+            assertThat(vehicle.getLongitude()).isEqualTo(movement.getLongitude());
+            assertThat(vehicle.getObservedAt()).isEqualTo(movement.getObservedAt());
+        }
+        assertThat(tripIds(materialized)).containsExactlyInAnyOrderElementsOf(tripIds(movements));
+    }
+
+    @Test
+    void builderKeepsFirstMovementOfTrip() {
+        VbbMovement first = movement("trip", 52.5, 13.4, null);
+        VbbMovement second = movement("trip", 52.6, 13.5, lines.get(0));
+        VbbMovement withoutTrip = movement(null, 52.4, 13.3, lines.get(1));
+        VbbMovement anotherWithoutTrip = movement(null, 52.4, 13.3, null);
+        ColumnarVehicleStore.Builder builder = ColumnarVehicleStore.builder();
+
+        assertThat(builder.add(first)).isTrue();
+        assertThat(builder.add(second)).isFalse();
+        assertThat(builder.add(withoutTrip)).isTrue();
+        assertThat(builder.add(anotherWithoutTrip)).isFalse();
+        ColumnarVehicleStore store = builder.build(false);
+
+        assertThat(store.size()).isEqualTo(2);
+        VbbMovement trip = store.getMovements().stream()
+            .filter(e -> "trip".equals(e.getTripId()))
+            .findFirst()
+            .orElseThrow();
+        assertThat(trip.getLatitude()).isEqualTo(52.5);
+        assertThat(trip.getLine()).isNull();
+        assertThat(trip.getObservedAt()).isEqualTo(NOW);
+    }
+
+
+    private List<VbbMovement> randomMovements() {
+        List<VbbMovement> movements = new ArrayList<>();
+        for (int i = 0; i < MOVEMENTS; i++) {
+            movements.add(movement(
+                "trip-" + i,
+                random.nextDouble(52.3, 52.7),
+                random.nextDouble(13.1, 13.7),
+                lines.get(i % lines.size())
+            ));
+        }
+        return movements;
+    }
+
+    private static VbbMovement movement(
+        String tripId, double latitude, double longitude, VbbLine line
+    ) {
+        VbbLocation location = new VbbLocation();
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+
+        VbbMovement movement = new VbbMovement();
+        movement.setTripId(tripId);
+        movement.setDirection(line != null ? "direction " + line.getName() : null);
+        movement.setLine(line);
+        movement.setLocation(location);
+        movement.setObservedAt(NOW);
+        return movement;
+    }
+
+    private static VbbLine line(String name, String product) {
+        VbbLine line = new VbbLine();
+        line.setName(name);
+        line.setProduct(product);
+        return line;
+    }
+
+    private static double distance(double latitude, double longitude, VbbMovement movement) {
+        return GeoUtils.distanceInMeters(
+            latitude, longitude, movement.getLatitude(), movement.getLongitude()
+        );
+    }
+
+    private static List<String> tripIds(List<VbbMovement> movements) {
+        return movements.stream().map(VbbMovement::getTripId).toList();
+    }
+
+}
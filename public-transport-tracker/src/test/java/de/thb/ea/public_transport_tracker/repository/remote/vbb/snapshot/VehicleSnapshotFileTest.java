@@ -0,0 +1,208 @@
+package de.thb.ea.public_transport_tracker.repository.remote.vbb.snapshot;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.thb.ea.public_transport_tracker.config.property.VbbDictionaryProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.decoder.VbbDictionary;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbFrame;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLine;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbLocation;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbMovement;
+import de.thb.ea.public_transport_tracker.repository.remote.vbb.model.VbbOperator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class VehicleSnapshotFileTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2026-01-01T12:00:00.123Z");
+    // magic, version, created at, payload length, payload crc
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES * 3;
+
+    private final VehicleSnapshotFile file = new VehicleSnapshotFile(
+        new VbbDictionary(new VbbDictionaryProperties(), new SimpleMeterRegistry())
+    );
+    private Path directory;
+    private Path path;
+
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+        path = directory.resolve("vehicles.bin");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void movementsAndTripsRoundTrip() throws IOException {
+        List<VbbMovement> movements = movements();
+        List<Trip> trips = List.of(
+            Trip.builder().id(1L).remoteOrigin("vbb").remoteId("trip-1").build(),
+            Trip.builder().id(51L).remoteOrigin("vbb").remoteId(null).build()
+        );
+
+        file.write(path, CREATED_AT, movements, trips);
+        VehicleSnapshotFile.Content content = file.read(path);
+
+        assertThat(content.createdAt()).isEqualTo(CREATED_AT);
+        assertMovements(content.movements(), movements);
+        assertThat(content.trips()).hasSize(2);
+        assertThat(content.trips().get(0).getId()).isEqualTo(1L);
+        assertThat(content.trips().get(0).getRemoteOrigin()).isEqualTo("vbb");
+        assertThat(content.trips().get(0).getRemoteId()).isEqualTo("trip-1");
+        assertThat(content.trips().get(1).getId()).isEqualTo(51L);
+        assertThat(content.trips().get(1).getRemoteId()).isNull();
+        // no temporary file is left behind
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).containsExactly(path);
+        }
+    }
+
+    @Test
+    void versionOneHasNoTrips() throws IOException {
+        List<VbbMovement> movements = movements();
+        file.write(path, CREATED_AT, movements, List.of());
+        // a version 1 payload ends before the trip count
+        byte[] v2 = Files.readAllBytes(path);
+        ByteBuffer payload = ByteBuffer.wrap(
+            v2, HEADER_BYTES, v2.length - HEADER_BYTES - Integer.BYTES
+        ).slice();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer v1 = ByteBuffer.allocate(HEADER_BYTES + payload.remaining())
+            .putInt(ByteBuffer.wrap(v2).getInt())
+            .putInt(1)
+            .putLong(CREATED_AT.toEpochMilli())
+            .putLong(payload.remaining())
+            .putLong(crc.getValue())
+            .put(payload);
+        Files.write(path, v1.array());
+
+        VehicleSnapshotFile.Content content = file.read(path);
+
+        assertThat(content.createdAt()).isEqualTo(CREATED_AT);
+        assertMovements(content.movements(), movements);
+        assertThat(content.trips()).isEmpty();
+    }
+
+    @Test
+    void emptySnapshotRoundTrips() throws IOException {
+        file.write(path, CREATED_AT, List.of(), List.of());
+
+        VehicleSnapshotFile.Content content = file.read(path);
+
+        assertThat(content.movements()).isEmpty();
+        assertThat(content.trips()).isEmpty();
+    }
+
+    @Test
+    void damagedFilesAreRejected() throws IOException {
+        file.write(path, CREATED_AT, movements(), List.of());
+        byte[] bytes = Files.readAllBytes(path);
+
+        byte[] corrupted = bytes.clone();
+        corrupted[corrupted.length - 10] ^= 1;
+        Files.write(path, corrupted);
+        assertThatThrownBy(() -> file.read(path)).hasMessage("Snapshot file is corrupted");
+
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThatThrownBy(() -> file.read(path)).hasMessage("Snapshot file is truncated");
+
+        byte[] future = bytes.clone();
+        ByteBuffer.wrap(future).putInt(Integer.BYTES, 3);
+        Files.write(path, future);
+        assertThatThrownBy(() -> file.read(path)).hasMessage("Unsupported snapshot version 3");
+
+        Files.write(path, new byte[HEADER_BYTES]);
+        assertThatThrownBy(() -> file.read(path)).hasMessage("Not a snapshot file");
+    }
+
+
+    private static List<VbbMovement> movements() {
+        VbbOperator operator = new VbbOperator();
+        operator.setId("796");
+        operator.setName("S-Bahn Berlin GmbH");
+        VbbLine line = new VbbLine();
+        line.setId("s5");
+        line.setName("S5");
+        line.setProductName("S");
+        line.setMode("train");
+        line.setProduct("suburban");
+        line.setIsPublic(true);
+        line.setOperator(operator);
+
+        List<VbbMovement> movements = new ArrayList<>();
+        movements.add(movement("trip-1", "Strausberg Nord", line, 52.5219, 13.4132,
+            CREATED_AT, List.of(new VbbFrame(0, 52.5219, 13.4132), new VbbFrame(2000, 52.53, 13.42))
+        ));
+        movements.add(movement("trip-2", "Westkreuz", line, 52.5, 13.3, CREATED_AT, List.of()));
+        movements.add(movement(null, null, null, -33.86, 151.2, null, List.of()));
+        return movements;
+    }
+
+    private static VbbMovement movement(
+        String tripId, String direction, VbbLine line, double latitude, double longitude,
+        Instant observedAt, List<VbbFrame> frames
+    ) {
+        VbbLocation location = new VbbLocation();
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+
+        VbbMovement movement = new VbbMovement();
+        movement.setTripId(tripId);
+        movement.setDirection(direction);
+        movement.setLine(line);
+        movement.setLocation(location);
+        movement.setObservedAt(observedAt);
+        movement.setFrames(frames);
+        return movement;
+    }
+
+    private static void assertMovements(List<VbbMovement> actual, List<VbbMovement> expected) {
+        assertThat(actual).hasSize(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            VbbMovement a = actual.get(i);
+            VbbMovement e = expected.get(i);
+            assertThat(a.getTripId()).isEqualTo(e.getTripId());
+            assertThat(a.getDirection()).isEqualTo(e.getDirection());
+            assertThat(a.getLatitude()).isEqualTo(e.getLatitude());
+            assertThat(a.getLongitude()).isEqualTo(e.getLongitude());
+            assertThat(a.getObservedAt()).isEqualTo(e.getObservedAt());
+            assertThat(a.getFrames()).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(e.getFrames());
+            if (e.getLine() == null) {
+                assertThat(a.getLine()).isNull();
+            }
+            else {
+                assertThat(a.getLine()).usingRecursiveComparison().isEqualTo(e.getLine());
+            }
+        }
+        // movements of a line share the canonical line instance
+        assertThat(actual.get(0).getLine()).isSameAs(actual.get(1).getLine());
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.thb.ea.public_transport_tracker.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.thb.ea.public_transport_tracker.config.property.TripDeltaProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.service.model.TripDelta;
+
+class TripDeltaServiceTest {
+
+    private TripDeltaService deltaService;
+
+    @BeforeEach
+    void setUp() {
+        deltaService = new TripDeltaService(new TripDeltaProperties());
+    }
+
+    @Test
+    void unchangedListIsEmptyDelta() {
+        String version = deltaService.register(List.of(trip(1, "a"), trip(2, "b")));
+
+        TripDelta delta = deltaService.diff(version, List.of(trip(1, "a"), trip(2, "b")));
+
+        assertThat(delta.getVersion()).isEqualTo(version);
+        assertThat(delta.isEmpty()).isTrue();
+    }
+
+    @Test
+    void reorderedListIsNewVersionWithOrder() {
+        String version = deltaService.register(List.of(trip(1, "a"), trip(2, "b")));
+
+        TripDelta delta = deltaService.diff(version, List.of(trip(2, "b"), trip(1, "a")));
+
+        assertThat(delta.getVersion()).isNotEqualTo(version);
+        assertThat(delta.isEmpty()).isFalse();
+        assertThat(delta.getUpserted()).isEmpty();
+        assertThat(delta.getOrder()).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void changedTripKeepsItsPosition() {
+        String version = deltaService.register(List.of(trip(1, "a"), trip(2, "b")));
+
+        TripDelta delta = deltaService.diff(version, List.of(trip(1, "c"), trip(2, "b")));
+
+        assertThat(delta.getUpserted()).extracting(Trip::getLineName).containsExactly("c");
+        assertThat(delta.getOrder()).isNull();
+    }
+
+    @Test
+    void addedAndRemovedTripsSendOrder() {
+        String version = deltaService.register(List.of(trip(1, "a"), trip(2, "b")));
+
+        TripDelta delta = deltaService.diff(version, List.of(trip(3, "c"), trip(1, "a")));
+
+        assertThat(delta.getUpserted()).extracting(Trip::getId).containsExactly(3L);
+        assertThat(delta.getRemoved()).containsExactly(2L);
+        assertThat(delta.getOrder()).containsExactly(3L, 1L);
+    }
+
+
+    private static Trip trip(long id, String lineName) {
+        return Trip.builder()
+            .id(id)
+            .remoteId(String.valueOf(id))
+            .remoteOrigin("vbb")
+            .lineName(lineName)
+            .build();
+    }
+
+}
@@ -0,0 +1,96 @@
+package de.thb.ea.public_transport_tracker.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.thb.ea.public_transport_tracker.config.property.TransitSourceProperties;
+import de.thb.ea.public_transport_tracker.config.property.TripCacheProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import de.thb.ea.public_transport_tracker.repository.TripRepository;
+import de.thb.ea.public_transport_tracker.service.cache.TripIdentityCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TripServiceTest {
+
+    private TripRepository tripRepository;
+    private TripIdentityCache tripCache;
+    private TripService tripService;
+
+    @BeforeEach
+    void setUp() {
+        tripRepository = mock(TripRepository.class);
+        tripCache = new TripIdentityCache(new TripCacheProperties(), new SimpleMeterRegistry());
+        tripService = new TripService(
+            List.of(), new TransitSourceProperties(), tripRepository,
+            mock(TransactionTemplate.class), tripCache, mock(TripWriteBehind.class),
+            mock(TripIdAllocator.class)
+        );
+        when(tripRepository.existsById(1L)).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void updateTripReplacesTripCachedDuringSave() throws Exception {
+        Trip old = trip("a");
+        Trip updated = trip("b");
+        tripCache.put(old);
+        when(tripRepository.save(any())).then(invocation -> {
+            // a concurrent lookup reads the old row before the update is committed
+            tripCache.put(old);
+            return updated;
+        });
+
+        tripService.updateTrip(updated);
+
+        assertThat(tripCache.get("vbb", "a")).isEmpty();
+        assertThat(tripCache.get("vbb", "b")).containsSame(updated);
+    }
+
+    @Test
+    void updateTripCachesTripAfterCommit() throws Exception {
+        Trip old = trip("a");
+        Trip updated = trip("b");
+        tripCache.put(old);
+        when(tripRepository.save(any())).thenReturn(updated);
+        TransactionSynchronizationManager.initSynchronization();
+
+        tripService.updateTrip(updated);
+        assertThat(tripCache.get("vbb", "a")).isEmpty();
+        assertThat(tripCache.get("vbb", "b")).isEmpty();
+
+        // a lookup before the commit still sees the old row
+        tripCache.put(old);
+        TransactionSynchronizationManager.getSynchronizations()
+            .forEach(TransactionSynchronization::afterCommit);
+
+        assertThat(tripCache.get("vbb", "a")).isEmpty();
+        assertThat(tripCache.get("vbb", "b")).containsSame(updated);
+    }
+
+
+    private static Trip trip(String remoteId) {
+        return Trip.builder()
+            .id(1L)
+            .remoteId(remoteId)
+            .remoteOrigin("vbb")
+            .build();
+    }
+
+}
@@ -0,0 +1,107 @@
+package de.thb.ea.public_transport_tracker.service.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import de.thb.ea.public_transport_tracker.config.property.TripCacheProperties;
+import de.thb.ea.public_transport_tracker.entity.Trip;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TripIdentityCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void returnsCachedTripByNaturalKey() {
+        TripIdentityCache cache = cache(100, Duration.ZERO);
+        Trip trip = trip(1L, "a");
+        cache.put(trip);
+
+        assertThat(cache.get("vbb", "a")).containsSame(trip);
+        assertThat(cache.get("vbb", "b")).isEmpty();
+        assertThat(cache.get("other", "a")).isEmpty();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedTripsBeyondMaxSize() {
+        // one trip per stripe
+        TripIdentityCache cache = cache(16, Duration.ZERO);
+        for (long id = 1; id <= 1000; id++) {
+            cache.put(trip(id, "trip-" + id));
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(16);
+        assertThat(cache.getTrips()).hasSize(cache.size());
+        assertThat(meterRegistry.get("trips.cache.evictions").counter().count())
+            .isEqualTo(1000 - cache.size());
+        // the last trip put into a stripe is never the eldest one
+        assertThat(cache.get("vbb", "trip-1000")).isPresent();
+    }
+
+    @Test
+    void expiresTripsAfterTtl() throws InterruptedException {
+        TripIdentityCache cache = cache(100, Duration.ofMillis(1));
+        cache.put(trip(1L, "a"));
+        Thread.sleep(5);
+
+        assertThat(cache.get("vbb", "a")).isEmpty();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void invalidatesTripWhoseNaturalKeyChanged() {
+        TripIdentityCache cache = cache(100, Duration.ZERO);
+        cache.put(trip(1L, "a"));
+        long modifications = cache.getModificationCount();
+
+        cache.invalidate(1L);
+
+        assertThat(cache.get("vbb", "a")).isEmpty();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getModificationCount()).isGreaterThan(modifications);
+    }
+
+    @Test
+    void replacesTripWithSameId() {
+        TripIdentityCache cache = cache(100, Duration.ZERO);
+        cache.put(trip(1L, "a"));
+        Trip renamed = trip(1L, "b");
+
+        cache.put(renamed);
+
+        assertThat(cache.get("vbb", "a")).isEmpty();
+        assertThat(cache.get("vbb", "b")).containsSame(renamed);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void cachesNothingIfDisabled() {
+        TripCacheProperties properties = new TripCacheProperties();
+        properties.setEnabled(false);
+        TripIdentityCache cache = new TripIdentityCache(properties, meterRegistry);
+        cache.put(trip(1L, "a"));
+
+        assertThat(cache.get("vbb", "a")).isEmpty();
+        assertThat(cache.size()).isZero();
+    }
+
+
+    private TripIdentityCache cache(int maxSize, Duration ttl) {
+        TripCacheProperties properties = new TripCacheProperties();
+        properties.setMaxSize(maxSize);
+        properties.setTtl(ttl);
+        return new TripIdentityCache(properties, meterRegistry);
+    }
+
+    private static Trip trip(Long id, String remoteId) {
+        return Trip.builder()
+            .id(id)
+            .remoteId(remoteId)
+            .remoteOrigin("vbb")
+            .build();
+    }
+
+}
@@ -0,0 +1,108 @@
+package de.thb.ea.public_transport_tracker.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class GeoRadiusTest {
+
+    @Test
+    void nearestWithinRadiusMatchesHaversine() {
+        Random random = new Random(42);
+        int length = 2000;
+        double[] latitudes = new double[length];
+        double[] longitudes = new double[length];
+        for (int i = 0; i < length; i++) {
+            latitudes[i] = random.nextDouble(52.3, 52.7);
+            longitudes[i] = random.nextDouble(13.1, 13.7);
+        }
+
+        for (int query = 0; query < 100; query++) {
+            double latitude = random.nextDouble(52.3, 52.7);
+            double longitude = random.nextDouble(13.1, 13.7);
+            double radius = random.nextDouble(10., 10000.);
+
+            int[] nearest = GeoUtils.nearestWithinRadius(
+                latitude, longitude, radius, latitudes, longitudes, length, length
+            );
+
+            double[] distances = IntStream.range(0, length)
+                .mapToDouble(i -> GeoUtils.distanceInMeters(
+                    latitude, longitude, latitudes[i], longitudes[i]
+                ))
+                .toArray();
+            assertThat(nearest).containsExactlyInAnyOrder(IntStream.range(0, length)
+                .filter(i -> distances[i] <= radius)
+                .toArray()
+            );
+            for (int i = 1; i < nearest.length; i++) {
+                // distances inside the radius may be projected
+                assertThat(distances[nearest[i]])
+                    .isGreaterThanOrEqualTo(distances[nearest[i - 1]] * (1. - 1e-2));
+            }
+        }
+    }
+
+    @Test
+    void nearestWithinRadiusLimitsResults() {
+        double[] latitudes = { 52.5, 52.501, 52.502, 52.503 };
+        double[] longitudes = { 13.4, 13.4, 13.4, 13.4 };
+
+        assertThat(GeoUtils.nearestWithinRadius(52.5, 13.4, 1000., latitudes, longitudes, 4, 2))
+            .containsExactly(0, 1);
+        assertThat(GeoUtils.nearestWithinRadius(52.5, 13.4, 1000., latitudes, longitudes, 4, 0))
+            .isEmpty();
+        // only the first length locations are considered
+        assertThat(GeoUtils.nearestWithinRadius(52.503, 13.4, 1000., latitudes, longitudes, 2, 4))
+            .containsExactly(1, 0);
+        assertThat(GeoUtils.nearestWithinRadius(
+            52.5, 13.4, 1000., new double[0], new double[0], 0, 4
+        )).isEmpty();
+    }
+
+    @Test
+    void zeroRadiusContainsOnlyTheCenter() {
+        GeoRadius circle = new GeoRadius(52.5, 13.4, 0.);
+
+        assertThat(circle.contains(52.5, 13.4)).isTrue();
+        assertThat(circle.distanceWithin(52.5, 13.4)).isZero();
+        assertThat(circle.contains(52.5, 13.400001)).isFalse();
+        assertThat(circle.contains(52.500001, 13.4)).isFalse();
+        assertThat(GeoUtils.nearestWithinRadius(
+            52.5, 13.4, 0., new double[] { 52.500001, 52.5 }, new double[] { 13.4, 13.4 }, 2, 2
+        )).containsExactly(1);
+    }
+
+    @Test
+    void radiusReachesAcrossAntimeridian() {
+        double[] latitudes = { 0., 0., 0. };
+        // about 111 m east across the antimeridian, 222 m west and 1.1 km east
+        double[] longitudes = { -179.9995, 179.9975, -179.99 };
+
+        int[] nearest = GeoUtils.nearestWithinRadius(
+            0., 179.9995, 500., latitudes, longitudes, 3, 3
+        );
+
+        assertThat(nearest).containsExactly(0, 1);
+        GeoRadius circle = new GeoRadius(0., 179.9995, 500.);
+        assertThat(circle.distanceWithin(0., -179.9995)).isCloseTo(111.2, within(0.1));
+        assertThat(circle.distance(0., -179.9995)).isCloseTo(111.2, within(0.1));
+        assertThat(circle.contains(0., -179.99)).isFalse();
+    }
+
+    @Test
+    void largeRadiusNearPoleUsesExactDistance() {
+        GeoRadius circle = new GeoRadius(89.9, 0., 50000.);
+
+        // on the other side of the pole: far in longitude, close on the sphere
+        double distance = GeoUtils.distanceInMeters(89.9, 0., 89.9, 180.);
+        assertThat(distance).isLessThan(50000.);
+        assertThat(circle.distanceWithin(89.9, 180.)).isCloseTo(distance, within(1e-6));
+        assertThat(circle.contains(89.0, 0.)).isFalse();
+    }
+
+}
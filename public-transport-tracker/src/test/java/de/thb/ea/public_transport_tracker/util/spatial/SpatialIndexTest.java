@@ -0,0 +1,204 @@
+package de.thb.ea.public_transport_tracker.util.spatial;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.thb.ea.public_transport_tracker.util.GeoUtils;
+import de.thb.ea.public_transport_tracker.util.model.BoundingBox;
+import de.thb.ea.public_transport_tracker.util.model.Location;
+
+/**
+ * Compares the results of every {@link SpatialIndexType} with a linear scan over random points
+ * around Berlin.
+ */
+class SpatialIndexTest {
+
+    private static final int POINTS = 5000;
+    private static final int QUERIES = 100;
+    // distances inside the radius may be projected, so neighbours may swap within this tolerance
+    private static final double TOLERANCE = 1e-2;
+
+    private record Point(int id, double latitude, double longitude) {}
+
+    private final Random random = new Random(42);
+    private final List<Point> points = randomPoints(POINTS);
+
+    @Test
+    void withinRadiusMatchesLinearScan() {
+        for (SpatialIndexType type : SpatialIndexType.values()) {
+            SpatialIndex<Point> index = index(type);
+            for (int i = 0; i < QUERIES; i++) {
+                Point center = randomPoint(-1);
+                double radius = random.nextDouble(10., 5000.);
+
+                List<Point> result = index.withinRadius(
+                    center.latitude(), center.longitude(), radius
+                );
+
+                List<Point> expected = points.stream()
+                    .filter(e -> distance(center, e) <= radius)
+                    .toList();
+                assertThat(result).as("%s radius %.0f", type, radius)
+                    .containsExactlyInAnyOrderElementsOf(expected);
+                assertNearestFirst(center, result);
+            }
+        }
+    }
+
+    @Test
+    void nearestMatchesLinearScan() {
+        for (SpatialIndexType type : SpatialIndexType.values()) {
+            SpatialIndex<Point> index = index(type);
+            for (int i = 0; i < QUERIES; i++) {
+                Point center = randomPoint(-1);
+                int k = random.nextInt(1, 50);
+
+                List<Point> result = index.nearest(center.latitude(), center.longitude(), k);
+
+                double[] distances = points.stream()
+                    .mapToDouble(e -> distance(center, e))
+                    .toArray();
+                List<Point> expected = points.stream()
+                    .sorted(Comparator.comparingDouble(e -> distances[e.id()]))
+                    .limit(k)
+                    .toList();
+                assertThat(result).as("%s k %d", type, k).hasSize(k);
+                assertNearestFirst(center, result);
+                // the k-th distance may differ within the tolerance, closer points must be found
+                double kth = distances[expected.get(k - 1).id()];
+                assertThat(result).as("%s k %d", type, k).containsAll(expected.stream()
+                    .filter(e -> distances[e.id()] < kth * (1. - TOLERANCE))
+                    .toList()
+                );
+                assertThat(distance(center, result.get(k - 1)))
+                    .isLessThanOrEqualTo(kth * (1. + TOLERANCE));
+            }
+        }
+    }
+
+    @Test
+    void nearestReturnsAllPointsIfKExceedsSize() {
+        for (SpatialIndexType type : SpatialIndexType.values()) {
+            SpatialIndex<Point> index = index(type);
+
+            assertThat(index.nearest(52.5, 13.4, POINTS + 10)).as("%s", type)
+                .containsExactlyInAnyOrderElementsOf(points);
+            assertThat(index.nearest(52.5, 13.4, 0)).as("%s", type).isEmpty();
+        }
+    }
+
+    @Test
+    void withinBoundingBoxMatchesLinearScan() {
+        for (SpatialIndexType type : SpatialIndexType.values()) {
+            SpatialIndex<Point> index = index(type);
+            for (int i = 0; i < QUERIES; i++) {
+                Point corner = randomPoint(-1);
+                BoundingBox bbox = new BoundingBox(
+                    new Location(corner.latitude(), corner.longitude()),
+                    new Location(
+                        corner.latitude() - random.nextDouble(0.1),
+                        corner.longitude() + random.nextDouble(0.2)
+                    )
+                );
+
+                assertThat(index.withinBoundingBox(bbox)).as("%s", type)
+                    .containsExactlyInAnyOrderElementsOf(points.stream()
+                        .filter(e -> bbox.contains(e.latitude(), e.longitude()))
+                        .toList()
+                    );
+            }
+        }
+    }
+
+    @Test
+    void duplicateLocationsAreFound() {
+        // few distinct coordinates, so many points share a split value
+        List<Point> duplicates = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            duplicates.add(new Point(i, 52.5 + random.nextInt(4) * 1e-3, 13.4 + i % 3 * 1e-3));
+        }
+        for (SpatialIndexType type : SpatialIndexType.values()) {
+            SpatialIndex<Point> index = type.create();
+            duplicates.forEach(e -> index.insert(e, e.latitude(), e.longitude()));
+
+            for (Point center : duplicates.subList(0, 10)) {
+                assertThat(index.withinRadius(center.latitude(), center.longitude(), 1.))
+                    .as("%s", type)
+                    .containsExactlyInAnyOrderElementsOf(duplicates.stream()
+                        .filter(e -> distance(center, e) <= 1.)
+                        .toList()
+                    );
+            }
+            BoundingBox bbox = new BoundingBox(
+                new Location(52.5025, 13.4005), new Location(52.5, 13.4015)
+            );
+            List<Point> expected = duplicates.stream()
+                .filter(e -> bbox.contains(e.latitude(), e.longitude()))
+                .toList();
+            assertThat(expected).hasSizeGreaterThan(100);
+            assertThat(index.withinBoundingBox(bbox)).as("%s", type)
+                .containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+
+    @Test
+    void updateAndRemoveMoveItems() {
+        for (SpatialIndexType type : SpatialIndexType.values()) {
+            SpatialIndex<Point> index = index(type);
+            Point moved = points.get(0);
+            Point removed = points.get(1);
+
+            index.update(moved, 53.4, 14.6);
+            assertThat(index.remove(removed)).isTrue();
+            assertThat(index.remove(removed)).isFalse();
+
+            assertThat(index.size()).as("%s", type).isEqualTo(POINTS - 1);
+            assertThat(index.nearest(53.4, 14.6, 1)).as("%s", type).containsExactly(moved);
+            assertThat(index.withinRadius(moved.latitude(), moved.longitude(), 1.))
+                .as("%s", type).doesNotContain(moved);
+            assertThat(index.withinRadius(removed.latitude(), removed.longitude(), 1.))
+                .as("%s", type).doesNotContain(removed);
+        }
+    }
+
+
+    private SpatialIndex<Point> index(SpatialIndexType type) {
+        SpatialIndex<Point> index = type.create();
+        for (Point point : points) {
+            index.insert(point, point.latitude(), point.longitude());
+        }
+        return index;
+    }
+
+    private static void assertNearestFirst(Point center, List<Point> result) {
+        for (int i = 1; i < result.size(); i++) {
+            assertThat(distance(center, result.get(i)))
+                .isGreaterThanOrEqualTo(distance(center, result.get(i - 1)) * (1. - TOLERANCE));
+        }
+    }
+
+    private static double distance(Point center, Point point) {
+        return GeoUtils.distanceInMeters(
+            center.latitude(), center.longitude(), point.latitude(), point.longitude()
+        );
+    }
+
+    private List<Point> randomPoints(int count) {
+        List<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(randomPoint(i));
+        }
+        return points;
+    }
+
+    private Point randomPoint(int id) {
+        return new Point(id, random.nextDouble(52.3, 52.7), random.nextDouble(13.1, 13.7));
+    }
+
+}
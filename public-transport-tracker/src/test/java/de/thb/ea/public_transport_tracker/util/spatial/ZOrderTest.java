@@ -0,0 +1,75 @@
+package de.thb.ea.public_transport_tracker.util.spatial;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ZOrderTest {
+
+    // boxes inside one aligned block of 32 x 32 cells, so the codes between the corners can be
+    // scanned
+    private static final int BLOCK = 32;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void interleaveRoundTrips() {
+        for (int i = 0; i < 1000; i++) {
+            int x = random.nextInt(Integer.MAX_VALUE);
+            int y = random.nextInt(Integer.MAX_VALUE);
+
+            long code = ZOrder.interleave(x, y);
+
+            assertThat(code).isNotNegative();
+            assertThat(ZOrder.x(code)).isEqualTo(x);
+            assertThat(ZOrder.y(code)).isEqualTo(y);
+        }
+        assertThat(ZOrder.encode(-90., -180.)).isZero();
+        assertThat(ZOrder.encode(90., 180.)).isEqualTo(ZOrder.interleave(
+            Integer.MAX_VALUE, Integer.MAX_VALUE
+        ));
+    }
+
+    @Test
+    void nextInsideMatchesLinearScan() {
+        for (int i = 0; i < 500; i++) {
+            // a block near the origin or anywhere, so the high bits are exercised as well
+            int baseX = i % 2 == 0 ? 0 : random.nextInt(Integer.MAX_VALUE / BLOCK) * BLOCK;
+            int baseY = i % 2 == 0 ? 0 : random.nextInt(Integer.MAX_VALUE / BLOCK) * BLOCK;
+            int x1 = random.nextInt(BLOCK);
+            int x2 = random.nextInt(BLOCK);
+            int y1 = random.nextInt(BLOCK);
+            int y2 = random.nextInt(BLOCK);
+            long min = ZOrder.interleave(baseX + Math.min(x1, x2), baseY + Math.min(y1, y2));
+            long max = ZOrder.interleave(baseX + Math.max(x1, x2), baseY + Math.max(y1, y2));
+
+            long next = -1;
+            for (long code = max; code > min; code--) {
+                if (ZOrder.inside(code, min, max)) {
+                    next = code;
+                }
+                else {
+                    assertThat(ZOrder.nextInside(code, min, max))
+                        .as("code %d in [%d, %d]", code, min, max)
+                        .isEqualTo(next);
+                }
+            }
+        }
+    }
+
+    @Test
+    void insideMatchesCoordinates() {
+        long min = ZOrder.interleave(3, 5);
+        long max = ZOrder.interleave(7, 6);
+
+        for (int x = 0; x < BLOCK; x++) {
+            for (int y = 0; y < BLOCK; y++) {
+                assertThat(ZOrder.inside(ZOrder.interleave(x, y), min, max))
+                    .isEqualTo(x >= 3 && x <= 7 && y >= 5 && y <= 6);
+            }
+        }
+    }
+
+}